@@ -0,0 +1,16 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Body of /peer/adopt_topic: a page of the backlog of a topic handed over by a departing node, oldest
+// message first. When offsets are given the new owner keeps them, and skips messages it already holds
+// as a replica; a replication factor above 1 asks it to keep the topic replicated.
+public record AdoptTopicRequest(String topic, List<String> messages, @JsonProperty("from_node") String fromNode,
+                                List<Long> offsets, @JsonProperty("replication_factor") int replicationFactor) {
+
+    public AdoptTopicRequest(String topic, List<String> messages, String fromNode) {
+        this(topic, messages, fromNode, null, 1);
+    }
+}
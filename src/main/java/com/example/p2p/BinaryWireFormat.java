@@ -0,0 +1,313 @@
+package com.example.p2p;
+
+import org.springframework.http.MediaType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compact binary encoding of the typed request and response records, served as application/x-p2p-binary
+// next to JSON.
+//
+// A record is written as its components in declaration order, with no names or framing:
+//
+// - String: int byte length (-1 for null), then UTF-8 bytes
+// - int, long, boolean: 4, 8 and 1 bytes, big-endian
+// - Integer, Long, Boolean: a presence byte, then the value if present
+// - List<String>: int count (-1 for null), then each string as above
+// - List<Long>: int count (-1 for null), then 8 bytes per value
+//
+// Both sides must therefore agree on the record's components; a record is only encodable if every
+// component has one of these types. Component accessors and the canonical constructor are looked up once
+// per record class.
+public final class BinaryWireFormat {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-p2p-binary";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    private enum FieldType {
+        STRING, INT, LONG, BOOLEAN, BOXED_INT, BOXED_LONG, BOXED_BOOLEAN, STRING_LIST, LONG_LIST
+    }
+
+    private record Layout(FieldType[] types, MethodHandle[] accessors, MethodHandle constructor) {
+    }
+
+    private static final Map<Class<?>, Layout> layouts = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Boolean> supported = new ConcurrentHashMap<>();
+
+    private BinaryWireFormat() {
+    }
+
+    // Returns whether instances of the class can be written and read in this format.
+    public static boolean supports(Class<?> type) {
+        return supported.computeIfAbsent(type, BinaryWireFormat::isEncodable);
+    }
+
+    public static byte[] encode(Record value) {
+        Layout layout = layout(value.getClass());
+        Object[] values = new Object[layout.types().length];
+        int size = 0;
+        try {
+            for (int i = 0; i < values.length; i++) {
+                Object component = (Object) layout.accessors()[i].invokeExact((Object) value);
+                switch (layout.types()[i]) {
+                    case STRING -> {
+                        byte[] bytes = component == null ? null : ((String) component).getBytes(StandardCharsets.UTF_8);
+                        values[i] = bytes;
+                        size += Integer.BYTES + (bytes == null ? 0 : bytes.length);
+                    }
+                    case STRING_LIST -> {
+                        List<?> strings = (List<?>) component;
+                        byte[][] encoded = null;
+                        size += Integer.BYTES;
+                        if (strings != null) {
+                            encoded = new byte[strings.size()][];
+                            for (int j = 0; j < encoded.length; j++) {
+                                encoded[j] = ((String) strings.get(j)).getBytes(StandardCharsets.UTF_8);
+                                size += Integer.BYTES + encoded[j].length;
+                            }
+                        }
+                        values[i] = encoded;
+                    }
+                    case LONG_LIST -> {
+                        List<?> longs = (List<?>) component;
+                        values[i] = longs;
+                        size += Integer.BYTES + (longs == null ? 0 : longs.size() * Long.BYTES);
+                    }
+                    case INT -> {
+                        values[i] = component;
+                        size += Integer.BYTES;
+                    }
+                    case LONG -> {
+                        values[i] = component;
+                        size += Long.BYTES;
+                    }
+                    case BOOLEAN -> {
+                        values[i] = component;
+                        size += 1;
+                    }
+                    case BOXED_INT -> {
+                        values[i] = component;
+                        size += 1 + (component == null ? 0 : Integer.BYTES);
+                    }
+                    case BOXED_LONG -> {
+                        values[i] = component;
+                        size += 1 + (component == null ? 0 : Long.BYTES);
+                    }
+                    case BOXED_BOOLEAN -> {
+                        values[i] = component;
+                        size += 1 + (component == null ? 0 : 1);
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to read components of " + value.getClass().getSimpleName(), e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < values.length; i++) {
+            Object component = values[i];
+            switch (layout.types()[i]) {
+                case STRING -> putBytes(buffer, (byte[]) component);
+                case STRING_LIST -> {
+                    byte[][] strings = (byte[][]) component;
+                    buffer.putInt(strings == null ? -1 : strings.length);
+                    if (strings != null) {
+                        for (byte[] string : strings) {
+                            putBytes(buffer, string);
+                        }
+                    }
+                }
+                case LONG_LIST -> {
+                    List<?> longs = (List<?>) component;
+                    buffer.putInt(longs == null ? -1 : longs.size());
+                    if (longs != null) {
+                        for (Object element : longs) {
+                            buffer.putLong((Long) element);
+                        }
+                    }
+                }
+                case INT -> buffer.putInt((Integer) component);
+                case LONG -> buffer.putLong((Long) component);
+                case BOOLEAN -> buffer.put((byte) ((Boolean) component ? 1 : 0));
+                case BOXED_INT -> {
+                    buffer.put((byte) (component == null ? 0 : 1));
+                    if (component != null) {
+                        buffer.putInt((Integer) component);
+                    }
+                }
+                case BOXED_LONG -> {
+                    buffer.put((byte) (component == null ? 0 : 1));
+                    if (component != null) {
+                        buffer.putLong((Long) component);
+                    }
+                }
+                case BOXED_BOOLEAN -> {
+                    buffer.put((byte) (component == null ? 0 : 1));
+                    if (component != null) {
+                        buffer.put((byte) ((Boolean) component ? 1 : 0));
+                    }
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    public static <T> T decode(byte[] bytes, Class<T> type) {
+        Layout layout = layout(type);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Object[] values = new Object[layout.types().length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = switch (layout.types()[i]) {
+                    case STRING -> getString(buffer);
+                    case STRING_LIST -> {
+                        int count = buffer.getInt();
+                        if (count < 0) {
+                            yield null;
+                        }
+                        // Every string takes at least its length prefix, which bounds a corrupt count
+                        List<String> strings = new ArrayList<>(Math.min(count, buffer.remaining() / Integer.BYTES));
+                        for (int j = 0; j < count; j++) {
+                            strings.add(getString(buffer));
+                        }
+                        yield strings;
+                    }
+                    case LONG_LIST -> {
+                        int count = buffer.getInt();
+                        if (count < 0) {
+                            yield null;
+                        }
+                        if ((long) count * Long.BYTES > buffer.remaining()) {
+                            throw new BufferUnderflowException();
+                        }
+                        List<Long> longs = new ArrayList<>(count);
+                        for (int j = 0; j < count; j++) {
+                            longs.add(buffer.getLong());
+                        }
+                        yield longs;
+                    }
+                    case INT -> buffer.getInt();
+                    case LONG -> buffer.getLong();
+                    case BOOLEAN -> buffer.get() != 0;
+                    case BOXED_INT -> buffer.get() == 0 ? null : buffer.getInt();
+                    case BOXED_LONG -> buffer.get() == 0 ? null : buffer.getLong();
+                    case BOXED_BOOLEAN -> buffer.get() == 0 ? null : buffer.get() != 0;
+                };
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated " + type.getSimpleName() + " of " + bytes.length + " bytes", e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException(buffer.remaining() + " unexpected trailing bytes after " + type.getSimpleName());
+        }
+
+        try {
+            return type.cast((Object) layout.constructor().invokeExact(values));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to construct " + type.getSimpleName(), e);
+        }
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static Layout layout(Class<?> type) {
+        if (!supports(type)) {
+            throw new IllegalArgumentException(type.getName() + " cannot be encoded as " + MEDIA_TYPE_VALUE);
+        }
+        return layouts.computeIfAbsent(type, BinaryWireFormat::createLayout);
+    }
+
+    private static boolean isEncodable(Class<?> type) {
+        if (!type.isRecord()) {
+            return false;
+        }
+        for (RecordComponent component : type.getRecordComponents()) {
+            if (fieldType(component) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Layout createLayout(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        FieldType[] types = new FieldType[components.length];
+        MethodHandle[] accessors = new MethodHandle[components.length];
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            for (int i = 0; i < components.length; i++) {
+                types[i] = fieldType(components[i]);
+                accessors[i] = lookup.unreflect(components[i].getAccessor())
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                parameterTypes[i] = components[i].getType();
+            }
+            // Takes the decoded components as one Object[] so it can be invoked exactly
+            MethodHandle constructor = lookup.unreflectConstructor(type.getDeclaredConstructor(parameterTypes));
+            constructor = constructor.asType(constructor.type().generic())
+                    .asSpreader(Object[].class, components.length);
+            return new Layout(types, accessors, constructor);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(type.getName() + " must be a public record with a public constructor", e);
+        }
+    }
+
+    private static FieldType fieldType(RecordComponent component) {
+        Class<?> type = component.getType();
+        if (type == String.class) {
+            return FieldType.STRING;
+        } else if (type == int.class) {
+            return FieldType.INT;
+        } else if (type == long.class) {
+            return FieldType.LONG;
+        } else if (type == boolean.class) {
+            return FieldType.BOOLEAN;
+        } else if (type == Integer.class) {
+            return FieldType.BOXED_INT;
+        } else if (type == Long.class) {
+            return FieldType.BOXED_LONG;
+        } else if (type == Boolean.class) {
+            return FieldType.BOXED_BOOLEAN;
+        } else if (type == List.class) {
+            Type generic = component.getGenericType();
+            if (generic instanceof ParameterizedType parameterized) {
+                Type element = parameterized.getActualTypeArguments()[0];
+                if (element == String.class) {
+                    return FieldType.STRING_LIST;
+                } else if (element == Long.class) {
+                    return FieldType.LONG_LIST;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.p2p;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Endpoints other peers call while routing through and maintaining the Chord ring in DHT discovery mode, and
+// query_topic, which answers like the indexing server's by looking the topic up on the ring. Calls to a peer
+// that has not joined yet fail, so callers route around it.
+@RestController
+@RequestMapping("/peer/dht")
+@ConditionalOnProperty(name = "peer.discovery.mode", havingValue = "DHT")
+public class ChordController {
+
+    private final ChordTopicResolver chordTopicResolver;
+
+    public ChordController(ChordTopicResolver chordTopicResolver) {
+        this.chordTopicResolver = chordTopicResolver;
+    }
+
+    @GetMapping("/find_successor")
+    public ChordProtocol.Step findSuccessor(@RequestParam long key) {
+        return joined().findSuccessorStep(key);
+    }
+
+    @GetMapping("/neighbours")
+    public ChordProtocol.Neighbours neighbours() {
+        return joined().getNeighbours();
+    }
+
+    @PostMapping("/notify")
+    public Map<String, Object> notify(@RequestBody ChordProtocol.Node candidate) {
+        joined().handleNotify(candidate);
+        return Map.of("status", "ok");
+    }
+
+    @PostMapping("/put")
+    public Map<String, Object> put(@RequestBody List<ChordProtocol.Entry> entries) {
+        joined().handlePut(entries);
+        return Map.of("status", "ok");
+    }
+
+    @PostMapping("/remove")
+    public Map<String, Object> remove(@RequestBody Map<String, String> body) {
+        joined().handleRemove(body.get("topic"), body.get("owner_address"));
+        return Map.of("status", "ok");
+    }
+
+    @GetMapping("/get/{topic}")
+    public ChordProtocol.Entry get(@PathVariable String topic) {
+        return new ChordProtocol.Entry(topic, joined().handleGet(topic));
+    }
+
+    // The lookup hops from peer to peer with blocking calls, so it runs on the resolver's lookup threads
+    // rather than the request thread
+    @GetMapping("/query_topic/{topic}")
+    public CompletableFuture<TopicQueryResponse> queryTopic(@PathVariable String topic) {
+        joined();
+        return chordTopicResolver.resolve(topic).thenApply(location -> location != null
+                ? TopicQueryResponse.found(location.nodeId(), location.address()) : TopicQueryResponse.notFound());
+    }
+
+    @GetMapping("/metrics")
+    public Map<String, Object> metrics() {
+        return joined().getMetrics();
+    }
+
+    private ChordProtocol joined() {
+        ChordProtocol protocol = chordTopicResolver.getProtocol();
+        if (protocol == null) {
+            throw new IllegalStateException("This peer has not joined the ring yet");
+        }
+        return protocol;
+    }
+}
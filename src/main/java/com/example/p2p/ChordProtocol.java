@@ -0,0 +1,495 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+// Topic lookup without an indexing server: the peers form a Chord ring, a distributed hash table that maps
+// every topic to the peer responsible for it.
+//
+// Peers (by address) and topics hash onto the same 64-bit ring as ConsistentHashRing, and a topic's location
+// is stored on its successor, the first peer at or after the topic's hash. Every peer keeps its predecessor,
+// its next successorCount successors and a finger table whose i-th entry is the successor of its own position
+// plus 2^i. Each routing step at least halves the distance left to the key, so a lookup takes O(log N) hops.
+// Lookups are iterative: the asking peer contacts every hop itself, so it can count the hops and route around
+// a peer that doesn't answer.
+//
+// Each round() keeps the ring correct while peers come and go: it stabilizes with the successor, checks the
+// predecessor, refreshes one finger, expires entries and republishes this peer's topics when due. Entries live
+// for three republish periods, so the topics of a peer that died disappear by themselves, and a peer that
+// joins in front of another is handed the entries it has become responsible for.
+//
+// Like GossipProtocol it only reaches other peers through a Transport.
+public class ChordProtocol {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChordProtocol.class);
+
+    private static final int FINGERS = 64;
+    private static final int MAX_HOPS = 2 * FINGERS;
+    private static final int ATTEMPTS = 3;
+
+    // A peer on the ring; key is the hash of its address.
+    public record Node(@JsonProperty("node_id") String nodeId, String address, long key) {
+    }
+
+    // One routing step: the successor of the key when done, otherwise the next peer to ask.
+    public record Step(boolean done, Node node) {
+    }
+
+    public record Neighbours(Node predecessor, List<Node> successors) {
+    }
+
+    // The peer responsible for a key and the routing hops it took to find it.
+    public record Lookup(Node successor, int hops) {
+    }
+
+    // The peer hosting a topic, or null if none is known, and the routing hops the lookup took.
+    public record Resolution(Node owner, int hops) {
+    }
+
+    // A topic's location as stored on the peer responsible for it; owners are told apart by address.
+    public record Entry(String topic, Node owner) {
+    }
+
+    // Carries the protocol's calls to other peers; a call that fails or times out throws.
+    public interface Transport {
+
+        Step findSuccessor(String address, long key);
+
+        Neighbours neighbours(String address);
+
+        void notify(String address, Node candidate);
+
+        void put(String address, List<Entry> entries);
+
+        // Removes the topic's entry from the peer at address if it is still owned by ownerAddress.
+        void remove(String address, String topic, String ownerAddress);
+
+        // Returns the owner the peer at address has stored for the topic, or null.
+        Node get(String address, String topic);
+    }
+
+    private record Stored(Node owner, long expiresAt) {
+    }
+
+    private final Node self;
+    private final List<String> seeds;
+    private final Transport transport;
+    private final int successorCount;
+    private final long republishMillis;
+    private final LongSupplier clock;
+
+    private volatile Node predecessor;
+    private volatile List<Node> successors;
+    private final AtomicReferenceArray<Node> fingers = new AtomicReferenceArray<>(FINGERS);
+    private int nextFinger;
+
+    private final Map<String, Stored> entries = new ConcurrentHashMap<>();
+    private volatile Set<String> hosted = Set.of();
+    private long nextRepublish;
+
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hops = new AtomicLong();
+    private final AtomicLong maxHops = new AtomicLong();
+    private final AtomicLong failedLookups = new AtomicLong();
+
+    public ChordProtocol(String nodeId, String address, Collection<String> seeds, Transport transport,
+                         int successorCount, long republishMillis, LongSupplier clock) {
+        this.self = new Node(nodeId, address, ConsistentHashRing.hash(address));
+        this.seeds = List.copyOf(seeds);
+        this.transport = transport;
+        this.successorCount = successorCount;
+        this.republishMillis = republishMillis;
+        this.clock = clock;
+        this.successors = List.of(self);
+    }
+
+    public Node getSelf() {
+        return self;
+    }
+
+    // Finds this peer's successor through the first seed that answers. Without a reachable seed the peer
+    // is a ring of its own until a later round joins again.
+    public void join() {
+        for (String seed : seeds) {
+            if (seed.equals(self.address())) {
+                continue;
+            }
+            try {
+                Node successor = route(new Step(false, new Node(null, seed, 0)), self.key()).successor();
+                synchronized (this) {
+                    predecessor = null;
+                    successors = successor.address().equals(self.address()) ? List.of(self) : List.of(successor);
+                }
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to join the ring through " + seed + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Replaces the topics this peer hosts, storing the new ones on the ring right away.
+    public void announce(Collection<String> topics) {
+        Set<String> previous = hosted;
+        Set<String> current = Set.copyOf(topics);
+        hosted = current;
+        for (String topic : previous) {
+            if (!current.contains(topic)) {
+                try {
+                    Node responsible = lookup(ConsistentHashRing.hash(topic)).successor();
+                    if (responsible.equals(self)) {
+                        handleRemove(topic, self.address());
+                    } else {
+                        messages.incrementAndGet();
+                        transport.remove(responsible.address(), topic, self.address());
+                    }
+                } catch (RuntimeException e) {
+                    // The entry expires once it is no longer republished
+                    logger.debug("Failed to remove topic " + topic + " from the ring: " + e.getMessage());
+                }
+            }
+        }
+        List<String> added = new ArrayList<>();
+        for (String topic : current) {
+            if (!previous.contains(topic)) {
+                added.add(topic);
+            }
+        }
+        publish(added);
+    }
+
+    // Runs one maintenance period: stabilize, check the predecessor, fix a finger, expire and republish.
+    public void round() {
+        rounds.incrementAndGet();
+        stabilize();
+        checkPredecessor();
+        fixFinger();
+        long now = clock.getAsLong();
+        entries.values().removeIf(stored -> stored.expiresAt() <= now);
+        if (now >= nextRepublish) {
+            nextRepublish = now + republishMillis;
+            publish(hosted);
+        }
+    }
+
+    // Finds the peer responsible for a key, skipping peers that don't answer.
+    public Lookup lookup(long key) {
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            try {
+                Lookup lookup = route(findSuccessorStep(key), key);
+                lookups.incrementAndGet();
+                hops.addAndGet(lookup.hops());
+                maxHops.accumulateAndGet(lookup.hops(), Math::max);
+                return lookup;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        failedLookups.incrementAndGet();
+        throw failure;
+    }
+
+    // Looks up the peer hosting a topic. Throws if the peer responsible for the topic can't be reached.
+    public Resolution resolve(String topic) {
+        long key = ConsistentHashRing.hash(topic);
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            Lookup lookup = lookup(key);
+            Node responsible = lookup.successor();
+            try {
+                if (responsible.equals(self)) {
+                    return new Resolution(handleGet(topic), lookup.hops());
+                }
+                messages.incrementAndGet();
+                return new Resolution(transport.get(responsible.address(), topic), lookup.hops());
+            } catch (RuntimeException e) {
+                failure = e;
+                forget(responsible);
+            }
+        }
+        throw failure;
+    }
+
+    // Answers one routing step for a key, for this peer or another one routing through it.
+    public Step findSuccessorStep(long key) {
+        Node successor = successors.get(0);
+        if (inHalfOpen(key, self.key(), successor.key())) {
+            return new Step(true, successor);
+        }
+        Node next = closestPreceding(key);
+        return next.equals(self) ? new Step(true, successor) : new Step(false, next);
+    }
+
+    public Neighbours getNeighbours() {
+        return new Neighbours(predecessor, successors);
+    }
+
+    // Takes the candidate as predecessor if it sits between the current one and this peer.
+    public void handleNotify(Node candidate) {
+        Node previous;
+        synchronized (this) {
+            previous = predecessor;
+            if (candidate.equals(self) || (previous != null && !inOpen(candidate.key(), previous.key(), self.key()))) {
+                return;
+            }
+            predecessor = candidate;
+        }
+        // Keys up to the new predecessor are its responsibility now
+        List<Entry> handedOver = new ArrayList<>();
+        entries.forEach((topic, stored) -> {
+            if (!inHalfOpen(ConsistentHashRing.hash(topic), candidate.key(), self.key())) {
+                handedOver.add(new Entry(topic, stored.owner()));
+            }
+        });
+        if (!handedOver.isEmpty()) {
+            try {
+                messages.incrementAndGet();
+                transport.put(candidate.address(), handedOver);
+            } catch (RuntimeException e) {
+                logger.debug("Failed to hand entries over to " + candidate.nodeId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void handlePut(List<Entry> put) {
+        long expiresAt = clock.getAsLong() + 3 * republishMillis;
+        for (Entry entry : put) {
+            entries.put(entry.topic(), new Stored(entry.owner(), expiresAt));
+        }
+    }
+
+    public void handleRemove(String topic, String ownerAddress) {
+        entries.computeIfPresent(topic, (t, stored) -> stored.owner().address().equals(ownerAddress) ? null : stored);
+    }
+
+    public Node handleGet(String topic) {
+        Stored stored = entries.get(topic);
+        return stored != null && stored.expiresAt() > clock.getAsLong() ? stored.owner() : null;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Set<Node> distinctFingers = new HashSet<>();
+        for (int i = 0; i < FINGERS; i++) {
+            Node finger = fingers.get(i);
+            if (finger != null) {
+                distinctFingers.add(finger);
+            }
+        }
+        long lookupCount = lookups.get();
+        Node currentPredecessor = predecessor;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("successor", successors.get(0).nodeId());
+        metrics.put("predecessor", currentPredecessor != null ? currentPredecessor.nodeId() : "");
+        metrics.put("fingers", distinctFingers.size());
+        metrics.put("stored_topics", entries.size());
+        metrics.put("rounds", rounds.get());
+        metrics.put("messages", messages.get());
+        metrics.put("lookups", lookupCount);
+        metrics.put("average_hops", lookupCount > 0 ? (double) hops.get() / lookupCount : 0.0);
+        metrics.put("max_hops", maxHops.get());
+        metrics.put("failed_lookups", failedLookups.get());
+        return metrics;
+    }
+
+    public long getMessageCount() {
+        return messages.get();
+    }
+
+    private Lookup route(Step step, long key) {
+        int hopCount = 0;
+        while (!step.done()) {
+            if (++hopCount > MAX_HOPS) {
+                throw new IllegalStateException("Lookup of key " + key + " took more than " + MAX_HOPS + " hops");
+            }
+            Node next = step.node();
+            if (next.address().equals(self.address())) {
+                step = findSuccessorStep(key);
+                continue;
+            }
+            try {
+                messages.incrementAndGet();
+                step = transport.findSuccessor(next.address(), key);
+            } catch (RuntimeException e) {
+                forget(next);
+                throw e;
+            }
+        }
+        return new Lookup(step.node(), hopCount);
+    }
+
+    private Node closestPreceding(long key) {
+        // The known peer furthest along the ring that is still before the key
+        Node best = self;
+        long bestDistance = 0;
+        long limit = key - self.key();
+        List<Node> candidates = new ArrayList<>(successors);
+        for (int i = FINGERS - 1; i >= 0; i--) {
+            Node finger = fingers.get(i);
+            if (finger != null) {
+                candidates.add(finger);
+            }
+        }
+        for (Node candidate : candidates) {
+            long distance = candidate.key() - self.key();
+            if (distance != 0 && Long.compareUnsigned(distance, limit) < 0 && Long.compareUnsigned(distance, bestDistance) > 0) {
+                best = candidate;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private void stabilize() {
+        Node successor = successors.get(0);
+        Neighbours theirs;
+        try {
+            theirs = neighbours(successor);
+        } catch (RuntimeException e) {
+            logger.debug("Successor " + successor.nodeId() + " did not answer: " + e.getMessage());
+            forget(successor);
+            if (successors.get(0).equals(self) && predecessor == null) {
+                join();
+            }
+            return;
+        }
+
+        Set<Node> updated = new LinkedHashSet<>();
+        Node between = theirs.predecessor();
+        if (between != null && inOpen(between.key(), self.key(), successor.key())) {
+            updated.add(between);
+        }
+        updated.add(successor);
+        updated.addAll(theirs.successors());
+        updated.remove(self);
+        List<Node> list = updated.stream().limit(successorCount).toList();
+        synchronized (this) {
+            successors = list.isEmpty() ? List.of(self) : list;
+        }
+
+        Node current = successors.get(0);
+        if (current.equals(self)) {
+            return;
+        }
+        try {
+            messages.incrementAndGet();
+            transport.notify(current.address(), self);
+        } catch (RuntimeException e) {
+            logger.debug("Failed to notify successor " + current.nodeId() + ": " + e.getMessage());
+        }
+    }
+
+    private void checkPredecessor() {
+        Node current = predecessor;
+        if (current == null || current.equals(self)) {
+            return;
+        }
+        try {
+            neighbours(current);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (predecessor == current) {
+                    predecessor = null;
+                }
+            }
+        }
+    }
+
+    private void fixFinger() {
+        int i = nextFinger;
+        Node node;
+        try {
+            node = lookup(self.key() + (1L << i)).successor();
+        } catch (RuntimeException e) {
+            logger.debug("Failed to fix finger " + i + ": " + e.getMessage());
+            return;
+        }
+        // The same peer is also the successor of every following finger start it covers
+        int j = i;
+        do {
+            fingers.set(j, node);
+            j++;
+        } while (j < FINGERS && inHalfOpen(self.key() + (1L << j), self.key(), node.key()));
+        nextFinger = j % FINGERS;
+    }
+
+    private Neighbours neighbours(Node node) {
+        if (node.equals(self)) {
+            return getNeighbours();
+        }
+        messages.incrementAndGet();
+        return transport.neighbours(node.address());
+    }
+
+    private void publish(Collection<String> topics) {
+        Map<Node, List<Entry>> byResponsible = new LinkedHashMap<>();
+        for (String topic : topics) {
+            try {
+                Node responsible = lookup(ConsistentHashRing.hash(topic)).successor();
+                byResponsible.computeIfAbsent(responsible, node -> new ArrayList<>()).add(new Entry(topic, self));
+            } catch (RuntimeException e) {
+                logger.debug("Failed to look up the peer responsible for topic " + topic + ": " + e.getMessage());
+            }
+        }
+        byResponsible.forEach((responsible, put) -> {
+            if (responsible.equals(self)) {
+                handlePut(put);
+                return;
+            }
+            try {
+                messages.incrementAndGet();
+                transport.put(responsible.address(), put);
+            } catch (RuntimeException e) {
+                logger.debug("Failed to store topics on " + responsible.nodeId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Drops a peer that didn't answer from every routing structure
+    private synchronized void forget(Node node) {
+        if (node.address().equals(self.address())) {
+            return;
+        }
+        for (int i = 0; i < FINGERS; i++) {
+            Node finger = fingers.get(i);
+            if (finger != null && finger.address().equals(node.address())) {
+                fingers.compareAndSet(i, finger, null);
+            }
+        }
+        List<Node> remaining = new ArrayList<>(successors);
+        remaining.removeIf(successor -> successor.address().equals(node.address()));
+        successors = remaining.isEmpty() ? List.of(self) : List.copyOf(remaining);
+        if (predecessor != null && predecessor.address().equals(node.address())) {
+            predecessor = null;
+        }
+    }
+
+    // Whether x lies in the ring interval (a, b]; the whole ring when a == b
+    private static boolean inHalfOpen(long x, long a, long b) {
+        long span = b - a;
+        long distance = x - a;
+        return span == 0 || (distance != 0 && Long.compareUnsigned(distance, span) <= 0);
+    }
+
+    // Whether x lies in the ring interval (a, b); the whole ring but a when a == b
+    private static boolean inOpen(long x, long a, long b) {
+        long span = b - a;
+        long distance = x - a;
+        return distance != 0 && (span == 0 || Long.compareUnsigned(distance, span) < 0);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.p2p;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Resolves topics through the Chord ring the peers form with ChordProtocol, so no indexing server is needed.
+// The peer joins once it has a node ID, through the first of peer.dht.seeds that answers, and runs one
+// maintenance round every peer.dht.interval-ms over HTTP to the other peers' ChordController. A lookup makes
+// blocking calls hop by hop, so it runs on a virtual thread.
+@Component
+@ConditionalOnProperty(name = "peer.discovery.mode", havingValue = "DHT")
+public class ChordTopicResolver implements TopicResolver {
+
+    private final InterNodeClient interNodeClient;
+    private final List<String> seeds;
+    private final int successorCount;
+    private final long republishMillis;
+    private final long rpcTimeoutMillis;
+    private final ExecutorService lookups = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile ChordProtocol protocol;
+
+    public ChordTopicResolver(
+            InterNodeClient interNodeClient,
+            @Value("${peer.dht.seeds:}") List<String> seeds,
+            @Value("${peer.dht.successors:4}") int successorCount,
+            @Value("${peer.dht.republish-ms:10000}") long republishMillis,
+            @Value("${peer.dht.rpc-timeout-ms:1000}") long rpcTimeoutMillis) {
+        this.interNodeClient = interNodeClient;
+        this.seeds = seeds.stream().filter(seed -> !seed.isBlank()).map(String::strip).toList();
+        this.successorCount = successorCount;
+        this.republishMillis = republishMillis;
+        this.rpcTimeoutMillis = rpcTimeoutMillis;
+    }
+
+    @Override
+    public CompletableFuture<TopicLocation> resolve(String topic) {
+        ChordProtocol current = protocol;
+        if (current == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            ChordProtocol.Node owner = current.resolve(topic).owner();
+            return owner != null ? new TopicLocation(owner.nodeId(), owner.address()) : null;
+        }, lookups);
+    }
+
+    @Override
+    public void announce(String nodeId, String address, Collection<String> topics) {
+        ChordProtocol current;
+        synchronized (this) {
+            if (protocol == null || !protocol.getSelf().nodeId().equals(nodeId)) {
+                protocol = new ChordProtocol(nodeId, address, seeds, new HttpTransport(), successorCount,
+                        republishMillis, System::currentTimeMillis);
+                protocol.join();
+            }
+            current = protocol;
+        }
+        current.announce(topics);
+    }
+
+    // Returns the protocol once this peer has joined, or null before it has a node ID.
+    public ChordProtocol getProtocol() {
+        return protocol;
+    }
+
+    @Scheduled(fixedDelayString = "${peer.dht.interval-ms:500}")
+    public void maintain() {
+        ChordProtocol current = protocol;
+        if (current != null) {
+            current.round();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        ChordProtocol current = protocol;
+        return current != null ? Map.of("mode", "DHT", "dht", current.getMetrics()) : Map.of("mode", "DHT");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lookups.shutdownNow();
+    }
+
+    private final class HttpTransport implements ChordProtocol.Transport {
+
+        private <T> T await(CompletableFuture<T> call) {
+            return call.orTimeout(rpcTimeoutMillis, TimeUnit.MILLISECONDS).join();
+        }
+
+        @Override
+        public ChordProtocol.Step findSuccessor(String address, long key) {
+            return await(interNodeClient.getAsync(address + "/peer/dht/find_successor?key=" + key, ChordProtocol.Step.class));
+        }
+
+        @Override
+        public ChordProtocol.Neighbours neighbours(String address) {
+            return await(interNodeClient.getAsync(address + "/peer/dht/neighbours", ChordProtocol.Neighbours.class));
+        }
+
+        @Override
+        public void notify(String address, ChordProtocol.Node candidate) {
+            await(interNodeClient.postAsync(address + "/peer/dht/notify", candidate));
+        }
+
+        @Override
+        public void put(String address, List<ChordProtocol.Entry> entries) {
+            await(interNodeClient.postAsync(address + "/peer/dht/put", entries));
+        }
+
+        @Override
+        public void remove(String address, String topic, String ownerAddress) {
+            await(interNodeClient.postAsync(address + "/peer/dht/remove", Map.of("topic", topic, "owner_address", ownerAddress)));
+        }
+
+        @Override
+        public ChordProtocol.Node get(String address, String topic) {
+            return await(interNodeClient.getAsync(address + "/peer/dht/get/" + topic, ChordProtocol.Entry.class)).owner();
+        }
+    }
+}
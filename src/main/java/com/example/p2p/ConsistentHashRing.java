@@ -0,0 +1,75 @@
+package com.example.p2p;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Consistent-hash ring mapping string keys to nodes.
+//
+// Each node is placed at virtualNodes points on a 64-bit ring and a key belongs to the first point
+// at or after the key's hash, so adding or removing a node only moves the keys between its points
+// and their predecessors; every other key keeps its owner. Lookups never lock.
+public class ConsistentHashRing<T> {
+
+    private final int virtualNodes;
+    private final NavigableMap<Long, T> ring = new ConcurrentSkipListMap<>();
+    private final Set<T> nodes = ConcurrentHashMap.newKeySet();
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    public synchronized void add(T node) {
+        if (nodes.add(node)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public synchronized void remove(T node) {
+        if (nodes.remove(node)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.remove(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    // Returns the node owning the key, or null if the ring is empty.
+    public T nodeFor(String key) {
+        Map.Entry<Long, T> owner = ring.ceilingEntry(hash(key));
+        if (owner == null) {
+            owner = ring.firstEntry();
+        }
+        return owner == null ? null : owner.getValue();
+    }
+
+    public Set<T> getNodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    // FNV-1a over the UTF-16 code units, then the MurmurHash3 finalizer to spread nearby keys
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.p2p;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+// Endpoints other peers call while gossiping with this one in GOSSIP discovery mode. A peer that has not
+// joined yet answers pings but has nothing to sync.
+@RestController
+@RequestMapping("/peer/gossip")
+@ConditionalOnProperty(name = "peer.discovery.mode", havingValue = "GOSSIP")
+public class GossipController {
+
+    private final GossipTopicResolver gossipTopicResolver;
+
+    public GossipController(GossipTopicResolver gossipTopicResolver) {
+        this.gossipTopicResolver = gossipTopicResolver;
+    }
+
+    @PostMapping("/ping")
+    public Map<String, Object> ping() {
+        return Map.of("status", "ok");
+    }
+
+    @PostMapping("/ping_req")
+    public Map<String, Object> pingRequest(@RequestBody Map<String, Object> body) {
+        GossipProtocol protocol = gossipTopicResolver.getProtocol();
+        boolean reached = protocol != null && protocol.handlePingRequest((String) body.get("target"));
+        return Map.of("status", "ok", "reached", reached);
+    }
+
+    @PostMapping("/sync")
+    public GossipProtocol.SyncReply sync(@RequestBody GossipProtocol.SyncRequest request) {
+        GossipProtocol protocol = gossipTopicResolver.getProtocol();
+        if (protocol == null) {
+            return new GossipProtocol.SyncReply(List.of(), List.of());
+        }
+        return protocol.handleSync(request);
+    }
+
+    @PostMapping("/push")
+    public Map<String, Object> push(@RequestBody List<GossipProtocol.Member> members) {
+        GossipProtocol protocol = gossipTopicResolver.getProtocol();
+        if (protocol != null) {
+            protocol.handlePush(members);
+        }
+        return Map.of("status", "ok");
+    }
+
+    @GetMapping("/members")
+    public List<GossipProtocol.Member> members() {
+        GossipProtocol protocol = gossipTopicResolver.getProtocol();
+        return protocol != null ? protocol.getMembers() : List.of();
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Membership and topic ownership of a cluster without an indexing server, kept by gossip between peers.
+//
+// Every node owns one Member entry: its address, its hosted topics and a version of them, an incarnation
+// number and a status. Entries are ordered by incarnation, then status (ALIVE before SUSPECT before DEAD),
+// then topic version, and a node keeps the greatest entry it has seen for every member. Only the node itself
+// raises its incarnation, which it does to refute being suspected.
+//
+// Each round() does two things, as in SWIM:
+//
+// - Failure detection: one member, taken in a shuffled round-robin order, is pinged. If it doesn't answer,
+//   indirectProbes other members are asked to ping it; if none of them reaches it either, it becomes SUSPECT,
+//   and DEAD once suspectTimeoutMillis pass without it refuting that.
+// - Anti-entropy: a digest of every entry (versions only, no topics) is sent to one random member, which
+//   answers with the entries it has newer and the IDs of those it lacks, and those are pushed back.
+//
+// A push-pull exchange with a random member per round spreads a change to all N nodes in O(log N) rounds, and
+// each round costs a node a constant number of messages. A node that knows no members yet syncs with one of
+// its seed addresses to join.
+//
+// The protocol doesn't send anything itself; a Transport carries its calls, so it runs the same over HTTP
+// between peers and in memory in a simulation.
+public class GossipProtocol {
+
+    private static final Logger logger = LoggerFactory.getLogger(GossipProtocol.class);
+
+    public enum Status {
+        ALIVE,
+        SUSPECT,
+        DEAD
+    }
+
+    // One node's entry in the view: where it is, which topics it hosts, and how current this entry is.
+    public record Member(@JsonProperty("node_id") String nodeId, String address, long incarnation, Status status,
+                         @JsonProperty("topics_version") long topicsVersion, Set<String> topics) {
+
+        public Digest digest() {
+            return new Digest(nodeId, incarnation, status, topicsVersion);
+        }
+
+        Member withStatus(Status newStatus) {
+            return new Member(nodeId, address, incarnation, newStatus, topicsVersion, topics);
+        }
+    }
+
+    // The version of a member's entry, as exchanged in anti-entropy.
+    public record Digest(@JsonProperty("node_id") String nodeId, long incarnation, Status status,
+                         @JsonProperty("topics_version") long topicsVersion) {
+
+        // Orders entries of the same member; positive when this one is newer.
+        public int compareTo(Digest other) {
+            if (incarnation != other.incarnation) {
+                return Long.compare(incarnation, other.incarnation);
+            }
+            if (status != other.status) {
+                return status.compareTo(other.status);
+            }
+            return Long.compare(topicsVersion, other.topicsVersion);
+        }
+    }
+
+    // Anti-entropy request: the sender's own entry and the version of every entry it holds.
+    public record SyncRequest(Member from, List<Digest> digests) {
+    }
+
+    // Anti-entropy answer: entries newer than the caller's, and IDs of entries the caller has newer.
+    public record SyncReply(List<Member> updates, List<String> wanted) {
+    }
+
+    // Carries the protocol's calls to other nodes; a call that fails or times out throws.
+    public interface Transport {
+
+        void ping(String address);
+
+        // Asks the node at via to ping target and returns whether it got an answer.
+        boolean pingRequest(String via, String target);
+
+        SyncReply sync(String address, SyncRequest request);
+
+        void push(String address, List<Member> members);
+    }
+
+    private final Transport transport;
+    private final List<String> seeds;
+    private final int indirectProbes;
+    private final long suspectTimeoutMillis;
+    private final LongSupplier clock;
+    private final Random random;
+
+    private final Map<String, Member> members = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> ownersByTopic = new ConcurrentHashMap<>();
+    private final Map<String, Long> suspectedAt = new ConcurrentHashMap<>();
+    private volatile Member self;
+
+    private final List<String> probeOrder = new ArrayList<>();
+    private int probeIndex;
+
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong entriesSent = new AtomicLong();
+    private final AtomicLong suspicions = new AtomicLong();
+    private final AtomicLong refutations = new AtomicLong();
+
+    public GossipProtocol(String nodeId, String address, Collection<String> seeds, Transport transport,
+                          int indirectProbes, long suspectTimeoutMillis, LongSupplier clock, Random random) {
+        this.transport = transport;
+        this.seeds = List.copyOf(seeds);
+        this.indirectProbes = indirectProbes;
+        this.suspectTimeoutMillis = suspectTimeoutMillis;
+        this.clock = clock;
+        this.random = random;
+        this.self = new Member(nodeId, address, 0, Status.ALIVE, 0, Set.of());
+        members.put(nodeId, self);
+    }
+
+    public String getNodeId() {
+        return self.nodeId();
+    }
+
+    // Replaces the topics this node hosts; the change reaches the other nodes through anti-entropy.
+    public synchronized void announce(Collection<String> topics) {
+        Member current = self;
+        apply(new Member(current.nodeId(), current.address(), current.incarnation(), Status.ALIVE,
+                current.topicsVersion() + 1, Set.copyOf(topics)));
+    }
+
+    // Runs one protocol period: expire suspicions, probe one member, and sync with another.
+    public void round() {
+        rounds.incrementAndGet();
+        expireSuspects();
+        probe();
+        antiEntropy();
+    }
+
+    // Returns the live member hosting the topic, preferring ALIVE ones, or null if there is none.
+    public Member resolve(String topic) {
+        Set<String> owners = ownersByTopic.get(topic);
+        if (owners == null) {
+            return null;
+        }
+        Member best = null;
+        for (String owner : owners) {
+            Member member = members.get(owner);
+            if (member == null || member.status() == Status.DEAD || !member.topics().contains(topic)) {
+                continue;
+            }
+            if (best == null || member.status().compareTo(best.status()) < 0
+                    || (member.status() == best.status() && member.nodeId().compareTo(best.nodeId()) < 0)) {
+                best = member;
+            }
+        }
+        return best;
+    }
+
+    // Answers an anti-entropy request and learns the sender's own entry.
+    public SyncReply handleSync(SyncRequest request) {
+        merge(request.from());
+        Map<String, Digest> theirs = new HashMap<>();
+        for (Digest digest : request.digests()) {
+            theirs.put(digest.nodeId(), digest);
+        }
+        List<Member> updates = new ArrayList<>();
+        for (Member member : members.values()) {
+            Digest their = theirs.get(member.nodeId());
+            if (their == null || member.digest().compareTo(their) > 0) {
+                updates.add(member);
+            }
+        }
+        List<String> wanted = new ArrayList<>();
+        for (Digest digest : request.digests()) {
+            Member mine = members.get(digest.nodeId());
+            if (mine == null || digest.compareTo(mine.digest()) > 0) {
+                wanted.add(digest.nodeId());
+            }
+        }
+        entriesSent.addAndGet(updates.size());
+        return new SyncReply(updates, wanted);
+    }
+
+    // Merges entries pushed by another node.
+    public void handlePush(List<Member> pushed) {
+        pushed.forEach(this::merge);
+    }
+
+    // Pings a member on behalf of another node that couldn't reach it.
+    public boolean handlePingRequest(String target) {
+        try {
+            messages.incrementAndGet();
+            transport.ping(target);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Returns every entry in this node's view, its own included.
+    public List<Member> getMembers() {
+        return List.copyOf(members.values());
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<Status, Integer> byStatus = new EnumMap<>(Status.class);
+        for (Member member : members.values()) {
+            byStatus.merge(member.status(), 1, Integer::sum);
+        }
+        return Map.of(
+                "members", byStatus,
+                "topics", ownersByTopic.size(),
+                "incarnation", self.incarnation(),
+                "rounds", rounds.get(),
+                "messages", messages.get(),
+                "entries_sent", entriesSent.get(),
+                "suspicions", suspicions.get(),
+                "refutations", refutations.get()
+        );
+    }
+
+    public long getMessageCount() {
+        return messages.get();
+    }
+
+    public long getEntriesSent() {
+        return entriesSent.get();
+    }
+
+    private void expireSuspects() {
+        long now = clock.getAsLong();
+        suspectedAt.forEach((nodeId, since) -> {
+            Member member = members.get(nodeId);
+            if (member != null && member.status() == Status.SUSPECT && now - since >= suspectTimeoutMillis) {
+                logger.warn("Gossip member " + nodeId + " did not refute its suspicion, marking it dead");
+                apply(member.withStatus(Status.DEAD));
+            }
+        });
+    }
+
+    private void probe() {
+        Member target = nextProbeTarget();
+        if (target == null) {
+            return;
+        }
+        try {
+            messages.incrementAndGet();
+            transport.ping(target.address());
+            return;
+        } catch (RuntimeException e) {
+            logger.debug("Gossip ping to " + target.nodeId() + " failed: " + e.getMessage());
+        }
+
+        // The target may only be unreachable from here, so others try before it is suspected
+        List<Member> helpers = otherLiveMembers();
+        helpers.remove(target);
+        Collections.shuffle(helpers, random);
+        for (Member helper : helpers.subList(0, Math.min(indirectProbes, helpers.size()))) {
+            try {
+                messages.incrementAndGet();
+                if (transport.pingRequest(helper.address(), target.address())) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                logger.debug("Gossip ping request through " + helper.nodeId() + " failed: " + e.getMessage());
+            }
+        }
+        Member current = members.get(target.nodeId());
+        if (current != null && current.status() == Status.ALIVE && current.incarnation() == target.incarnation()) {
+            suspicions.incrementAndGet();
+            apply(current.withStatus(Status.SUSPECT));
+        }
+    }
+
+    private Member nextProbeTarget() {
+        // Randomized round-robin: every member is probed once per pass, in a fresh order each pass
+        for (int attempts = 0; attempts < 2; attempts++) {
+            while (probeIndex < probeOrder.size()) {
+                Member member = members.get(probeOrder.get(probeIndex++));
+                if (member != null && member.status() != Status.DEAD) {
+                    return member;
+                }
+            }
+            probeOrder.clear();
+            otherLiveMembers().forEach(member -> probeOrder.add(member.nodeId()));
+            Collections.shuffle(probeOrder, random);
+            probeIndex = 0;
+        }
+        return null;
+    }
+
+    private void antiEntropy() {
+        List<Member> candidates = otherLiveMembers();
+        String address;
+        if (!candidates.isEmpty()) {
+            address = candidates.get(random.nextInt(candidates.size())).address();
+        } else {
+            List<String> otherSeeds = new ArrayList<>(seeds);
+            otherSeeds.remove(self.address());
+            if (otherSeeds.isEmpty()) {
+                return;
+            }
+            address = otherSeeds.get(random.nextInt(otherSeeds.size()));
+        }
+
+        List<Digest> digests = new ArrayList<>(members.size());
+        members.values().forEach(member -> digests.add(member.digest()));
+        SyncReply reply;
+        try {
+            messages.incrementAndGet();
+            entriesSent.incrementAndGet();
+            reply = transport.sync(address, new SyncRequest(self, digests));
+        } catch (RuntimeException e) {
+            logger.debug("Gossip sync with " + address + " failed: " + e.getMessage());
+            return;
+        }
+        reply.updates().forEach(this::merge);
+
+        List<Member> wanted = new ArrayList<>(reply.wanted().size());
+        for (String nodeId : reply.wanted()) {
+            Member member = members.get(nodeId);
+            if (member != null) {
+                wanted.add(member);
+            }
+        }
+        if (!wanted.isEmpty()) {
+            try {
+                messages.incrementAndGet();
+                entriesSent.addAndGet(wanted.size());
+                transport.push(address, wanted);
+            } catch (RuntimeException e) {
+                logger.debug("Gossip push to " + address + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private List<Member> otherLiveMembers() {
+        List<Member> others = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.status() != Status.DEAD && !member.nodeId().equals(self.nodeId())) {
+                others.add(member);
+            }
+        }
+        return others;
+    }
+
+    // Keeps the newer of the incoming entry and the one held; news of this node's own suspicion or death
+    // is refuted by raising its incarnation instead
+    private synchronized void merge(Member incoming) {
+        if (incoming.nodeId().equals(self.nodeId())) {
+            if (incoming.status() != Status.ALIVE && incoming.incarnation() >= self.incarnation()) {
+                refutations.incrementAndGet();
+                Member current = self;
+                apply(new Member(current.nodeId(), current.address(), incoming.incarnation() + 1, Status.ALIVE,
+                        current.topicsVersion(), current.topics()));
+            }
+            return;
+        }
+        Member current = members.get(incoming.nodeId());
+        if (current == null || incoming.digest().compareTo(current.digest()) > 0) {
+            apply(incoming);
+        }
+    }
+
+    private synchronized void apply(Member member) {
+        Member previous = members.put(member.nodeId(), member);
+        if (member.nodeId().equals(self.nodeId())) {
+            self = member;
+        }
+        if (member.status() == Status.SUSPECT) {
+            if (previous == null || previous.status() != Status.SUSPECT) {
+                suspectedAt.put(member.nodeId(), clock.getAsLong());
+            }
+        } else {
+            suspectedAt.remove(member.nodeId());
+        }
+
+        Set<String> before = previous == null ? Set.of() : previous.topics();
+        Set<String> after = member.topics() == null ? Set.of() : member.topics();
+        if (before.equals(after)) {
+            return;
+        }
+        for (String topic : before) {
+            if (!after.contains(topic)) {
+                ownersByTopic.computeIfPresent(topic, (t, owners) -> {
+                    owners.remove(member.nodeId());
+                    return owners.isEmpty() ? null : owners;
+                });
+            }
+        }
+        for (String topic : after) {
+            if (!before.contains(topic)) {
+                ownersByTopic.computeIfAbsent(topic, t -> ConcurrentHashMap.newKeySet()).add(member.nodeId());
+            }
+        }
+    }
+}
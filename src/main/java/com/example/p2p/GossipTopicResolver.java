@@ -0,0 +1,115 @@
+package com.example.p2p;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Resolves topics from the view of the cluster this peer keeps through GossipProtocol, so no indexing
+// server is needed. The peer joins once it has a node ID, by gossiping with the peers listed in
+// peer.gossip.seeds, and runs one protocol round every peer.gossip.interval-ms over HTTP to the other
+// peers' GossipController. Rounds run on the scheduler thread shared with the other periodic tasks, so
+// every call a round waits for is bounded by a timeout.
+@Component
+@ConditionalOnProperty(name = "peer.discovery.mode", havingValue = "GOSSIP")
+public class GossipTopicResolver implements TopicResolver {
+
+    private final InterNodeClient interNodeClient;
+    private final List<String> seeds;
+    private final long pingTimeoutMillis;
+    private final long syncTimeoutMillis;
+    private final long suspectTimeoutMillis;
+    private final int indirectProbes;
+
+    private volatile GossipProtocol protocol;
+
+    public GossipTopicResolver(
+            InterNodeClient interNodeClient,
+            @Value("${peer.gossip.seeds:}") List<String> seeds,
+            @Value("${peer.gossip.ping-timeout-ms:500}") long pingTimeoutMillis,
+            @Value("${peer.gossip.sync-timeout-ms:1000}") long syncTimeoutMillis,
+            @Value("${peer.gossip.suspect-ms:3000}") long suspectTimeoutMillis,
+            @Value("${peer.gossip.indirect-probes:2}") int indirectProbes) {
+        this.interNodeClient = interNodeClient;
+        this.seeds = seeds.stream().filter(seed -> !seed.isBlank()).map(String::strip).toList();
+        this.pingTimeoutMillis = pingTimeoutMillis;
+        this.syncTimeoutMillis = syncTimeoutMillis;
+        this.suspectTimeoutMillis = suspectTimeoutMillis;
+        this.indirectProbes = indirectProbes;
+    }
+
+    @Override
+    public CompletableFuture<TopicLocation> resolve(String topic) {
+        GossipProtocol current = protocol;
+        GossipProtocol.Member member = current != null ? current.resolve(topic) : null;
+        return CompletableFuture.completedFuture(member != null ? new TopicLocation(member.nodeId(), member.address()) : null);
+    }
+
+    @Override
+    public synchronized void announce(String nodeId, String address, Collection<String> topics) {
+        if (protocol == null || !protocol.getNodeId().equals(nodeId)) {
+            protocol = new GossipProtocol(nodeId, address, seeds, new HttpTransport(), indirectProbes,
+                    suspectTimeoutMillis, System::currentTimeMillis, new Random());
+        }
+        protocol.announce(topics);
+    }
+
+    // Returns the protocol once this peer has joined, or null before it has a node ID.
+    public GossipProtocol getProtocol() {
+        return protocol;
+    }
+
+    @Scheduled(fixedDelayString = "${peer.gossip.interval-ms:500}")
+    public void gossip() {
+        GossipProtocol current = protocol;
+        if (current != null) {
+            current.round();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        GossipProtocol current = protocol;
+        return current != null ? Map.of("mode", "GOSSIP", "gossip", current.getMetrics()) : Map.of("mode", "GOSSIP");
+    }
+
+    private final class HttpTransport implements GossipProtocol.Transport {
+
+        @Override
+        public void ping(String address) {
+            interNodeClient.postAsync(address + "/peer/gossip/ping", Map.of())
+                    .orTimeout(pingTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .join();
+        }
+
+        @Override
+        public boolean pingRequest(String via, String target) {
+            // The helper pings the target itself, so it gets twice the time of a direct ping
+            Map<String, Object> response = interNodeClient.postAsync(via + "/peer/gossip/ping_req", Map.of("target", target))
+                    .orTimeout(2 * pingTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .join();
+            return Boolean.TRUE.equals(response.get("reached"));
+        }
+
+        @Override
+        public GossipProtocol.SyncReply sync(String address, GossipProtocol.SyncRequest request) {
+            return interNodeClient.postAsync(address + "/peer/gossip/sync", request, GossipProtocol.SyncReply.class)
+                    .orTimeout(syncTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .join();
+        }
+
+        @Override
+        public void push(String address, List<GossipProtocol.Member> members) {
+            interNodeClient.postAsync(address + "/peer/gossip/push", members)
+                    .orTimeout(syncTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .join();
+        }
+    }
+}
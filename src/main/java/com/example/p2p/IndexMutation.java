@@ -0,0 +1,62 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// This record is one change to the topic index, numbered in the order the leader applied it. Replaying
+// the same mutations in sequence order on another IndexingRegistry reproduces the leader's state.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IndexMutation(long sequence, Type type, @JsonProperty("node_id") String nodeId, List<String> topics,
+                            long version, @JsonProperty("base_version") long baseVersion,
+                            List<String> added, List<String> removed, String address) {
+
+    public enum Type {
+        REGISTER,
+        UPDATE_TOPICS,
+        APPLY_DELTA,
+        UNREGISTER,
+        // Topics handed to the named node; recorded with the node the leader picked so replicas agree
+        MIGRATE,
+        // The nodes holding copies of the one topic in topics, hosted by the named node; listed in added
+        SET_REPLICAS
+    }
+
+    public static IndexMutation register(long sequence, String nodeId, List<String> topics, long version, String address) {
+        return new IndexMutation(sequence, Type.REGISTER, nodeId, topics, version, 0, null, null, address);
+    }
+
+    public static IndexMutation updateTopics(long sequence, String nodeId, List<String> topics) {
+        return new IndexMutation(sequence, Type.UPDATE_TOPICS, nodeId, topics, 0, 0, null, null, null);
+    }
+
+    public static IndexMutation applyDelta(long sequence, String nodeId, long baseVersion, long version,
+                                           List<String> added, List<String> removed) {
+        return new IndexMutation(sequence, Type.APPLY_DELTA, nodeId, null, version, baseVersion, added, removed, null);
+    }
+
+    public static IndexMutation unregister(long sequence, String nodeId) {
+        return new IndexMutation(sequence, Type.UNREGISTER, nodeId, null, 0, 0, null, null, null);
+    }
+
+    public static IndexMutation migrate(long sequence, String nodeId, List<String> topics) {
+        return new IndexMutation(sequence, Type.MIGRATE, nodeId, topics, 0, 0, null, null, null);
+    }
+
+    public static IndexMutation setReplicas(long sequence, String nodeId, String topic, List<String> replicas) {
+        return new IndexMutation(sequence, Type.SET_REPLICAS, nodeId, List.of(topic), 0, 0, replicas, null, null);
+    }
+
+    // This method applies the mutation to a replica's registry
+    public void applyTo(IndexingRegistry registry) {
+        switch (type) {
+            case REGISTER -> registry.register(nodeId, topics, version, address);
+            case UPDATE_TOPICS -> registry.updateTopics(nodeId, topics);
+            case APPLY_DELTA -> registry.applyDelta(nodeId, baseVersion, version, added, removed);
+            case UNREGISTER -> registry.unregister(nodeId);
+            case MIGRATE -> registry.migrateTopicsTo(nodeId, topics);
+            case SET_REPLICAS -> registry.setReplicas(nodeId, topics.get(0), added);
+        }
+    }
+}
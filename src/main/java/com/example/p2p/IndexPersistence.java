@@ -0,0 +1,424 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes and Spring Framework annotations
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// This component keeps the topic index on disk, so a restarted indexing server has its peers'
+// registrations back before it serves a single request.
+//
+// Every index mutation is appended to a write-ahead log before the request returns. The log is split
+// into segments named after the first sequence number they hold. Every snapshotEvery mutations the
+// whole index is written to a compact snapshot in the background, and the segments it covers are
+// deleted, so recovery reads one snapshot plus the mutations made since then, however long the
+// cluster has been running.
+//
+// A WAL record is [int length][int CRC32 of the body][body]; a record cut short by a crash fails its
+// length or checksum and is truncated on recovery, along with everything after it.
+@Component
+public class IndexPersistence {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexPersistence.class);
+
+    // These numbers identify snapshot files and the layout they were written with; format 2 added
+    // each topic's replicas, format 3 whether the index moved topics to the node, and older formats
+    // are still read
+    private static final int SNAPSHOT_MAGIC = 0x50325049;
+    private static final int SNAPSHOT_FORMAT = 3;
+
+    private static final IndexMutation.Type[] TYPES = IndexMutation.Type.values();
+
+    // This record is what recovery found: the epoch and sequence the index is current to, and how much
+    // of it came from the snapshot and from the log
+    public record Recovered(long epoch, long sequence, int snapshotNodes, long replayedMutations) {
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final boolean fsync;
+    private final long snapshotEvery;
+
+    // Snapshots are written off the request path, one at a time
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable ->
+            Thread.ofPlatform().name("index-snapshot").daemon().unstarted(runnable));
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+
+    // These are only touched by the caller holding the replicator's lock
+    private FileChannel segment;
+    private long lastSnapshotSequence;
+    private long appended;
+
+    public IndexPersistence(
+            @Value("${indexing.persistence.enabled:false}") boolean enabled,
+            @Value("${indexing.persistence.dir:data/index}") Path directory,
+            @Value("${indexing.persistence.fsync:false}") boolean fsync,
+            @Value("${indexing.persistence.snapshot-every:100000}") long snapshotEvery) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.fsync = fsync;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // This method checks whether the index is persisted at all
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // This method loads the newest snapshot into the registry, replays the log after it, and opens a new
+    // log segment for the mutations to come
+    public Recovered recover(IndexingRegistry registry) {
+        try {
+            Files.createDirectories(directory);
+            long epoch = 0;
+            long sequence = 0;
+            int snapshotNodes = 0;
+
+            List<Path> snapshots = list("snapshot-", ".bin");
+            for (int i = snapshots.size() - 1; i >= 0; i--) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshots.get(i)), 1 << 16))) {
+                    int format = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+                    if (format < 1 || format > SNAPSHOT_FORMAT) {
+                        throw new IOException("not a snapshot");
+                    }
+                    epoch = in.readLong();
+                    sequence = in.readLong();
+                    List<IndexingRegistry.NodeState> nodes = readNodes(in, format);
+                    registry.restore(nodes);
+                    snapshotNodes = nodes.size();
+                    break;
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable snapshot " + snapshots.get(i) + ": " + e.getMessage());
+                    epoch = 0;
+                    sequence = 0;
+                }
+            }
+            lastSnapshotSequence = sequence;
+
+            long replayed = 0;
+            for (Path file : list("wal-", ".log")) {
+                boolean gap = false;
+                long valid = 0;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                    byte[] body;
+                    while ((body = readRecord(in)) != null) {
+                        IndexMutation mutation = readMutation(new DataInputStream(new ByteArrayInputStream(body)));
+                        if (mutation.sequence() > sequence + 1) {
+                            gap = true;
+                            break;
+                        }
+                        if (mutation.sequence() == sequence + 1) {
+                            mutation.applyTo(registry);
+                            sequence++;
+                            replayed++;
+                        }
+                        valid += 2 * Integer.BYTES + body.length;
+                    }
+                }
+                if (gap) {
+                    logger.warn("Write-ahead log " + file + " does not continue from sequence " + sequence + ", ignoring the rest");
+                    break;
+                }
+                if (valid < Files.size(file)) {
+                    logger.warn("Truncating torn write-ahead log record at byte " + valid + " of " + file);
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        channel.truncate(valid);
+                    }
+                }
+            }
+
+            openSegment(sequence + 1);
+            logger.info("Recovered index at sequence " + sequence + ": " + snapshotNodes + " nodes from snapshot, "
+                    + replayed + " mutations from the write-ahead log");
+            return new Recovered(epoch, sequence, snapshotNodes, replayed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover the index from " + directory, e);
+        }
+    }
+
+    // This method appends one mutation to the log; callers hold the replicator's lock so records are
+    // written in sequence order
+    public void append(IndexMutation mutation) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeMutation(out, mutation);
+            byte[] body = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body);
+
+            ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + body.length);
+            record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+            while (record.hasRemaining()) {
+                segment.write(record);
+            }
+            if (fsync) {
+                segment.force(false);
+            }
+            appended++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the write-ahead log", e);
+        }
+    }
+
+    // This method checks whether enough mutations were logged since the last snapshot to take another
+    public boolean isSnapshotDue(long sequence) {
+        return sequence - lastSnapshotSequence >= snapshotEvery && !snapshotRunning.get();
+    }
+
+    // This method starts a new log segment after the given sequence and writes the nodes as the snapshot
+    // for that sequence, in the background unless wait is set. Callers hold the replicator's lock while
+    // this copies the node list, so the snapshot matches the sequence exactly.
+    public void snapshot(long epoch, long sequence, List<IndexingRegistry.NodeState> nodes, boolean wait) {
+        try {
+            openSegment(sequence + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start a new write-ahead log segment", e);
+        }
+        lastSnapshotSequence = sequence;
+        snapshotRunning.set(true);
+        var written = snapshotWriter.submit(() -> {
+            try {
+                writeSnapshot(epoch, sequence, nodes);
+            } catch (IOException e) {
+                logger.error("Failed to write index snapshot at sequence " + sequence, e);
+            } finally {
+                snapshotRunning.set(false);
+            }
+        });
+        if (wait) {
+            try {
+                written.get();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to write index snapshot", e);
+            }
+        }
+    }
+
+    // This method returns where persistence stands, for the metrics endpoint
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        if (enabled) {
+            status.put("directory", directory.toString());
+            status.put("last_snapshot_sequence", lastSnapshotSequence);
+            status.put("appended_since_start", appended);
+        }
+        return status;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+    }
+
+    private void writeSnapshot(long epoch, long sequence, List<IndexingRegistry.NodeState> nodes) throws IOException {
+        Path file = directory.resolve(String.format("snapshot-%020d.bin", sequence));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeLong(epoch);
+            out.writeLong(sequence);
+            out.writeInt(nodes.size());
+            for (IndexingRegistry.NodeState node : nodes) {
+                writeString(out, node.nodeId());
+                writeString(out, node.address());
+                out.writeLong(node.version());
+                writeStrings(out, List.copyOf(node.topics()));
+                Map<String, List<String>> replicas = node.replicas() == null ? Map.of() : node.replicas();
+                out.writeInt(replicas.size());
+                for (Map.Entry<String, List<String>> replica : replicas.entrySet()) {
+                    writeString(out, replica.getKey());
+                    writeStrings(out, replica.getValue());
+                }
+                out.writeBoolean(node.indexAhead());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        // Only a complete snapshot ever carries the final name
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // Older snapshots and the log segments this one covers are no longer needed
+        for (Path older : list("snapshot-", ".bin")) {
+            if (sequenceOf(older) < sequence) {
+                Files.deleteIfExists(older);
+            }
+        }
+        for (Path covered : list("wal-", ".log")) {
+            if (sequenceOf(covered) <= sequence) {
+                Files.deleteIfExists(covered);
+            }
+        }
+        logger.info("Wrote index snapshot of " + nodes.size() + " nodes at sequence " + sequence);
+    }
+
+    private static List<IndexingRegistry.NodeState> readNodes(DataInputStream in, int format) throws IOException {
+        int count = in.readInt();
+        List<IndexingRegistry.NodeState> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String nodeId = readString(in);
+            String address = readString(in);
+            long version = in.readLong();
+            List<String> topics = readStrings(in);
+            Map<String, List<String>> replicas = new LinkedHashMap<>();
+            int replicated = format >= 2 ? in.readInt() : 0;
+            for (int j = 0; j < replicated; j++) {
+                replicas.put(readString(in), readStrings(in));
+            }
+            boolean indexAhead = format >= 3 && in.readBoolean();
+            nodes.add(new IndexingRegistry.NodeState(nodeId, Set.copyOf(topics), version, address, replicas, indexAhead));
+        }
+        return nodes;
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        segment = FileChannel.open(directory.resolve(String.format("wal-%020d.log", firstSequence)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // This method reads the body of the next record, or returns null at the end of the log or at a torn record
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > 1 << 26) {
+                return null;
+            }
+            byte[] body = in.readNBytes(length);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (body.length != length || (int) crc.getValue() != checksum) {
+                return null;
+            }
+            return body;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeMutation(DataOutputStream out, IndexMutation mutation) throws IOException {
+        out.writeLong(mutation.sequence());
+        out.writeByte(mutation.type().ordinal());
+        writeString(out, mutation.nodeId());
+        writeStrings(out, mutation.topics());
+        out.writeLong(mutation.version());
+        out.writeLong(mutation.baseVersion());
+        writeStrings(out, mutation.added());
+        writeStrings(out, mutation.removed());
+        writeString(out, mutation.address());
+    }
+
+    private static IndexMutation readMutation(DataInputStream in) throws IOException {
+        return new IndexMutation(in.readLong(), TYPES[in.readByte()], readString(in), readStrings(in),
+                in.readLong(), in.readLong(), readStrings(in), readStrings(in), readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    // This method lists the files with the given prefix and suffix, oldest sequence first
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(prefix) && name.endsWith(suffix);
+                    })
+                    .sorted((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)))
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+}
@@ -0,0 +1,60 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes
+import java.util.ArrayList;
+import java.util.List;
+
+// This class keeps a bounded, sequence-numbered history of index mutations for followers to replay.
+// A follower asks for everything after the last sequence it applied; a follower that fell further
+// behind than the history gets null and has to catch up from a snapshot instead.
+public class IndexReplicationLog {
+
+    // This array is a ring holding the most recent mutations
+    private final IndexMutation[] mutations;
+
+    // This is the sequence number of the most recent mutation; mutation N lives in slot N % capacity
+    private long sequence = 0;
+
+    // This is the oldest sequence number that can still be returned
+    private long firstSequence = 1;
+
+    public IndexReplicationLog(int capacity) {
+        this.mutations = new IndexMutation[capacity];
+    }
+
+    // This method appends the next mutation, which must carry the next sequence number
+    public synchronized void append(IndexMutation mutation) {
+        if (mutation.sequence() != sequence + 1) {
+            throw new IllegalArgumentException("Expected sequence " + (sequence + 1) + " but got " + mutation.sequence());
+        }
+        sequence = mutation.sequence();
+        mutations[(int) (sequence % mutations.length)] = mutation;
+        firstSequence = Math.max(firstSequence, sequence - mutations.length + 1);
+    }
+
+    // This method returns up to max mutations after the given sequence number, or null if some of them
+    // are no longer kept or the caller is ahead of this log
+    public synchronized List<IndexMutation> since(long lastSeen, int max) {
+        if (lastSeen > sequence || lastSeen + 1 < firstSequence) {
+            return null;
+        }
+        List<IndexMutation> result = new ArrayList<>((int) Math.min(max, sequence - lastSeen));
+        for (long s = lastSeen + 1; s <= sequence && result.size() < max; s++) {
+            result.add(mutations[(int) (s % mutations.length)]);
+        }
+        return result;
+    }
+
+    // This method returns the sequence number of the most recent mutation
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    // This method drops the history and continues numbering after the given sequence, which is where
+    // a snapshot the registry was just restored from ends
+    public synchronized void reset(long sequence) {
+        this.sequence = sequence;
+        this.firstSequence = sequence + 1;
+    }
+}
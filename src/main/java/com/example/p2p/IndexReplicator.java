@@ -0,0 +1,362 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes and Spring Framework annotations
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// This component makes the indexing server's topic index survive the loss of one process.
+//
+// A LEADER applies every index mutation and appends it to an ordered log under one lock, so the log
+// order is the order the mutations were applied in. Each FOLLOWER polls the leader for the mutations
+// after the last one it applied and replays them on its own registry; it serves query_topic but refuses
+// writes. A follower that fell behind the log, or that sees the leader restarted under a new epoch,
+// catches up from a snapshot instead. A restarting leader first recovers the most recent snapshot held
+// by its replicas, so followers keep their state and the index survives a leader restart.
+// STANDALONE, the default, writes straight to the registry as before.
+//
+// With indexing.persistence.enabled every replica, whatever its role, also writes each mutation to its
+// IndexPersistence write-ahead log under the same lock, and recovers from its own disk before anything else.
+@Component
+public class IndexReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexReplicator.class);
+
+    // This is the most mutations a follower applies per request to the leader
+    private static final int BATCH_SIZE = 1000;
+
+    // This enum lists the roles an indexing server can play
+    public enum Role {
+        STANDALONE,
+        LEADER,
+        FOLLOWER
+    }
+
+    // This record is the answer to a follower's poll: the leader's epoch and latest sequence, the mutations
+    // after the follower's sequence, and whether the follower has to catch up from a snapshot instead
+    public record Batch(long epoch, long sequence, boolean reset, List<IndexMutation> mutations) {
+    }
+
+    // This record is a copy of the whole index as of the given epoch and sequence
+    public record Snapshot(long epoch, long sequence, List<IndexingRegistry.NodeState> nodes) {
+    }
+
+    private final IndexingRegistry registry;
+    private final InterNodeClient interNodeClient;
+    private final IndexReplicationLog log;
+    private final IndexPersistence persistence;
+    private final Role role;
+    private final String leaderUrl;
+    private final List<String> replicas;
+
+    // This lock makes applying a mutation and appending it to the log one step
+    private final Object lock = new Object();
+
+    // This is the epoch of the log this replica holds: a leader starts a new one each time it starts,
+    // and a follower takes the one of the leader it replicates
+    private volatile long epoch;
+
+    // These are what a follower last heard from its leader
+    private volatile long leaderSequence;
+    private volatile long lastContactMillis;
+    private volatile int snapshotsLoaded;
+
+    public IndexReplicator(
+            IndexingRegistry registry,
+            InterNodeClient interNodeClient,
+            IndexPersistence persistence,
+            @Value("${indexing.replication.role:STANDALONE}") Role role,
+            @Value("${indexing.replication.leader-url:}") String leaderUrl,
+            @Value("${indexing.replication.replicas:}") List<String> replicas,
+            @Value("${indexing.replication.log-capacity:100000}") int logCapacity) {
+        this.registry = registry;
+        this.interNodeClient = interNodeClient;
+        this.persistence = persistence;
+        this.role = role;
+        this.leaderUrl = leaderUrl;
+        this.replicas = replicas.stream().map(String::strip).filter(replica -> !replica.isEmpty()).toList();
+        this.log = new IndexReplicationLog(logCapacity);
+        if (role == Role.FOLLOWER && leaderUrl.isBlank()) {
+            throw new IllegalStateException("indexing.replication.leader-url is required for a follower");
+        }
+    }
+
+    // This method reloads the index this replica persisted, then gives a starting leader a new epoch and
+    // the state its replicas hold if that is newer
+    @PostConstruct
+    public void start() {
+        long recoveredSequence = 0;
+        if (persistence.isEnabled()) {
+            IndexPersistence.Recovered recovered;
+            synchronized (lock) {
+                recovered = persistence.recover(registry);
+                log.reset(recovered.sequence());
+            }
+            // A follower keeps the epoch it was replicating, so it can carry on from the leader's log
+            epoch = recovered.epoch();
+            recoveredSequence = recovered.sequence();
+        }
+        if (role != Role.LEADER) {
+            return;
+        }
+        epoch = System.currentTimeMillis();
+
+        // Sequences carry on across leader restarts, so the replica with the highest one has seen the most
+        Snapshot newest = null;
+        for (String replica : replicas) {
+            try {
+                Snapshot snapshot = interNodeClient.getAsync(replica + "/replication/snapshot", Snapshot.class).join();
+                if (snapshot.sequence() > recoveredSequence && (newest == null || snapshot.sequence() > newest.sequence())) {
+                    newest = snapshot;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not recover the index from replica " + replica + ": " + e.getMessage());
+            }
+        }
+        if (newest != null) {
+            synchronized (lock) {
+                registry.restore(newest.nodes());
+                log.reset(newest.sequence());
+                if (persistence.isEnabled()) {
+                    persistence.snapshot(epoch, newest.sequence(), registry.snapshot(), true);
+                }
+            }
+            logger.info("Recovered " + newest.nodes().size() + " nodes up to sequence " + newest.sequence() + " from replicas");
+        }
+        logger.info("Indexing server leading epoch " + epoch);
+    }
+
+    // This method checks whether this server only serves reads
+    public boolean isFollower() {
+        return role == Role.FOLLOWER;
+    }
+
+    // This method returns the leader that writes have to be sent to
+    public String getLeaderUrl() {
+        return leaderUrl;
+    }
+
+    // The methods below change the index; outside plain STANDALONE mode each change is logged, for the
+    // followers and for the write-ahead log
+
+    public void register(String nodeId, List<String> topics, long version, String address) {
+        if (!isLogged()) {
+            registry.register(nodeId, topics, version, address);
+            return;
+        }
+        synchronized (lock) {
+            checkLeader();
+            registry.register(nodeId, topics, version, address);
+            record(IndexMutation.register(log.getSequence() + 1, nodeId, topics, version, address));
+        }
+    }
+
+    public boolean updateTopics(String nodeId, List<String> topics) {
+        if (!isLogged()) {
+            return registry.updateTopics(nodeId, topics);
+        }
+        synchronized (lock) {
+            checkLeader();
+            boolean updated = registry.updateTopics(nodeId, topics);
+            if (updated) {
+                record(IndexMutation.updateTopics(log.getSequence() + 1, nodeId, topics));
+            }
+            return updated;
+        }
+    }
+
+    public IndexingRegistry.DeltaResult applyDelta(String nodeId, long baseVersion, long version,
+                                                   List<String> added, List<String> removed) {
+        if (!isLogged()) {
+            return registry.applyDelta(nodeId, baseVersion, version, added, removed);
+        }
+        synchronized (lock) {
+            checkLeader();
+            IndexingRegistry.DeltaResult result = registry.applyDelta(nodeId, baseVersion, version, added, removed);
+            if (result.applied()) {
+                record(IndexMutation.applyDelta(log.getSequence() + 1, nodeId, baseVersion, version, added, removed));
+            }
+            return result;
+        }
+    }
+
+    // This method removes a node and spreads its topics over the remaining nodes by load. It returns the
+    // topics each new owner received, or null if the node was not registered
+    public Map<String, List<String>> unregister(String nodeId) {
+        if (!isLogged()) {
+            return unregisterAndMigrate(nodeId);
+        }
+        synchronized (lock) {
+            checkLeader();
+            return unregisterAndMigrate(nodeId);
+        }
+    }
+
+    // This method picks the nodes that hold copies of a topic, factor - 1 of them besides its host, and
+    // records them. It returns the chosen node IDs, or null if the node doesn't host the topic
+    public List<String> assignReplicas(String nodeId, String topic, int factor) {
+        if (!isLogged()) {
+            return assignAndRecord(nodeId, topic, factor);
+        }
+        synchronized (lock) {
+            checkLeader();
+            return assignAndRecord(nodeId, topic, factor);
+        }
+    }
+
+    // This method returns the mutations a follower at the given epoch and sequence is missing
+    public Batch getBatch(long since, long sinceEpoch, int max) {
+        synchronized (lock) {
+            List<IndexMutation> mutations = sinceEpoch == epoch ? log.since(since, Math.min(max, BATCH_SIZE)) : null;
+            if (mutations == null) {
+                return new Batch(epoch, log.getSequence(), true, List.of());
+            }
+            return new Batch(epoch, log.getSequence(), false, mutations);
+        }
+    }
+
+    // This method copies the whole index along with the sequence it is current to
+    public Snapshot getSnapshot() {
+        synchronized (lock) {
+            return new Snapshot(epoch, log.getSequence(), registry.snapshot());
+        }
+    }
+
+    // This method lets a follower replay whatever the leader logged since its last poll
+    @Scheduled(fixedDelayString = "${indexing.replication.poll-ms:200}")
+    public void pollLeader() {
+        if (role != Role.FOLLOWER) {
+            return;
+        }
+        try {
+            Batch batch;
+            do {
+                String url = leaderUrl + "/replication/log?since=" + log.getSequence() + "&epoch=" + epoch + "&max=" + BATCH_SIZE;
+                batch = interNodeClient.getAsync(url, Batch.class).join();
+                lastContactMillis = System.currentTimeMillis();
+                leaderSequence = batch.sequence();
+                if (batch.reset()) {
+                    loadSnapshot();
+                    return;
+                }
+                synchronized (lock) {
+                    for (IndexMutation mutation : batch.mutations()) {
+                        if (mutation.sequence() == log.getSequence() + 1) {
+                            mutation.applyTo(registry);
+                            record(mutation);
+                        }
+                    }
+                }
+            } while (batch.mutations().size() == BATCH_SIZE);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to replicate from leader " + leaderUrl + ": " + e.getMessage());
+        }
+    }
+
+    // This method returns this replica's role and how far it has got
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", role.name());
+        status.put("epoch", epoch);
+        status.put("sequence", log.getSequence());
+        if (role == Role.FOLLOWER) {
+            status.put("leader_url", leaderUrl);
+            status.put("leader_sequence", leaderSequence);
+            status.put("lag", Math.max(0, leaderSequence - log.getSequence()));
+            status.put("last_contact_ms_ago", lastContactMillis == 0 ? -1 : System.currentTimeMillis() - lastContactMillis);
+            status.put("snapshots_loaded", snapshotsLoaded);
+        }
+        status.put("persistence", persistence.getStatus());
+        return status;
+    }
+
+    // This method replaces a follower's state with the leader's, when the log alone can't bring it up to date
+    private void loadSnapshot() {
+        Snapshot snapshot = interNodeClient.getAsync(leaderUrl + "/replication/snapshot", Snapshot.class).join();
+        synchronized (lock) {
+            registry.restore(snapshot.nodes());
+            log.reset(snapshot.sequence());
+            epoch = snapshot.epoch();
+            // The write-ahead log can't express a wholesale replacement, so the new state starts a snapshot
+            if (persistence.isEnabled()) {
+                persistence.snapshot(epoch, snapshot.sequence(), snapshot.nodes(), true);
+            }
+        }
+        snapshotsLoaded++;
+        logger.info("Loaded snapshot of " + snapshot.nodes().size() + " nodes at epoch " + snapshot.epoch()
+                + ", sequence " + snapshot.sequence() + " from leader " + leaderUrl);
+    }
+
+    // This method unregisters a node and migrates its topics; every migration is logged with the node
+    // it went to, so replicas reproduce the placement without the load figures behind it
+    private Map<String, List<String>> unregisterAndMigrate(String nodeId) {
+        double loadPerTopic = registry.getLoadPerTopic(nodeId);
+        Map<String, List<String>> replicas = registry.getReplicaAssignments(nodeId);
+        Set<String> removed = registry.unregister(nodeId);
+        if (removed == null) {
+            return null;
+        }
+        if (isLogged()) {
+            record(IndexMutation.unregister(log.getSequence() + 1, nodeId));
+        }
+        // A replicated topic is promoted on one of its replicas, which already holds its messages
+        Map<String, List<String>> newOwners = registry.migrateTopics(removed, loadPerTopic, replicas);
+        if (isLogged()) {
+            newOwners.forEach((owner, topics) -> {
+                record(IndexMutation.migrate(log.getSequence() + 1, owner, topics));
+                for (String topic : topics) {
+                    if (replicas.containsKey(topic)) {
+                        record(IndexMutation.setReplicas(log.getSequence() + 1, owner, topic, registry.getReplicas(owner, topic)));
+                    }
+                }
+            });
+        }
+        return newOwners;
+    }
+
+    // This method chooses and stores a topic's replicas, logging the assignment when mutations are logged.
+    // It returns the chosen node IDs, or null if the node doesn't host the topic
+    private List<String> assignAndRecord(String nodeId, String topic, int factor) {
+        List<String> replicas = registry.chooseReplicas(nodeId, topic, Math.max(0, factor - 1));
+        if (!registry.setReplicas(nodeId, topic, replicas)) {
+            return null;
+        }
+        if (isLogged()) {
+            record(IndexMutation.setReplicas(log.getSequence() + 1, nodeId, topic, replicas));
+        }
+        return replicas;
+    }
+
+    // This method checks whether mutations go through the lock and the logs rather than straight to the registry
+    private boolean isLogged() {
+        return role != Role.STANDALONE || persistence.isEnabled();
+    }
+
+    // This method appends an applied mutation to the replication log and, if enabled, the write-ahead log,
+    // snapshotting the index once enough mutations have been logged. Callers hold the lock.
+    private void record(IndexMutation mutation) {
+        log.append(mutation);
+        if (persistence.isEnabled()) {
+            persistence.append(mutation);
+            if (persistence.isSnapshotDue(mutation.sequence())) {
+                persistence.snapshot(epoch, mutation.sequence(), registry.snapshot(), false);
+            }
+        }
+    }
+
+    // This method refuses writes on a follower, in case one reaches it despite the controller's check
+    private void checkLeader() {
+        if (role == Role.FOLLOWER) {
+            throw new IllegalStateException("This indexing server is a follower of " + leaderUrl);
+        }
+    }
+}
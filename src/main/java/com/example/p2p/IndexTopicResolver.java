@@ -0,0 +1,83 @@
+package com.example.p2p;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Resolves topics through the indexing server shard owning each one, trying the shard's replicas in
+// turn, and keeps the answers in the TopicLocationCache. A topic a follower does not know yet is looked
+// up again on the shard's leader.
+@Component
+@ConditionalOnProperty(name = "peer.discovery.mode", havingValue = "INDEX", matchIfMissing = true)
+public class IndexTopicResolver implements TopicResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexTopicResolver.class);
+
+    private final TopicLocationCache topicLocationCache;
+    private final IndexingShardRouter indexingShardRouter;
+    private final InterNodeClient interNodeClient;
+
+    public IndexTopicResolver(TopicLocationCache topicLocationCache, IndexingShardRouter indexingShardRouter,
+                              InterNodeClient interNodeClient) {
+        this.topicLocationCache = topicLocationCache;
+        this.indexingShardRouter = indexingShardRouter;
+        this.interNodeClient = interNodeClient;
+    }
+
+    @Override
+    public CompletableFuture<TopicLocation> resolve(String topic) {
+        TopicLocation cached = topicLocationCache.get(topic);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        List<String> replicas = indexingShardRouter.readReplicasFor(topic);
+        if (replicas.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No indexing server configured"));
+        }
+        return queryTopic(replicas, indexingShardRouter.shardFor(topic), 0, topic).thenApply(response -> {
+            if (!response.isFound()) {
+                return null;
+            }
+            TopicLocation location = new TopicLocation(response.nodeId(), response.address(),
+                    response.replicaAddresses() != null ? response.replicaAddresses() : List.of());
+            topicLocationCache.put(topic, location);
+            return location;
+        });
+    }
+
+    @Override
+    public void invalidate(String topic) {
+        topicLocationCache.invalidate(topic);
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        return Map.of("mode", "INDEX", "indexing_shards", indexingShardRouter.getShards());
+    }
+
+    // Tries the shard's replicas in turn until one answers. A follower may not have replayed the leader's
+    // latest changes yet, so its not_found is checked with the leader before it is believed
+    private CompletableFuture<TopicQueryResponse> queryTopic(List<String> replicas, String leader, int attempt, String topic) {
+        String replica = replicas.get(attempt);
+        return interNodeClient.getAsync(replica + "/query_topic/" + topic, TopicQueryResponse.class).handle((result, e) -> {
+            if (e == null) {
+                if (result.isFound() || replica.equals(leader)) {
+                    return CompletableFuture.completedFuture(result);
+                }
+                return interNodeClient.getAsync(leader + "/query_topic/" + topic, TopicQueryResponse.class)
+                        .exceptionally(leaderError -> result);
+            }
+            if (attempt + 1 == replicas.size()) {
+                return CompletableFuture.<TopicQueryResponse>failedFuture(e);
+            }
+            logger.warn("Indexing server " + replica + " unavailable, trying the next replica: " + e.getMessage());
+            return queryTopic(replicas, leader, attempt + 1, topic);
+        }).thenCompose(next -> next);
+    }
+}
@@ -0,0 +1,521 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes and Spring Framework annotations
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// This component holds the indexing server's state: which topics each peer node hosts,
+// the inverted topic index, and the metrics and load reported by peers.
+//
+// All state lives in ConcurrentHashMaps. A mutation of one node runs inside compute() on
+// that node's key, and a mutation of one topic's host set runs inside compute() on that
+// topic's key, so writers only serialize on the hash bins they touch and readers never lock.
+// The trie of topic names behind prefix and wildcard queries changes inside the topic's
+// compute() as well, and is also read without locking.
+@Component
+public class IndexingRegistry {
+
+    // This is how many entries each topic change log keeps before lagging peers are told to reset
+    private static final int TOPIC_CHANGE_HISTORY = 4096;
+
+    // This map stores each peer node's registration: an immutable topic set and its version
+    private final Map<String, NodeEntry> peerNodes = new ConcurrentHashMap<>();
+
+    // This map is the inverted index from each topic to the set of nodes hosting it
+    private final Map<String, Set<String>> topicIndex = new ConcurrentHashMap<>();
+
+    // This map stores performance metrics reported by each peer node
+    private final Map<String, Map<String, Object>> collectedMetrics = new ConcurrentHashMap<>();
+
+    // This map stores the load each peer node last reported, used to place the topics of departing nodes
+    private final Map<String, NodeLoad> reportedLoads = new ConcurrentHashMap<>();
+
+    // These weights turn a node's topic count, message rate and subscriber count into one load figure
+    private final double topicWeight;
+    private final double messageRateWeight;
+    private final double subscriberWeight;
+
+    // This log records topics that lost a hosting node, so peers can invalidate cached locations
+    private final TopicChangeLog invalidations = new TopicChangeLog(TOPIC_CHANGE_HISTORY);
+
+    // This trie holds the name of every indexed topic for prefix and wildcard queries
+    private final TopicTrie topicNames = new TopicTrie();
+
+    // This log records topics that gained their first hosting node, so peers with pattern
+    // subscriptions can pick up new matching topics
+    private final TopicChangeLog createdTopics = new TopicChangeLog(TOPIC_CHANGE_HISTORY);
+
+    // This record is the outcome of a topic delta: whether it was applied and the node's version afterwards
+    public record DeltaResult(boolean applied, long version) {
+    }
+
+    // This record is one node's registration as copied between replicas of the index, including the
+    // peers holding copies of each of its topics and whether the index moved topics to it since
+    public record NodeState(@JsonProperty("node_id") String nodeId, Set<String> topics, long version, String address,
+                            Map<String, List<String>> replicas, @JsonProperty("index_ahead") boolean indexAhead) {
+    }
+
+    // This record is the load a peer node reports: messages published to it per second and its subscribers
+    public record NodeLoad(@JsonProperty("message_rate") double messageRate, int subscribers) {
+    }
+
+    // This record is a candidate node during migration, ordered by its load so far
+    private record Candidate(String nodeId, double load) {
+    }
+
+    // This record holds one node's registered topics, the version the node assigned to them, the base
+    // URL the node advertised for peer-to-peer calls (null if it sent none), and the peers that hold a
+    // copy of each replicated topic. The index never changes the version itself, since it belongs to the
+    // node; when it changes the node's topics on its own it sets indexAhead instead, until the node
+    // registers again.
+    private record NodeEntry(Set<String> topics, long version, String address, Map<String, List<String>> replicas,
+                             boolean indexAhead) {
+
+        NodeEntry withTopics(Set<String> newTopics, long newVersion) {
+            return new NodeEntry(newTopics, newVersion, address, retainReplicas(replicas, newTopics), indexAhead);
+        }
+    }
+
+    // This constructor weighs every part of a node's load equally
+    public IndexingRegistry() {
+        this(1, 1, 1);
+    }
+
+    // Spring builds the registry with the load weights from the configuration through this constructor
+    @Autowired
+    public IndexingRegistry(
+            @Value("${indexing.migration.topic-weight:1}") double topicWeight,
+            @Value("${indexing.migration.message-rate-weight:1}") double messageRateWeight,
+            @Value("${indexing.migration.subscriber-weight:1}") double subscriberWeight) {
+        this.topicWeight = topicWeight;
+        this.messageRateWeight = messageRateWeight;
+        this.subscriberWeight = subscriberWeight;
+    }
+
+    // This method registers a node with the given topics, replacing any previous registration
+    public void register(String nodeId, Collection<String> topics) {
+        register(nodeId, topics, 0, null);
+    }
+
+    // This method registers a node with a full topic list stamped with the node's topic version,
+    // along with the address other peers should use to reach it
+    public void register(String nodeId, Collection<String> topics, long version, String address) {
+        register(nodeId, topics, version, address, null, false);
+    }
+
+    // This method registers a node as above; replica assignments are given ones, or otherwise kept
+    // from the previous registration for the topics the node still hosts
+    private void register(String nodeId, Collection<String> topics, long version, String address,
+                          Map<String, List<String>> replicas, boolean indexAhead) {
+        Set<String> newTopics = immutableCopy(topics);
+        peerNodes.compute(nodeId, (id, previous) -> {
+            reindexTopics(id, previous == null ? null : previous.topics(), newTopics);
+            if (previous != null && !Objects.equals(previous.address(), address)) {
+                // The node moved, so every cached location of its remaining topics is stale
+                newTopics.forEach(invalidations::record);
+            }
+            Map<String, List<String>> newReplicas = replicas != null ? Map.copyOf(replicas)
+                    : previous == null ? Map.of() : previous.replicas();
+            return new NodeEntry(newTopics, version, address, retainReplicas(newReplicas, newTopics), indexAhead);
+        });
+    }
+
+    // This method replaces the topics of an already registered node, returning false if it is unknown.
+    // The list comes without a version, so the node's version is kept and the entry is marked as ahead
+    // of the node, as a migration does, until the node registers its full list again.
+    public boolean updateTopics(String nodeId, Collection<String> topics) {
+        Set<String> newTopics = immutableCopy(topics);
+        return peerNodes.computeIfPresent(nodeId, (id, previous) -> {
+            reindexTopics(id, previous.topics(), newTopics);
+            return new NodeEntry(newTopics, previous.version(), previous.address(),
+                    retainReplicas(previous.replicas(), newTopics), true);
+        }) != null;
+    }
+
+    // This method applies an incremental topic change made by a node going from baseVersion to version.
+    // The delta is only applied if the registry is still at baseVersion; otherwise the node has to resync
+    // with a full registration. A delta the registry has already reached is acknowledged again, so a
+    // retried request is harmless.
+    public DeltaResult applyDelta(String nodeId, long baseVersion, long version,
+                                  Collection<String> added, Collection<String> removed) {
+        DeltaResult[] result = {new DeltaResult(false, -1)};
+        peerNodes.computeIfPresent(nodeId, (id, previous) -> {
+            if (previous.version() == version) {
+                result[0] = new DeltaResult(true, version);
+                return previous;
+            }
+            if (previous.version() != baseVersion) {
+                result[0] = new DeltaResult(false, previous.version());
+                return previous;
+            }
+            Set<String> merged = new LinkedHashSet<>(previous.topics());
+            if (removed != null) {
+                merged.removeAll(removed);
+            }
+            if (added != null) {
+                merged.addAll(added);
+            }
+            Set<String> newTopics = Collections.unmodifiableSet(merged);
+            reindexTopics(id, previous.topics(), newTopics);
+            result[0] = new DeltaResult(true, version);
+            return previous.withTopics(newTopics, version);
+        });
+        return result[0];
+    }
+
+    // This method removes a node, returning the topics it hosted, or null if it was not registered
+    public Set<String> unregister(String nodeId) {
+        AtomicReference<Set<String>> removedTopics = new AtomicReference<>();
+        peerNodes.computeIfPresent(nodeId, (id, previous) -> {
+            reindexTopics(id, previous.topics(), Collections.emptySet());
+            removedTopics.set(previous.topics());
+            return null;
+        });
+        reportedLoads.remove(nodeId);
+        return removedTopics.get();
+    }
+
+    // This method spreads the given topics over the registered nodes, least loaded first, and returns
+    // the topics each node received. Every topic is assumed to add loadPerTopic to its new owner, so a
+    // large batch of orphaned topics is shared out instead of landing on one node. A min-heap of the
+    // candidates keeps this O(topics log nodes).
+    public Map<String, List<String>> migrateTopics(Collection<String> topics, double loadPerTopic) {
+        return migrateTopics(topics, loadPerTopic, Map.of());
+    }
+
+    // This method migrates topics as above, except that a topic with a registered replica goes to its
+    // first one, which already holds the messages; the other replicas stay assigned to the new owner
+    public Map<String, List<String>> migrateTopics(Collection<String> topics, double loadPerTopic,
+                                                   Map<String, List<String>> replicas) {
+        Map<String, List<String>> assigned = new LinkedHashMap<>();
+        List<String> pending = new ArrayList<>();
+        for (String topic : topics) {
+            List<String> live = replicas.getOrDefault(topic, List.of()).stream().filter(peerNodes::containsKey).toList();
+            if (!live.isEmpty() && migrateTopicsTo(live.get(0), List.of(topic))) {
+                setReplicas(live.get(0), topic, live.subList(1, live.size()));
+                assigned.computeIfAbsent(live.get(0), k -> new ArrayList<>()).add(topic);
+            } else {
+                pending.add(topic);
+            }
+        }
+        // Plan again for the topics of a chosen node that unregisters while we migrate
+        while (!pending.isEmpty()) {
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+                    Comparator.comparingDouble(Candidate::load).thenComparing(Candidate::nodeId));
+            for (String nodeId : peerNodes.keySet()) {
+                candidates.add(new Candidate(nodeId, getLoad(nodeId)));
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            Map<String, List<String>> plan = new LinkedHashMap<>();
+            for (String topic : pending) {
+                Candidate least = candidates.poll();
+                plan.computeIfAbsent(least.nodeId(), k -> new ArrayList<>()).add(topic);
+                candidates.add(new Candidate(least.nodeId(), least.load() + loadPerTopic));
+            }
+            List<String> unplaced = new ArrayList<>();
+            plan.forEach((nodeId, nodeTopics) -> {
+                if (migrateTopicsTo(nodeId, nodeTopics)) {
+                    assigned.computeIfAbsent(nodeId, k -> new ArrayList<>()).addAll(nodeTopics);
+                } else {
+                    unplaced.addAll(nodeTopics);
+                }
+            });
+            pending = unplaced;
+        }
+        return assigned;
+    }
+
+    // This method hands the given topics to a specific node, returning false if it is not registered.
+    // The node's version stays as the node left it, so its later deltas still apply on top of the moved
+    // topics, and the entry is marked as ahead of the node until the node registers its full list again.
+    public boolean migrateTopicsTo(String nodeId, Collection<String> topics) {
+        return peerNodes.computeIfPresent(nodeId, (id, current) -> {
+            Set<String> merged = new LinkedHashSet<>(current.topics());
+            merged.addAll(topics);
+            Set<String> newTopics = Collections.unmodifiableSet(merged);
+            reindexTopics(id, current.topics(), newTopics);
+            return new NodeEntry(newTopics, current.version(), current.address(),
+                    retainReplicas(current.replicas(), newTopics), true);
+        }) != null;
+    }
+
+    // This method picks up to count nodes other than the topic's host to hold copies of it. Replicas
+    // already assigned that are still registered are kept, and the rest are the least loaded nodes.
+    public List<String> chooseReplicas(String nodeId, String topic, int count) {
+        List<String> chosen = new ArrayList<>(getReplicas(nodeId, topic));
+        if (chosen.size() >= count) {
+            return List.copyOf(chosen.subList(0, count));
+        }
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::load).thenComparing(Candidate::nodeId));
+        for (String candidate : peerNodes.keySet()) {
+            if (!candidate.equals(nodeId) && !chosen.contains(candidate)) {
+                candidates.add(new Candidate(candidate, getLoad(candidate)));
+            }
+        }
+        while (chosen.size() < count && !candidates.isEmpty()) {
+            chosen.add(candidates.poll().nodeId());
+        }
+        return List.copyOf(chosen);
+    }
+
+    // This method records the nodes holding copies of a topic, returning false if the node doesn't host it
+    public boolean setReplicas(String nodeId, String topic, List<String> replicas) {
+        boolean[] hosted = {false};
+        peerNodes.computeIfPresent(nodeId, (id, current) -> {
+            if (!current.topics().contains(topic)) {
+                return current;
+            }
+            hosted[0] = true;
+            Map<String, List<String>> updated = new LinkedHashMap<>(current.replicas());
+            if (replicas.isEmpty()) {
+                updated.remove(topic);
+            } else {
+                updated.put(topic, List.copyOf(replicas));
+            }
+            return new NodeEntry(current.topics(), current.version(), current.address(), Map.copyOf(updated),
+                    current.indexAhead());
+        });
+        return hosted[0];
+    }
+
+    // This method returns the registered nodes holding copies of a topic hosted by the given node
+    public List<String> getReplicas(String nodeId, String topic) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        if (entry == null) {
+            return List.of();
+        }
+        return entry.replicas().getOrDefault(topic, List.of()).stream().filter(peerNodes::containsKey).toList();
+    }
+
+    // This method returns the replicas of every replicated topic of a node
+    public Map<String, List<String>> getReplicaAssignments(String nodeId) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        return entry == null ? Map.of() : entry.replicas();
+    }
+
+    // This method copies every node's registration; it is only consistent while no mutation runs
+    public List<NodeState> snapshot() {
+        List<NodeState> nodes = new ArrayList<>(peerNodes.size());
+        peerNodes.forEach((nodeId, entry) ->
+                nodes.add(new NodeState(nodeId, entry.topics(), entry.version(), entry.address(), entry.replicas(),
+                        entry.indexAhead())));
+        return nodes;
+    }
+
+    // This method replaces every registration with the given ones, e.g. when a replica catches up
+    // from a snapshot instead of the mutation log
+    public void restore(Collection<NodeState> nodes) {
+        Set<String> restoredIds = new HashSet<>();
+        for (NodeState node : nodes) {
+            restoredIds.add(node.nodeId());
+            register(node.nodeId(), node.topics(), node.version(), node.address(),
+                    node.replicas() == null ? Map.of() : node.replicas(), node.indexAhead());
+        }
+        for (String nodeId : peerNodes.keySet()) {
+            if (!restoredIds.contains(nodeId)) {
+                unregister(nodeId);
+            }
+        }
+    }
+
+    // This method returns one node hosting the given topic, if any
+    public Optional<String> findHost(String topic) {
+        Set<String> hostingNodes = topicIndex.get(topic);
+        if (hostingNodes != null) {
+            for (String hostingNode : hostingNodes) {
+                return Optional.of(hostingNode);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // This method returns every node hosting the given topic
+    public Set<String> findHosts(String topic) {
+        Set<String> hostingNodes = topicIndex.get(topic);
+        return hostingNodes == null ? Collections.emptySet() : Collections.unmodifiableSet(hostingNodes);
+    }
+
+    // This method returns the topics registered for a node, or null if the node is unknown
+    public Set<String> getTopics(String nodeId) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        return entry == null ? null : entry.topics();
+    }
+
+    // This method returns the address a node advertised, or null if it is unknown or sent none
+    public String getAddress(String nodeId) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        return entry == null ? null : entry.address();
+    }
+
+    // This method returns the topic version registered for a node, or -1 if the node is unknown
+    public long getVersion(String nodeId) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        return entry == null ? -1 : entry.version();
+    }
+
+    // This method checks whether the index changed a node's topics in a way the node hasn't registered yet
+    public boolean isIndexAhead(String nodeId) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        return entry != null && entry.indexAhead();
+    }
+
+    // This method checks whether a node is registered
+    public boolean containsNode(String nodeId) {
+        return peerNodes.containsKey(nodeId);
+    }
+
+    // This method returns the IDs of all registered nodes
+    public Set<String> getNodeIds() {
+        return Collections.unmodifiableSet(peerNodes.keySet());
+    }
+
+    // This method returns the topics whose hosting node changed after the given sequence number
+    public TopicChangeLog.Changes getInvalidationsSince(long sequence) {
+        return invalidations.since(sequence);
+    }
+
+    // This method returns the topics that were created after the given sequence number
+    public TopicChangeLog.Changes getCreatedTopicsSince(long sequence) {
+        return createdTopics.since(sequence);
+    }
+
+    // This method returns up to limit indexed topics whose names start with the prefix
+    public TopicTrie.Matches findTopicsWithPrefix(String prefix, int limit) {
+        return topicNames.withPrefix(prefix, limit);
+    }
+
+    // This method returns up to limit indexed topics whose names match the wildcard pattern
+    public TopicTrie.Matches findTopicsMatching(TopicPattern pattern, int limit) {
+        return topicNames.matching(pattern, limit);
+    }
+
+    // This method stores the latest load reported by a node, returning false if the node is unknown
+    public boolean reportLoad(String nodeId, NodeLoad load) {
+        if (!peerNodes.containsKey(nodeId)) {
+            return false;
+        }
+        reportedLoads.put(nodeId, load);
+        return true;
+    }
+
+    // This method returns a node's load: its topic count plus its reported message rate and subscribers, weighted
+    public double getLoad(String nodeId) {
+        NodeEntry entry = peerNodes.get(nodeId);
+        NodeLoad load = reportedLoads.get(nodeId);
+        double topicLoad = entry == null ? 0 : topicWeight * entry.topics().size();
+        return load == null ? topicLoad
+                : topicLoad + messageRateWeight * load.messageRate() + subscriberWeight * load.subscribers();
+    }
+
+    // This method returns how much load each of a node's topics carries on average, or 0 if it has none
+    public double getLoadPerTopic(String nodeId) {
+        Set<String> nodeTopics = getTopics(nodeId);
+        return nodeTopics == null || nodeTopics.isEmpty() ? 0 : getLoad(nodeId) / nodeTopics.size();
+    }
+
+    // This method returns the load of every registered node
+    public Map<String, Double> getLoads() {
+        Map<String, Double> loads = new LinkedHashMap<>();
+        for (String nodeId : peerNodes.keySet()) {
+            loads.put(nodeId, getLoad(nodeId));
+        }
+        return loads;
+    }
+
+    // This method stores the latest metrics reported by a node
+    public void reportMetrics(String nodeId, Map<String, Object> metrics) {
+        collectedMetrics.put(nodeId, metrics);
+    }
+
+    // This method returns the metrics reported by all nodes
+    public Map<String, Map<String, Object>> getMetrics() {
+        return Collections.unmodifiableMap(collectedMetrics);
+    }
+
+    // This method updates the index for a node whose topics changed, touching only
+    // the topics that were actually added or removed
+    private void reindexTopics(String nodeId, Set<String> previousTopics, Set<String> topics) {
+        if (previousTopics != null) {
+            for (String topic : previousTopics) {
+                if (!topics.contains(topic)) {
+                    unindexTopic(nodeId, topic);
+                }
+            }
+        }
+        for (String topic : topics) {
+            if (previousTopics == null || !previousTopics.contains(topic)) {
+                indexTopic(nodeId, topic);
+            }
+        }
+    }
+
+    // This method adds a node to a topic's host set; compute() keeps this atomic with
+    // a concurrent removal that might otherwise drop the set we are adding to. A topic's
+    // first host also adds its name to the trie, inside the same compute() so the trie
+    // always agrees with the index
+    private void indexTopic(String nodeId, String topic) {
+        topicIndex.compute(topic, (t, nodes) -> {
+            if (nodes == null) {
+                topicNames.add(t);
+                createdTopics.record(t);
+            }
+            Set<String> hosts = nodes == null ? ConcurrentHashMap.newKeySet() : nodes;
+            hosts.add(nodeId);
+            return hosts;
+        });
+    }
+
+    // This method removes a node from a topic's host set, dropping the entry and the
+    // topic's name once it is empty
+    private void unindexTopic(String nodeId, String topic) {
+        topicIndex.computeIfPresent(topic, (t, nodes) -> {
+            nodes.remove(nodeId);
+            invalidations.record(t);
+            if (nodes.isEmpty()) {
+                topicNames.remove(t);
+                return null;
+            }
+            return nodes;
+        });
+    }
+
+    // This method drops the replica assignments of topics a node no longer hosts
+    private static Map<String, List<String>> retainReplicas(Map<String, List<String>> replicas, Set<String> topics) {
+        if (topics.containsAll(replicas.keySet())) {
+            return replicas;
+        }
+        Map<String, List<String>> retained = new LinkedHashMap<>(replicas);
+        retained.keySet().retainAll(topics);
+        return Map.copyOf(retained);
+    }
+
+    // This method copies a topic list into an immutable, duplicate-free set
+    private static Set<String> immutableCopy(Collection<String> topics) {
+        if (topics == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(topics));
+    }
+}
@@ -2,11 +2,14 @@
 package com.example.p2p;
 
 // These lines import necessary Java classes and Spring Framework annotations
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 // This annotation marks the class as a REST controller, handling web requests
 @RestController
@@ -14,21 +17,43 @@ import java.util.Optional;
 @RequestMapping("/indexing")
 public class IndexingServerController {
 
-    // This map stores information about peer nodes and their topics
-    private final Map<String, List<String>> peerNodes = new HashMap<>();
+    // This registry stores the peer nodes, their topics and the metrics they report
+    private final IndexingRegistry registry;
 
-    // This map stores performance metrics reported by each peer node
-    private final Map<String, Map<String, Object>> collectedMetrics = new HashMap<>();
+    // This replicator applies index changes and ships them to follower indexing servers
+    private final IndexReplicator replicator;
+
+    // This lease manager unregisters nodes that stop sending heartbeats
+    private final LeaseManager leaseManager;
+
+    // Spring injects the shared registry, replicator and lease manager through this constructor
+    public IndexingServerController(IndexingRegistry registry, IndexReplicator replicator, LeaseManager leaseManager) {
+        this.registry = registry;
+        this.replicator = replicator;
+        this.leaseManager = leaseManager;
+    }
 
     // This method handles registration of new peer nodes
     @PostMapping("/register")
     public Map<String, Object> registerNode(@RequestBody Map<String, Object> body) {
+        // Followers only serve reads
+        if (replicator.isFollower()) {
+            return notLeader();
+        }
         // Extract node ID and topics from the request body
         String nodeId = (String) body.get("node_id");
         List<String> topics = (List<String>) body.get("topics");
+        // Peers stamp their topic list with a version so later deltas can be checked against it
+        Number version = (Number) body.getOrDefault("version", 0);
+        // Peers advertise the host and port other peers should use to reach them
+        String host = (String) body.get("host");
+        Number port = (Number) body.get("port");
+        String address = host != null && port != null ? "http://" + host + ":" + port : null;
 
-        // Store the node and its topics in the peerNodes map
-        peerNodes.put(nodeId, topics);
+        // Store the node, its topics and its address in the registry
+        replicator.register(nodeId, topics, version.longValue(), address);
+        // Registering grants the node a lease that its heartbeats keep alive
+        leaseManager.renew(nodeId);
 
         // Return a success message with the registered node ID
         return Map.of("status", "registered", "node_id", nodeId);
@@ -37,43 +62,50 @@ public class IndexingServerController {
     // This method handles unregistration of peer nodes
     @PostMapping("/unregister")
     public Map<String, Object> unregisterNode(@RequestBody Map<String, Object> body) {
+        // Followers only serve reads
+        if (replicator.isFollower()) {
+            return notLeader();
+        }
         // Extract node ID from the request body
         String nodeId = (String) body.get("node_id");
 
-        // Check if the node exists in the peerNodes map
-        if (peerNodes.containsKey(nodeId)) {
-            // Get the topics hosted by the unregistering node
-            List<String> topicsToMigrate = peerNodes.get(nodeId);
-            // Remove the node from the peerNodes map
-            peerNodes.remove(nodeId);
-
-            // Try to find another peer to migrate the topics to
-            Optional<String> availablePeer = peerNodes.keySet().stream().findAny();
-            if (availablePeer.isPresent()) {
-                // If a peer is found, migrate the topics to it
-                peerNodes.get(availablePeer.get()).addAll(topicsToMigrate);
-                return Map.of("status", "unregistered", "node_id", nodeId, "topics_migrated_to", availablePeer.get());
-            }
-
-            // If no peer is found, just delete the topics
-            return Map.of("status", "unregistered", "node_id", nodeId, "message", "Topics deleted");
-        } else {
+        // Remove the node and spread the topics it hosted over the least loaded remaining nodes
+        leaseManager.cancel(nodeId);
+        Map<String, List<String>> newOwners = replicator.unregister(nodeId);
+        if (newOwners == null) {
             // If the node wasn't found, return an error message
             return Map.of("status", "error", "message", "Node not found");
         }
+        if (newOwners.isEmpty()) {
+            // If no peer is left, or the node hosted nothing, the topics are gone
+            return Map.of("status", "unregistered", "node_id", nodeId, "message", "Topics deleted");
+        }
+
+        // Tell the departing node where each topic went, and how to reach the new owners, so it can
+        // hand over the messages it still holds
+        Map<String, String> addresses = new LinkedHashMap<>();
+        for (String owner : newOwners.keySet()) {
+            String address = registry.getAddress(owner);
+            if (address != null) {
+                addresses.put(owner, address);
+            }
+        }
+        return Map.of("status", "unregistered", "node_id", nodeId, "topics_migrated_to", newOwners, "addresses", addresses);
     }
 
     // This method handles updating topics for a peer node
     @PostMapping("/update_topics")
     public Map<String, Object> updateTopics(@RequestBody Map<String, Object> body) {
+        // Followers only serve reads
+        if (replicator.isFollower()) {
+            return notLeader();
+        }
         // Extract node ID and new topics from the request body
         String nodeId = (String) body.get("node_id");
         List<String> topics = (List<String>) body.get("topics");
 
-        // Check if the node exists in the peerNodes map
-        if (peerNodes.containsKey(nodeId)) {
-            // Update the topics for the node
-            peerNodes.put(nodeId, topics);
+        // Update the topics for the node if it is registered
+        if (replicator.updateTopics(nodeId, topics)) {
             return Map.of("status", "updated", "node_id", nodeId);
         } else {
             // If the node wasn't found, return an error message
@@ -81,24 +113,276 @@ public class IndexingServerController {
         }
     }
 
-    // This method handles querying which node hosts a specific topic
-    @GetMapping("/query_topic/{topic}")
-    public Map<String, Object> queryTopic(@PathVariable String topic) {
-        // Loop through all peer nodes and their topics
-        for (Map.Entry<String, List<String>> entry : peerNodes.entrySet()) {
-            // If a node hosts the requested topic, return its ID
-            if (entry.getValue().contains(topic)) {
-                return Map.of("status", "found", "node_id", entry.getKey());
+    // This method applies an incremental topic change sent by a peer node instead of its full topic list
+    @PostMapping("/update_topics_delta")
+    public Map<String, Object> updateTopicsDelta(@RequestBody Map<String, Object> body) {
+        // Followers only serve reads
+        if (replicator.isFollower()) {
+            return notLeader();
+        }
+        // Extract node ID, the version the delta starts from and ends at, and the changed topics
+        if (!(body.get("node_id") instanceof String) || !(body.get("base_version") instanceof Number)
+                || !(body.get("version") instanceof Number)) {
+            return Map.of("status", "error", "message", "Delta needs node_id, base_version and version");
+        }
+        String nodeId = (String) body.get("node_id");
+        long baseVersion = ((Number) body.get("base_version")).longValue();
+        long version = ((Number) body.get("version")).longValue();
+        List<String> added = (List<String>) body.get("added");
+        List<String> removed = (List<String>) body.get("removed");
+
+        // Apply the delta only if the registry is at the version the peer started from
+        IndexingRegistry.DeltaResult result = replicator.applyDelta(nodeId, baseVersion, version, added, removed);
+        if (result.applied()) {
+            return Map.of("status", "updated", "node_id", nodeId, "version", result.version());
+        }
+        // Otherwise ask the peer to send its full topic list again
+        return Map.of("status", "resync_required", "node_id", nodeId, "version", result.version());
+    }
+
+    // This method renews the lease of a peer node. A node the index doesn't know, because its lease
+    // already expired or this server lost its registration, is told to register again
+    @PostMapping("/heartbeat")
+    public Map<String, Object> heartbeat(@RequestBody Map<String, Object> body) {
+        // Followers only serve reads
+        if (replicator.isFollower()) {
+            return notLeader();
+        }
+        String nodeId = (String) body.get("node_id");
+        if (!registry.containsNode(nodeId)) {
+            return Map.of("status", "unknown_node", "node_id", nodeId);
+        }
+        leaseManager.renew(nodeId);
+        // A node the index moved topics to may not know about them, such as replicas promoted on it when
+        // their host expired, so it is sent its full list until it registers that list itself
+        Set<String> nodeTopics = registry.getTopics(nodeId);
+        if (nodeTopics != null && registry.isIndexAhead(nodeId)) {
+            return Map.of("status", "ok", "topics", nodeTopics);
+        }
+        return Map.of("status", "ok");
+    }
+
+    // This method picks the nodes that keep copies of a topic for the node hosting it. Replicas already
+    // assigned and still registered are kept, so asking again only replaces the ones that left
+    @PostMapping("/assign_replicas")
+    public Map<String, Object> assignReplicas(@RequestBody Map<String, Object> body) {
+        // Followers only serve reads
+        if (replicator.isFollower()) {
+            return notLeader();
+        }
+        // Extract node ID, topic and the number of copies wanted, the host's own included
+        String nodeId = (String) body.get("node_id");
+        String topic = (String) body.get("topic");
+        int factor = ((Number) body.getOrDefault("factor", 1)).intValue();
+
+        List<String> replicas = replicator.assignReplicas(nodeId, topic, factor);
+        if (replicas == null) {
+            return Map.of("status", "error", "message", "Node does not host topic");
+        }
+        // Return the chosen nodes with their addresses so the host can start copying to them
+        Map<String, String> addresses = new LinkedHashMap<>();
+        for (String replica : replicas) {
+            String address = registry.getAddress(replica);
+            if (address != null) {
+                addresses.put(replica, address);
             }
         }
+        return Map.of("status", "assigned", "topic", topic, "replicas", replicas, "addresses", addresses);
+    }
+
+    // This method records the load a peer node reports, which decides where a departing node's topics go
+    @PostMapping("/report_load")
+    public Map<String, Object> reportLoad(@RequestBody Map<String, Object> body) {
+        // Extract node ID, message rate and subscriber count from the request body
+        String nodeId = (String) body.get("node_id");
+        double messageRate = ((Number) body.getOrDefault("message_rate", 0)).doubleValue();
+        int subscribers = ((Number) body.getOrDefault("subscribers", 0)).intValue();
+
+        // Only registered nodes have a load worth keeping
+        if (registry.reportLoad(nodeId, new IndexingRegistry.NodeLoad(messageRate, subscribers))) {
+            return Map.of("status", "reported", "node_id", nodeId, "load", registry.getLoad(nodeId));
+        }
+        return Map.of("status", "error", "message", "Node not found");
+    }
+
+    // This method handles querying which node hosts a specific topic.
+    // It answers in JSON unless the caller asks for the compact binary format
+    @GetMapping(value = "/query_topic/{topic}", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryWireFormat.MEDIA_TYPE_VALUE})
+    public TopicQueryResponse queryTopic(@PathVariable String topic) {
+        // Look the topic up directly in the inverted index
+        Optional<String> hostingNode = registry.findHost(topic);
+        if (hostingNode.isPresent()) {
+            // If a node hosts the requested topic, return its ID and, if known, its address
+            List<String> replicaIds = registry.getReplicas(hostingNode.get(), topic);
+            if (replicaIds.isEmpty()) {
+                return TopicQueryResponse.found(hostingNode.get(), registry.getAddress(hostingNode.get()));
+            }
+            // A replicated topic also lists the nodes holding copies, which can serve reads
+            List<String> replicaAddresses = new ArrayList<>(replicaIds.size());
+            for (String replicaId : replicaIds) {
+                String replicaAddress = registry.getAddress(replicaId);
+                replicaAddresses.add(replicaAddress == null ? "" : replicaAddress);
+            }
+            return TopicQueryResponse.found(hostingNode.get(), registry.getAddress(hostingNode.get()), replicaIds, replicaAddresses);
+        }
         // If the topic wasn't found, return a not found status
-        return Map.of("status", "not_found");
+        return TopicQueryResponse.notFound();
+    }
+
+    // This method returns the topics whose names start with the prefix, with the node hosting each one
+    @GetMapping("/query_prefix")
+    public TopicMatchResponse queryPrefix(@RequestParam String prefix, @RequestParam(defaultValue = "1000") int limit) {
+        if (limit < 0) {
+            return TopicMatchResponse.error();
+        }
+        return withHosts(registry.findTopicsWithPrefix(prefix, limit));
+    }
+
+    // This method returns the topics matching a wildcard pattern, where * stands for any part of one
+    // dot-separated segment and # for any part of the name, with the node hosting each one
+    @GetMapping("/query_pattern")
+    public TopicMatchResponse queryPattern(@RequestParam String pattern, @RequestParam(defaultValue = "1000") int limit) {
+        if (pattern.isEmpty() || limit < 0) {
+            return TopicMatchResponse.error();
+        }
+        return withHosts(registry.findTopicsMatching(TopicPattern.compile(pattern), limit));
+    }
+
+    // This method registers many peer nodes in one request and returns a result per node
+    @PostMapping("/register_batch")
+    public Map<String, Object> registerNodes(@RequestBody Map<String, Object> body) {
+        // Extract the list of {node_id, topics} entries from the request body
+        if (!(body.get("nodes") instanceof List)) {
+            return missingField("nodes");
+        }
+        List<Map<String, Object>> nodes = (List<Map<String, Object>>) body.get("nodes");
+
+        // Register each node exactly as the single-node endpoint would
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> node : nodes) {
+            results.add(isNodeEntry(node) ? registerNode(node) : invalidNodeEntry());
+        }
+        return Map.of("status", "success", "results", results);
+    }
+
+    // This method updates the topics of many peer nodes in one request and returns a result per node
+    @PostMapping("/update_topics_batch")
+    public Map<String, Object> updateTopicsBatch(@RequestBody Map<String, Object> body) {
+        // Extract the list of {node_id, topics} entries from the request body
+        if (!(body.get("nodes") instanceof List)) {
+            return missingField("nodes");
+        }
+        List<Map<String, Object>> nodes = (List<Map<String, Object>>) body.get("nodes");
+
+        // Update each node exactly as the single-node endpoint would
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> node : nodes) {
+            results.add(isNodeEntry(node) ? updateTopics(node) : invalidNodeEntry());
+        }
+        return Map.of("status", "success", "results", results);
+    }
+
+    // This method resolves many topics in one request and returns the lookup result for each topic
+    @PostMapping("/query_topics")
+    public Map<String, Object> queryTopics(@RequestBody Map<String, Object> body) {
+        // Extract the list of topics from the request body
+        if (!(body.get("topics") instanceof List)) {
+            return missingField("topics");
+        }
+        List<String> topics = (List<String>) body.get("topics");
+
+        // Look up each topic, keeping the results in request order
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (String topic : topics) {
+            results.put(topic, queryTopic(topic));
+        }
+        return Map.of("status", "success", "results", results);
+    }
+
+    // This method checks that a batch entry names a node and lists its topics
+    private static boolean isNodeEntry(Map<String, Object> node) {
+        return node != null && node.get("node_id") instanceof String && node.get("topics") instanceof List;
+    }
+
+    // This method is the result for a batch entry without a node ID or topic list
+    private static Map<String, Object> invalidNodeEntry() {
+        return Map.of("status", "error", "message", "Entry needs node_id and topics");
+    }
+
+    // This method is the answer to a batch request whose body lacks the given list
+    private static Map<String, Object> missingField(String field) {
+        return Map.of("status", "error", "message", "Request body needs a \"" + field + "\" list");
+    }
+
+    // This method returns the topics whose hosting node changed since the given sequence number,
+    // which peers use to invalidate their cached topic locations
+    @GetMapping("/invalidations")
+    public Map<String, Object> getInvalidations(@RequestParam(defaultValue = "0") long since) {
+        TopicChangeLog.Changes invalidations = registry.getInvalidationsSince(since);
+        return Map.of(
+                "status", "success",
+                "sequence", invalidations.sequence(),
+                "topics", invalidations.topics(),
+                "reset", invalidations.reset()
+        );
+    }
+
+    // This method returns the topics created since the given sequence number, which peers with
+    // pattern subscriptions use to subscribe to new matching topics
+    @GetMapping("/created_topics")
+    public Map<String, Object> getCreatedTopics(@RequestParam(defaultValue = "0") long since) {
+        TopicChangeLog.Changes created = registry.getCreatedTopicsSince(since);
+        return Map.of(
+                "status", "success",
+                "sequence", created.sequence(),
+                "topics", created.topics(),
+                "reset", created.reset()
+        );
+    }
+
+    // This method returns the index mutations a follower has not applied yet. A follower whose epoch
+    // or sequence the log can't continue from is told to load a snapshot instead
+    @GetMapping("/replication/log")
+    public IndexReplicator.Batch getReplicationLog(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "0") long epoch,
+            @RequestParam(defaultValue = "1000") int max) {
+        return replicator.getBatch(since, epoch, max);
+    }
+
+    // This method returns a copy of the whole index, used by followers catching up and by a restarting leader
+    @GetMapping("/replication/snapshot")
+    public IndexReplicator.Snapshot getReplicationSnapshot() {
+        return replicator.getSnapshot();
+    }
+
+    // This method returns this server's replication role and progress
+    @GetMapping("/replication/status")
+    public Map<String, Object> getReplicationStatus() {
+        return replicator.getStatus();
     }
 
     // This method returns collected metrics for all peer nodes
     @GetMapping("/metrics")
     public Map<String, Object> getMetrics() {
-        // Simply return the collected metrics
-        return Map.of("peer_metrics", collectedMetrics);
+        // Return the collected metrics and loads along with the leases and where this server stands in replication
+        return Map.of("peer_metrics", registry.getMetrics(), "peer_load", registry.getLoads(),
+                "leases", leaseManager.getStatus(), "replication", replicator.getStatus());
+    }
+
+    // This method adds the hosting node and its address to each matching topic. A topic removed
+    // since it was matched is left out
+    private TopicMatchResponse withHosts(TopicTrie.Matches matches) {
+        List<TopicMatchResponse.Match> found = new ArrayList<>(matches.topics().size());
+        for (String topic : matches.topics()) {
+            registry.findHost(topic).ifPresent(host ->
+                    found.add(new TopicMatchResponse.Match(topic, host, registry.getAddress(host))));
+        }
+        return new TopicMatchResponse("success", found, matches.truncated());
+    }
+
+    // This method builds the answer a follower gives to a write, pointing the caller at the leader
+    private Map<String, Object> notLeader() {
+        return Map.of("status", "error", "message", "Not the leader", "leader", replicator.getLeaderUrl());
     }
-}
\ No newline at end of file
+}
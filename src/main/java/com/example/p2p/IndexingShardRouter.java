@@ -0,0 +1,107 @@
+package com.example.p2p;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Routes a peer's indexing-server calls to the shard that owns each topic.
+//
+// The topic index is partitioned across the indexing servers listed in peer.indexing.shards (base
+// URLs such as http://host:8080/indexing) on a ConsistentHashRing. Every peer must be configured
+// with the same list so they agree on each topic's owner. Without a list, the indexing server given
+// to /peer/initialize is the only shard, as before sharding.
+//
+// A shard that is replicated is listed as its leader followed by its followers, separated by |.
+// Writes go to the leader; topic lookups are spread over all of the shard's replicas and move on to
+// the next one when a replica is unreachable, or to the leader when a follower has not caught up
+// with a topic yet.
+@Component
+public class IndexingShardRouter {
+
+    private final ConsistentHashRing<String> ring;
+    private final Map<String, List<String>> readReplicas = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public IndexingShardRouter(
+            @Value("${peer.indexing.shards:}") List<String> shards,
+            @Value("${peer.indexing.virtual-nodes:128}") int virtualNodes) {
+        this.ring = new ConsistentHashRing<>(virtualNodes);
+        setShards(shards);
+    }
+
+    // Replaces the shard list; only topics owned by added or removed shards change owner.
+    public synchronized void setShards(Collection<String> shards) {
+        Map<String, List<String>> updated = new LinkedHashMap<>();
+        for (String shard : shards) {
+            List<String> replicas = new ArrayList<>();
+            for (String replica : shard.split("\\|")) {
+                if (!replica.isBlank()) {
+                    replicas.add(replica.strip());
+                }
+            }
+            if (!replicas.isEmpty()) {
+                updated.put(replicas.get(0), List.copyOf(replicas));
+            }
+        }
+        for (String shard : List.copyOf(ring.getNodes())) {
+            if (!updated.containsKey(shard)) {
+                ring.remove(shard);
+                readReplicas.remove(shard);
+            }
+        }
+        readReplicas.putAll(updated);
+        updated.keySet().forEach(ring::add);
+    }
+
+    public boolean isConfigured() {
+        return !ring.isEmpty();
+    }
+
+    // Returns the base URL of the leader of the shard owning the topic, or null if no shard is known.
+    public String shardFor(String topic) {
+        return ring.nodeFor(topic);
+    }
+
+    // Returns every replica of the topic's shard, starting from a different one on each call.
+    public List<String> readReplicasFor(String topic) {
+        String shard = ring.nodeFor(topic);
+        if (shard == null) {
+            return List.of();
+        }
+        List<String> replicas = readReplicas.getOrDefault(shard, List.of(shard));
+        int first = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        List<String> ordered = new ArrayList<>(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            ordered.add(replicas.get((first + i) % replicas.size()));
+        }
+        return ordered;
+    }
+
+    public Set<String> getShards() {
+        return ring.getNodes();
+    }
+
+    // Splits topics by owning shard. Every shard is present, with an empty list if it owns none of them;
+    // with no shards known the result is empty.
+    public Map<String, List<String>> partition(Collection<String> topics) {
+        Map<String, List<String>> byShard = new LinkedHashMap<>();
+        for (String shard : ring.getNodes()) {
+            byShard.put(shard, new ArrayList<>());
+        }
+        if (byShard.isEmpty()) {
+            return byShard;
+        }
+        for (String topic : topics) {
+            byShard.computeIfAbsent(ring.nodeFor(topic), k -> new ArrayList<>()).add(topic);
+        }
+        return byShard;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Shared client for every call a peer makes to the indexing server or to another peer.
+//
+// Requests go through one JDK HttpClient, which keeps connections alive between calls and negotiates
+// HTTP/2 where the other side supports it. Every call has a connect and a request timeout and completes
+// a CompletableFuture instead of holding the calling thread. At most peer.client.max-concurrent-requests
+// calls are in flight at once; further calls wait in a queue without blocking their caller and are
+// started as earlier ones finish. The queue holds at most peer.client.max-queued-requests calls, and a
+// call that waits in it for longer than the request timeout fails, so callers hear back within the
+// timeout even when the client is saturated.
+//
+// Typed calls take the class of the response record. With peer.client.wire-format=BINARY, record bodies
+// are sent and requested in BinaryWireFormat; the other side may still answer in JSON, which is decoded
+// as well.
+//
+// With spring.threads.virtual.enabled the client's own work, and with it every stage chained onto a
+// returned future, runs on virtual threads.
+@Component
+public class InterNodeClient {
+
+    private static final TypeReference<Map<String, Object>> RESPONSE_TYPE = new TypeReference<>() {
+    };
+
+    public enum WireFormat {
+        JSON,
+        BINARY
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(HttpResponse<byte[]> response) throws IOException;
+    }
+
+    private record PendingCall<T>(HttpRequest request, long queuedAt, BodyReader<T> reader, CompletableFuture<T> result,
+                                  AtomicBoolean claimed) {
+
+        // Takes the call off the queue's hands, either to start it or to time it out; only one of them wins.
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Duration requestTimeout;
+    private final WireFormat wireFormat;
+
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final Semaphore permits;
+    private final Queue<PendingCall<?>> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public InterNodeClient(
+            ObjectMapper objectMapper,
+            @Value("${peer.client.connect-timeout-ms:2000}") long connectTimeoutMillis,
+            @Value("${peer.client.request-timeout-ms:5000}") long requestTimeoutMillis,
+            @Value("${peer.client.max-concurrent-requests:256}") int maxConcurrentRequests,
+            @Value("${peer.client.max-queued-requests:4096}") int maxQueuedRequests,
+            @Value("${peer.client.wire-format:JSON}") WireFormat wireFormat,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.objectMapper = objectMapper;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.wireFormat = wireFormat;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis));
+        if (virtualThreads) {
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        this.httpClient = builder.build();
+    }
+
+    public CompletableFuture<Map<String, Object>> getAsync(String url) {
+        return send(HttpRequest.newBuilder(URI.create(url)).GET(), this::readMap);
+    }
+
+    public <T> CompletableFuture<T> getAsync(String url, Class<T> responseType) {
+        return send(accept(HttpRequest.newBuilder(URI.create(url)), responseType).GET(), response -> read(response, responseType));
+    }
+
+    public CompletableFuture<Map<String, Object>> postAsync(String url, Object body) {
+        HttpRequest.Builder builder;
+        try {
+            builder = post(URI.create(url), body);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(builder, this::readMap);
+    }
+
+    public <T> CompletableFuture<T> postAsync(String url, Object body, Class<T> responseType) {
+        HttpRequest.Builder builder;
+        try {
+            builder = accept(post(URI.create(url), body), responseType);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(builder, response -> read(response, responseType));
+    }
+
+    // Blocking form of getAsync, for callers that have nothing else to do meanwhile.
+    public Map<String, Object> get(String url) {
+        return await(getAsync(url));
+    }
+
+    // Blocking form of postAsync, for callers that have nothing else to do meanwhile.
+    public Map<String, Object> post(String url, Object body) {
+        return await(postAsync(url, body));
+    }
+
+    public Map<String, Object> getMetrics() {
+        long completed = requests.get();
+        return Map.of(
+                "max_concurrent_requests", maxConcurrentRequests,
+                "in_flight", inFlight.get(),
+                "queued", queued.get(),
+                "utilisation", (double) inFlight.get() / maxConcurrentRequests,
+                "requests", completed,
+                "failures", failures.get(),
+                "rejected", rejected.get(),
+                "average_latency_ms", completed == 0 ? 0.0 : totalLatencyNanos.get() / 1e6 / completed,
+                "max_latency_ms", maxLatencyNanos.get() / 1e6
+        );
+    }
+
+    private HttpRequest.Builder post(URI uri, Object body) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (wireFormat == WireFormat.BINARY && body instanceof Record record && BinaryWireFormat.supports(record.getClass())) {
+            return builder.header("Content-Type", BinaryWireFormat.MEDIA_TYPE_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(BinaryWireFormat.encode(record)));
+        }
+        return builder.header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+    }
+
+    private HttpRequest.Builder accept(HttpRequest.Builder builder, Class<?> responseType) {
+        if (wireFormat == WireFormat.BINARY && BinaryWireFormat.supports(responseType)) {
+            return builder.header("Accept", BinaryWireFormat.MEDIA_TYPE_VALUE + ", application/json;q=0.5");
+        }
+        return builder.header("Accept", "application/json");
+    }
+
+    private Map<String, Object> readMap(HttpResponse<byte[]> response) throws IOException {
+        byte[] body = response.body();
+        return body.length == 0 ? Map.of() : objectMapper.readValue(body, RESPONSE_TYPE);
+    }
+
+    private <T> T read(HttpResponse<byte[]> response, Class<T> type) throws IOException {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        if (contentType.startsWith(BinaryWireFormat.MEDIA_TYPE_VALUE)) {
+            return BinaryWireFormat.decode(response.body(), type);
+        }
+        return objectMapper.readValue(response.body(), type);
+    }
+
+    private <T> CompletableFuture<T> send(HttpRequest.Builder builder, BodyReader<T> reader) {
+        HttpRequest request = builder.timeout(requestTimeout).build();
+        if (queued.incrementAndGet() > maxQueuedRequests) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "More than " + maxQueuedRequests + " calls waiting, not sending " + request.uri()));
+        }
+        PendingCall<T> call = new PendingCall<>(request, System.nanoTime(), reader, new CompletableFuture<>(), new AtomicBoolean());
+        pending.add(call);
+        dispatch();
+        if (!call.claimed().get()) {
+            CompletableFuture.delayedExecutor(requestTimeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> expire(call));
+        }
+        return call.result();
+    }
+
+    // A call that is still queued when the request timeout passes fails and leaves the queue
+    private void expire(PendingCall<?> call) {
+        if (call.claim()) {
+            pending.remove(call);
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            call.result().completeExceptionally(new HttpTimeoutException(
+                    "Waited " + requestTimeout.toMillis() + " ms for a free connection to " + call.request().uri()));
+        }
+    }
+
+    // Called whenever a call is queued or a permit is released, so a queued call is always picked up
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            PendingCall<?> call = pending.poll();
+            if (call == null || !call.claim()) {
+                permits.release();
+                continue;
+            }
+            queued.decrementAndGet();
+            inFlight.incrementAndGet();
+            start(call);
+        }
+    }
+
+    private <T> void start(PendingCall<T> call) {
+        httpClient.sendAsync(call.request(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> complete(call, response, error));
+    }
+
+    private <T> void complete(PendingCall<T> call, HttpResponse<byte[]> response, Throwable error) {
+        inFlight.decrementAndGet();
+        permits.release();
+        recordLatency(System.nanoTime() - call.queuedAt());
+        requests.incrementAndGet();
+
+        try {
+            if (error != null) {
+                throw error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            }
+            if (response.statusCode() >= 400) {
+                throw new IOException("HTTP " + response.statusCode() + " from " + call.request().uri());
+            }
+            call.result().complete(call.reader().read(response));
+        } catch (Throwable t) {
+            failures.incrementAndGet();
+            call.result().completeExceptionally(t);
+        }
+        dispatch();
+    }
+
+    private void recordLatency(long nanos) {
+        totalLatencyNanos.addAndGet(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes and Spring Framework annotations
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// This component evicts peer nodes that stopped sending heartbeats, so a crashed peer doesn't stay
+// in the index and subscribers aren't sent to a dead node.
+//
+// Registering grants a node a lease of ttlMillis, and every heartbeat renews it. A node whose lease
+// runs out is unregistered through the replicator, which spreads its topics over the other nodes.
+//
+// Deadlines sit in a min-heap. A renewal doesn't look for the node's old entry; it pushes a new one
+// and records the current deadline in a map, and an entry whose deadline is no longer the node's
+// current one is simply dropped when it reaches the top. Each check therefore only pops the entries
+// that are due, O(due log n), however many nodes hold leases, and stale entries are bounded by
+// the heartbeats sent within one lease per node.
+//
+// Only the server that accepts writes tracks leases; followers learn about expiries from its log.
+// A server that starts with nodes already in its index, recovered from disk or from its replicas,
+// gives each of them a fresh lease.
+@Component
+public class LeaseManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseManager.class);
+
+    // This record is one entry in the expiry heap
+    private record Lease(String nodeId, long deadline) {
+    }
+
+    private final IndexingRegistry registry;
+    private final IndexReplicator replicator;
+    private final long ttlMillis;
+
+    // This map holds the current deadline of every node with a lease
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+
+    // This heap orders lease entries by deadline; it is guarded by its own monitor
+    private final PriorityQueue<Lease> expiries = new PriorityQueue<>((a, b) -> Long.compare(a.deadline(), b.deadline()));
+
+    // These count leases that expired and heap entries dropped because the lease was renewed or cancelled
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+
+    public LeaseManager(
+            IndexingRegistry registry,
+            IndexReplicator replicator,
+            @Value("${indexing.lease.ttl-ms:30000}") long ttlMillis) {
+        this.registry = registry;
+        this.replicator = replicator;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // This method gives the nodes already in the index a lease, as if they had just registered
+    @PostConstruct
+    public void start() {
+        long now = System.currentTimeMillis();
+        for (String nodeId : registry.getNodeIds()) {
+            renew(nodeId, now);
+        }
+    }
+
+    // This method checks whether leases are tracked on this server at all
+    public boolean isEnabled() {
+        return ttlMillis > 0 && !replicator.isFollower();
+    }
+
+    // This method grants or renews a node's lease
+    public void renew(String nodeId) {
+        renew(nodeId, System.currentTimeMillis());
+    }
+
+    // This method grants or renews a node's lease as of the given time
+    public void renew(String nodeId, long now) {
+        if (!isEnabled()) {
+            return;
+        }
+        long deadline = now + ttlMillis;
+        deadlines.put(nodeId, deadline);
+        synchronized (expiries) {
+            expiries.add(new Lease(nodeId, deadline));
+        }
+    }
+
+    // This method drops a node's lease when it unregisters; its heap entry goes stale
+    public void cancel(String nodeId) {
+        deadlines.remove(nodeId);
+    }
+
+    // This method unregisters the nodes whose lease ran out
+    @Scheduled(fixedDelayString = "${indexing.lease.check-ms:1000}")
+    public void expireLeases() {
+        expireDue(System.currentTimeMillis());
+    }
+
+    // This method unregisters the nodes whose lease ran out by the given time and returns their IDs
+    public List<String> expireDue(long now) {
+        if (!isEnabled()) {
+            return List.of();
+        }
+        List<String> expired = new ArrayList<>();
+        synchronized (expiries) {
+            while (!expiries.isEmpty() && expiries.peek().deadline() <= now) {
+                Lease lease = expiries.poll();
+                // Only the entry matching the node's current deadline counts; older ones were renewed
+                if (deadlines.remove(lease.nodeId(), lease.deadline())) {
+                    expired.add(lease.nodeId());
+                } else {
+                    staleCount.incrementAndGet();
+                }
+            }
+        }
+
+        for (String nodeId : expired) {
+            Map<String, List<String>> newOwners = replicator.unregister(nodeId);
+            if (newOwners != null) {
+                expiredCount.incrementAndGet();
+                logger.warn("Lease of node " + nodeId + " expired, unregistered it and moved its topics to " + newOwners.keySet());
+            }
+        }
+        return expired;
+    }
+
+    // This method returns how many leases are held and how many have expired, for the metrics endpoint
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", isEnabled());
+        status.put("ttl_ms", ttlMillis);
+        status.put("active", deadlines.size());
+        synchronized (expiries) {
+            status.put("queued", expiries.size());
+        }
+        status.put("expired", expiredCount.get());
+        status.put("stale_dropped", staleCount.get());
+        return status;
+    }
+}
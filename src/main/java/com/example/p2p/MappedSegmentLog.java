@@ -0,0 +1,405 @@
+package com.example.p2p;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+// Persistent message log for one topic, stored as append-only, memory-mapped segment files.
+//
+// Each segment is a preallocated file named after the offset of its first record and mapped into
+// memory in full. A record is [int size][long timestamp][UTF-8 bytes], where size counts the whole
+// record including its header; a zero size marks the end of the written data. Every segment keeps an
+// in-memory offset index of record positions, rebuilt by one sequential scan of the mapped file on
+// startup. A new segment is rolled when the active one is full or older than the segment age, and
+// whole segments are deleted once the log exceeds its retention size or their newest record is older
+// than the retention age. Retention is checked whenever a segment rolls and by enforceRetention(),
+// which the topic store calls periodically so that a topic nobody appends to still ages out.
+//
+// Appends are serialized per topic. Reads are lock-free and copy message bytes straight out of the
+// mapped pages, so the backlog itself never lives on the heap.
+public class MappedSegmentLog implements MessageLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedSegmentLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSETS_FILE = "consumer-offsets.properties";
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long segmentMillis;
+    private final long retentionBytes;
+    private final long retentionMillis;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> groupOffsets = new ConcurrentHashMap<>();
+
+    private volatile long headOffset;
+    private volatile long nextOffset;
+
+    private long dropped;
+    private long rejected;
+
+    public MappedSegmentLog(Path directory, int segmentBytes, long segmentMillis,
+                            long retentionBytes, long retentionMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segmentMillis = segmentMillis;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open message log in " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized long append(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        int recordBytes = RECORD_HEADER_BYTES + bytes.length;
+        // Leave room for the zero size that terminates a segment
+        if (recordBytes + Integer.BYTES > segmentBytes) {
+            rejected++;
+            return -1;
+        }
+
+        long now = System.currentTimeMillis();
+        Segment active = segments.get(segments.size() - 1);
+        if (!active.hasRoom(recordBytes) || (active.count > 0 && now - active.createdAt >= segmentMillis)) {
+            active = roll();
+        }
+
+        long offset = nextOffset;
+        active.append(bytes, now);
+        nextOffset = offset + 1;
+        return offset;
+    }
+
+    @Override
+    public synchronized long[] appendAll(List<String> messages) {
+        return MessageLog.super.appendAll(messages);
+    }
+
+    // Starts a new segment at the offset; earlier segments stay readable until retention removes them.
+    @Override
+    public synchronized void skipTo(long offset) {
+        if (offset <= nextOffset) {
+            return;
+        }
+        Segment active = segments.get(segments.size() - 1);
+        if (active.count == 0 && segments.size() == 1) {
+            try {
+                Files.deleteIfExists(active.path);
+                segments.set(0, Segment.open(segmentPath(offset), offset, segmentBytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to move segment in " + directory, e);
+            }
+            headOffset = offset;
+            nextOffset = offset;
+            return;
+        }
+        nextOffset = offset;
+        roll();
+    }
+
+    @Override
+    public List<Record> read(long fromOffset, int maxMessages) {
+        List<Record> records = new ArrayList<>();
+        long end = nextOffset;
+        long offset = Math.max(fromOffset, headOffset);
+        for (Segment segment : segments) {
+            long segmentEnd = Math.min(segment.baseOffset + segment.count, end);
+            for (offset = Math.max(offset, segment.baseOffset); offset < segmentEnd; offset++) {
+                if (records.size() >= maxMessages) {
+                    return records;
+                }
+                records.add(new Record(offset, segment.read((int) (offset - segment.baseOffset))));
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized long commit(String group, long nextOffset) {
+        long committed = groupOffsets.merge(group, Math.min(nextOffset, this.nextOffset), Math::max);
+        saveGroupOffsets();
+        return committed;
+    }
+
+    @Override
+    public synchronized boolean deleteGroup(String group) {
+        if (groupOffsets.remove(group) == null) {
+            return false;
+        }
+        saveGroupOffsets();
+        return true;
+    }
+
+    @Override
+    public long getCommittedOffset(String group) {
+        return Math.max(groupOffsets.getOrDefault(group, headOffset), headOffset);
+    }
+
+    @Override
+    public Map<String, Long> getGroupOffsets() {
+        return Map.copyOf(groupOffsets);
+    }
+
+    @Override
+    public long getHeadOffset() {
+        return headOffset;
+    }
+
+    @Override
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public int size() {
+        return (int) (nextOffset - headOffset);
+    }
+
+    @Override
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    // Rolls an active segment past the segment age, as the next append would, and deletes expired segments.
+    @Override
+    public synchronized void enforceRetention() {
+        Segment active = segments.get(segments.size() - 1);
+        if (active.count > 0 && System.currentTimeMillis() - active.createdAt >= segmentMillis) {
+            roll();
+            return;
+        }
+        try {
+            deleteExpiredSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete expired segments in " + directory, e);
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    private Segment roll() {
+        Segment previous = segments.get(segments.size() - 1);
+        previous.buffer.force();
+        try {
+            Segment segment = Segment.open(segmentPath(nextOffset), nextOffset, segmentBytes);
+            segments.add(segment);
+            deleteExpiredSegments();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll segment in " + directory, e);
+        }
+    }
+
+    private void deleteExpiredSegments() throws IOException {
+        long now = System.currentTimeMillis();
+        // The active segment is never deleted
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            long totalBytes = (long) segments.size() * segmentBytes;
+            boolean tooBig = totalBytes > retentionBytes;
+            boolean tooOld = now - oldest.lastAppendAt > retentionMillis;
+            if (!tooBig && !tooOld) {
+                return;
+            }
+            // The segment's channel was closed once it was mapped, and the list held the last reference to
+            // the mapping, which is unmapped when collected. Unmapping it here instead would crash readers
+            // still copying out of it; the deleted file's pages stay valid for them until then.
+            segments.remove(0);
+            headOffset = segments.get(0).baseOffset;
+            dropped += oldest.count;
+            Files.deleteIfExists(oldest.path);
+            logger.info("Deleted segment " + oldest.path.getFileName() + " of " + directory.getFileName());
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentFiles = files
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path path : segmentFiles) {
+            String name = path.getFileName().toString();
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            segments.add(Segment.open(path, baseOffset, segmentBytes));
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.open(segmentPath(0), 0, segmentBytes));
+        }
+
+        Segment last = segments.get(segments.size() - 1);
+        headOffset = segments.get(0).baseOffset;
+        nextOffset = last.baseOffset + last.count;
+        loadGroupOffsets();
+        deleteExpiredSegments();
+
+        if (nextOffset > 0) {
+            logger.info("Recovered " + size() + " messages in " + segments.size() + " segments from " + directory);
+        }
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+    }
+
+    private void loadGroupOffsets() throws IOException {
+        Path path = directory.resolve(OFFSETS_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        for (String group : properties.stringPropertyNames()) {
+            groupOffsets.put(group, Long.parseLong(properties.getProperty(group)));
+        }
+    }
+
+    private void saveGroupOffsets() {
+        Properties properties = new Properties();
+        groupOffsets.forEach((group, offset) -> properties.setProperty(group, Long.toString(offset)));
+        Path path = directory.resolve(OFFSETS_FILE);
+        Path temp = directory.resolve(OFFSETS_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to save consumer group offsets in " + directory, e);
+        }
+    }
+
+    // One mapped segment file and the positions of the records written to it.
+    private static final class Segment {
+
+        final Path path;
+        final long baseOffset;
+        final MappedByteBuffer buffer;
+        final long createdAt;
+
+        // Positions are published before count, so a reader that sees count sees every position below it
+        volatile int[] positions = new int[1024];
+        volatile int count;
+        int writePosition;
+        long lastAppendAt;
+
+        private Segment(Path path, long baseOffset, MappedByteBuffer buffer, long createdAt) {
+            this.path = path;
+            this.baseOffset = baseOffset;
+            this.buffer = buffer;
+            this.createdAt = createdAt;
+            this.lastAppendAt = createdAt;
+        }
+
+        static Segment open(Path path, long baseOffset, int segmentBytes) throws IOException {
+            boolean existed = Files.exists(path);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            }
+            long createdAt = existed ? Files.getLastModifiedTime(path).toMillis() : System.currentTimeMillis();
+            Segment segment = new Segment(path, baseOffset, buffer, createdAt);
+            if (existed) {
+                segment.scan();
+            }
+            return segment;
+        }
+
+        boolean hasRoom(int recordBytes) {
+            return writePosition + recordBytes + Integer.BYTES <= buffer.capacity();
+        }
+
+        void append(byte[] bytes, long timestamp) {
+            int position = writePosition;
+            int size = RECORD_HEADER_BYTES + bytes.length;
+            // Terminate the segment after this record, in case an earlier crash left bytes behind
+            buffer.putInt(position + size, 0);
+            buffer.putLong(position + Integer.BYTES, timestamp);
+            buffer.put(position + RECORD_HEADER_BYTES, bytes);
+            // Write the size last so a crash mid-append leaves the record unreadable rather than torn
+            buffer.putInt(position, size);
+            writePosition = position + size;
+            lastAppendAt = timestamp;
+            index(position);
+        }
+
+        String read(int index) {
+            int position = positions[index];
+            byte[] bytes = new byte[buffer.getInt(position) - RECORD_HEADER_BYTES];
+            buffer.get(position + RECORD_HEADER_BYTES, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void scan() {
+            int position = 0;
+            while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                int size = buffer.getInt(position);
+                if (size < RECORD_HEADER_BYTES || position + size > buffer.capacity()) {
+                    break;
+                }
+                lastAppendAt = buffer.getLong(position + Integer.BYTES);
+                index(position);
+                position += size;
+            }
+            writePosition = position;
+        }
+
+        private void index(int position) {
+            int[] current = positions;
+            if (count == current.length) {
+                int[] grown = new int[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, count);
+                positions = grown;
+                current = grown;
+            }
+            current[count] = position;
+            count = count + 1;
+        }
+    }
+}
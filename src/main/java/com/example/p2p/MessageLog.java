@@ -0,0 +1,72 @@
+package com.example.p2p;
+
+import java.util.List;
+import java.util.Map;
+
+// Offset-addressed message log for one topic hosted by this peer.
+public interface MessageLog {
+
+    record Record(long offset, String message) {
+    }
+
+    // Appends a message and returns its offset, or -1 if the message was rejected.
+    long append(String message);
+
+    // Appends several messages in order and returns their offsets, with -1 for any message that was rejected.
+    // Implementations assign the whole batch at once where they can.
+    default long[] appendAll(List<String> messages) {
+        long[] offsets = new long[messages.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = append(messages.get(i));
+        }
+        return offsets;
+    }
+
+    // Moves the next offset forward to offset, so the next message appended gets that offset. Replicas use
+    // this to keep the offsets of the topic's primary. Offsets skipped over are never filled, and messages
+    // retained before them are dropped. Only the log's single writer may call this.
+    void skipTo(long offset);
+
+    // Returns up to maxMessages retained records starting at fromOffset, without consuming them.
+    List<Record> read(long fromOffset, int maxMessages);
+
+    // Commits the next offset a consumer group will read and returns the group's committed offset.
+    long commit(String group, long nextOffset);
+
+    // Records that a reader outside any consumer group has read every message before nextOffset.
+    default void markRead(long nextOffset) {
+    }
+
+    // Forgets a consumer group's committed offset, returning false if the group had none.
+    boolean deleteGroup(String group);
+
+    // Forgets consumer groups, and the position of readers outside any group, that have not moved for
+    // idleMillis, returning how many groups were forgotten. Logs whose retention does not wait for readers
+    // keep them.
+    default int expireGroups(long idleMillis) {
+        return 0;
+    }
+
+    // Deletes messages past the log's retention limits; logs that only drop messages while appending do nothing.
+    default void enforceRetention() {
+    }
+
+    // Returns the next offset a consumer group will read; a new group starts at the oldest retained message.
+    long getCommittedOffset(String group);
+
+    Map<String, Long> getGroupOffsets();
+
+    long getHeadOffset();
+
+    long getNextOffset();
+
+    int size();
+
+    long getDroppedCount();
+
+    long getRejectedCount();
+
+    // Releases any resources held by the log.
+    default void close() {
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.p2p;
+
+// Framing shared by NioTransportServer and NioTransportClient.
+//
+// Every frame is [int length][byte op][int correlation id][payload], where length counts everything
+// after the length field and the payload is a record in BinaryWireFormat. A reply carries the
+// request's op with REPLY set and the request's correlation id, so one connection can carry many
+// requests at once and replies may arrive in any order. A request that fails is answered with ERROR
+// and a UTF-8 message as payload.
+public final class NioTransport {
+
+    // PublishRequest answered by PublishResponse.
+    public static final byte PUBLISH = 1;
+    // PullRequest answered by PullResponse.
+    public static final byte PULL = 2;
+    // SubscribeRequest forwarded from another peer, answered by SubscribeResponse.
+    public static final byte FORWARD = 3;
+    public static final byte ERROR = 0x7F;
+    public static final byte REPLY = (byte) 0x80;
+
+    // Bytes of a frame after its length field and before its payload.
+    public static final int HEADER_BYTES = 1 + Integer.BYTES;
+
+    private NioTransport() {
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.p2p;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Client for a NioTransportServer: one connection shared by any number of threads.
+//
+// Requests are written as they are made, without waiting for earlier replies, and a reader thread
+// completes each request's future when the reply with its correlation id arrives.
+public class NioTransportClient implements Closeable {
+
+    private record PendingReply(byte op, Class<? extends Record> type, CompletableFuture<Record> result) {
+    }
+
+    private final SocketChannel channel;
+    private final int maxFrameBytes;
+    private final AtomicInteger nextCorrelationId = new AtomicInteger();
+    private final Map<Integer, PendingReply> pending = new ConcurrentHashMap<>();
+    private final ByteBuffer header = ByteBuffer.allocateDirect(Integer.BYTES + NioTransport.HEADER_BYTES);
+    private final Thread reader;
+
+    public NioTransportClient(String host, int port, int maxFrameBytes) throws IOException {
+        this.maxFrameBytes = maxFrameBytes;
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.reader = Thread.ofPlatform().name("nio-transport-client").daemon().start(this::readReplies);
+    }
+
+    public CompletableFuture<PublishResponse> publish(PublishRequest request) {
+        return send(NioTransport.PUBLISH, request, PublishResponse.class);
+    }
+
+    public CompletableFuture<PullResponse> pull(PullRequest request) {
+        return send(NioTransport.PULL, request, PullResponse.class);
+    }
+
+    public CompletableFuture<SubscribeResponse> forward(SubscribeRequest request) {
+        return send(NioTransport.FORWARD, request, SubscribeResponse.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            reader.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Record> CompletableFuture<T> send(byte op, Record request, Class<T> responseType) {
+        byte[] payload = BinaryWireFormat.encode(request);
+        if (payload.length > maxFrameBytes) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "Request of " + payload.length + " bytes exceeds the frame limit"));
+        }
+        int correlationId = nextCorrelationId.incrementAndGet();
+        CompletableFuture<Record> result = new CompletableFuture<>();
+        pending.put(correlationId, new PendingReply(op, responseType, result));
+        try {
+            synchronized (header) {
+                header.clear();
+                header.putInt(NioTransport.HEADER_BYTES + payload.length).put(op).putInt(correlationId).flip();
+                ByteBuffer[] frame = {header, ByteBuffer.wrap(payload)};
+                while (frame[1].hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(correlationId);
+            result.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) result;
+    }
+
+    private void readReplies() {
+        ByteBuffer lengthAndHeader = ByteBuffer.allocate(Integer.BYTES + NioTransport.HEADER_BYTES);
+        try {
+            while (true) {
+                lengthAndHeader.clear();
+                readFully(lengthAndHeader);
+                lengthAndHeader.flip();
+                int length = lengthAndHeader.getInt();
+                byte op = lengthAndHeader.get();
+                int correlationId = lengthAndHeader.getInt();
+                if (length < NioTransport.HEADER_BYTES || length > NioTransport.HEADER_BYTES + maxFrameBytes) {
+                    throw new IOException("Invalid reply frame of " + length + " bytes");
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length - NioTransport.HEADER_BYTES);
+                readFully(payload);
+
+                PendingReply reply = pending.remove(correlationId);
+                if (reply == null) {
+                    continue;
+                }
+                if (op == NioTransport.ERROR) {
+                    reply.result().completeExceptionally(new IOException(new String(payload.array(), StandardCharsets.UTF_8)));
+                } else if (op != (byte) (reply.op() | NioTransport.REPLY)) {
+                    reply.result().completeExceptionally(new IOException("Unexpected reply op " + op));
+                } else {
+                    try {
+                        reply.result().complete(BinaryWireFormat.decode(payload.array(), reply.type()));
+                    } catch (RuntimeException e) {
+                        reply.result().completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed: nothing more will be answered
+            for (Integer correlationId : pending.keySet()) {
+                PendingReply reply = pending.remove(correlationId);
+                if (reply != null) {
+                    reply.result().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed by the server");
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.p2p;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.CompletableFuture;
+
+// Starts a NioTransportServer next to the HTTP server when peer.nio.enabled is set, serving
+// publish, pull and forwarded subscriptions through the same PeerNodeController logic as the REST
+// endpoints.
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "peer.nio.enabled", havingValue = "true")
+public class NioTransportConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    NioTransportServer nioTransportServer(
+            PeerNodeController peerNodeController,
+            @Value("${peer.nio.port:9090}") int port,
+            @Value("${peer.nio.max-frame-bytes:65536}") int maxFrameBytes) {
+        NioTransportServer.Handler handler = new NioTransportServer.Handler() {
+            @Override
+            public CompletableFuture<PublishResponse> publish(PublishRequest request) {
+                return peerNodeController.publish(request);
+            }
+
+            @Override
+            public PullResponse pull(PullRequest request) {
+                return peerNodeController.pullMessages(request.topic(), request.fromOffset(), request.maxMessages(), request.group());
+            }
+
+            @Override
+            public CompletableFuture<SubscribeResponse> forward(SubscribeRequest request) {
+                return peerNodeController.subscribe(request.topic(), request.hops(), request.via());
+            }
+        };
+        return new NioTransportServer(handler, port, maxFrameBytes);
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.p2p;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Non-blocking socket server for the peer data plane: publish, pull and forwarded subscriptions in the
+// NioTransport framing, next to the HTTP API.
+//
+// One selector thread owns every connection. Each connection reads into and writes from its own direct
+// buffer, so socket I/O needs no intermediate copies, and all replies that are ready when the
+// connection is flushed go out in a single write. Pulls are answered on the selector thread; publishes
+// and forwarded subscriptions complete asynchronously, since a publish may wait for replicas, and
+// their replies are handed back to the selector thread.
+public class NioTransportServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioTransportServer.class);
+
+    // What the server does with each request.
+    public interface Handler {
+        CompletableFuture<PublishResponse> publish(PublishRequest request);
+
+        PullResponse pull(PullRequest request);
+
+        CompletableFuture<SubscribeResponse> forward(SubscribeRequest request);
+    }
+
+    private record Reply(byte op, int correlationId, byte[] payload) {
+    }
+
+    private final Handler handler;
+    private final int port;
+    private final int maxFrameBytes;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    // Connections with replies queued by other threads, flushed by the selector thread
+    private final Queue<Connection> pendingFlushes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong protocolErrors = new AtomicLong();
+
+    public NioTransportServer(Handler handler, int port, int maxFrameBytes) {
+        this.handler = handler;
+        this.port = port;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = Thread.ofPlatform().name("nio-transport").daemon().start(this::run);
+        logger.info("NIO transport listening on port " + getPort());
+    }
+
+    // The port actually bound, which differs from the configured one when that is 0.
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public Map<String, Object> getMetrics() {
+        return Map.of(
+                "port", getPort(),
+                "connections", connections.get(),
+                "frames_received", framesReceived.get(),
+                "frames_sent", framesSent.get(),
+                "protocol_errors", protocolErrors.get()
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                }
+                Connection connection;
+                while ((connection = pendingFlushes.poll()) != null) {
+                    connection.flush();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("NIO transport selector failed", e);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.incrementAndGet();
+    }
+
+    private final class Connection {
+
+        final SocketChannel channel;
+        SelectionKey key;
+
+        final ByteBuffer in = ByteBuffer.allocateDirect(Integer.BYTES + NioTransport.HEADER_BYTES + maxFrameBytes);
+        final ByteBuffer out = ByteBuffer.allocateDirect(Integer.BYTES + NioTransport.HEADER_BYTES + maxFrameBytes);
+        final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean flushPending = new AtomicBoolean();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+                in.flip();
+                while (in.remaining() >= Integer.BYTES) {
+                    int length = in.getInt(in.position());
+                    if (length < NioTransport.HEADER_BYTES || length > NioTransport.HEADER_BYTES + maxFrameBytes) {
+                        protocolErrors.incrementAndGet();
+                        logger.warn("Closing NIO connection after a frame of " + length + " bytes");
+                        close();
+                        return;
+                    }
+                    if (in.remaining() < Integer.BYTES + length) {
+                        break;
+                    }
+                    in.getInt();
+                    byte op = in.get();
+                    int correlationId = in.getInt();
+                    byte[] payload = new byte[length - NioTransport.HEADER_BYTES];
+                    in.get(payload);
+                    framesReceived.incrementAndGet();
+                    handle(op, correlationId, payload);
+                }
+                in.compact();
+                // Everything decoded from this read is answered in as few writes as possible
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void handle(byte op, int correlationId, byte[] payload) {
+            try {
+                switch (op) {
+                    case NioTransport.PUBLISH -> replyWhenDone(op, correlationId,
+                            handler.publish(BinaryWireFormat.decode(payload, PublishRequest.class)));
+                    case NioTransport.PULL -> reply(op, correlationId,
+                            handler.pull(BinaryWireFormat.decode(payload, PullRequest.class)));
+                    case NioTransport.FORWARD -> replyWhenDone(op, correlationId,
+                            handler.forward(BinaryWireFormat.decode(payload, SubscribeRequest.class)));
+                    default -> error(correlationId, "Unknown op " + op);
+                }
+            } catch (RuntimeException e) {
+                error(correlationId, e.getMessage());
+            }
+        }
+
+        // A reply that is ready already joins this read's flush; a later one is flushed by the selector thread
+        private void replyWhenDone(byte op, int correlationId, CompletableFuture<? extends Record> response) {
+            if (response.isDone()) {
+                replyWith(op, correlationId, response);
+                return;
+            }
+            response.whenComplete((ignored, e) -> {
+                replyWith(op, correlationId, response);
+                scheduleFlush();
+            });
+        }
+
+        private void replyWith(byte op, int correlationId, CompletableFuture<? extends Record> response) {
+            try {
+                reply(op, correlationId, response.join());
+            } catch (CompletionException e) {
+                error(correlationId, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        }
+
+        private void reply(byte op, int correlationId, Record response) {
+            byte[] payload = BinaryWireFormat.encode(response);
+            if (payload.length > maxFrameBytes) {
+                // A reply larger than the write buffer could never be sent
+                error(correlationId, "Reply of " + payload.length + " bytes exceeds the frame limit");
+                return;
+            }
+            replies.add(new Reply((byte) (op | NioTransport.REPLY), correlationId, payload));
+        }
+
+        private void error(int correlationId, String message) {
+            byte[] payload = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+            if (payload.length > maxFrameBytes) {
+                payload = Arrays.copyOf(payload, maxFrameBytes);
+            }
+            replies.add(new Reply(NioTransport.ERROR, correlationId, payload));
+        }
+
+        // Called from threads other than the selector thread
+        private void scheduleFlush() {
+            if (flushPending.compareAndSet(false, true)) {
+                pendingFlushes.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void flush() {
+            flushPending.set(false);
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                while (true) {
+                    Reply reply;
+                    while ((reply = replies.peek()) != null
+                            && out.remaining() >= Integer.BYTES + NioTransport.HEADER_BYTES + reply.payload().length) {
+                        replies.poll();
+                        out.putInt(NioTransport.HEADER_BYTES + reply.payload().length)
+                                .put(reply.op())
+                                .putInt(reply.correlationId())
+                                .put(reply.payload());
+                        framesSent.incrementAndGet();
+                    }
+                    out.flip();
+                    channel.write(out);
+                    boolean drained = !out.hasRemaining();
+                    out.compact();
+                    if (!drained) {
+                        // The socket is full: carry on when it becomes writable
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    if (replies.isEmpty()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already closed by the other side
+            }
+            connections.decrementAndGet();
+        }
+    }
+}
@@ -1,149 +1,933 @@
 package com.example.p2p;
 
 import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/peer")
 @EnableAsync
+@EnableScheduling
 public class PeerNodeController {
 
     private static final Logger logger = LoggerFactory.getLogger(PeerNodeController.class);
 
-    private static final AtomicInteger peerCounter = new AtomicInteger(1);
+    // Appends that may wait for space (the BLOCK overflow policy) run here, never on a Netty event loop or
+    // the socket transport's selector thread
+    private static final Executor blockingAppends = task -> Schedulers.boundedElastic().schedule(task);
+
 
     private String nodeId;
-    private String indexingServerUrl;
 
     private List<String> topics = new ArrayList<>();
-    private final RestTemplate restTemplate = new RestTemplate();
+    private long topicsVersion = 0;
 
     private final Map<String, List<String>> topicSubscribers = new HashMap<>();
-    private final Map<String, List<String>> topicMessages = new HashMap<>();
+
+    // Topics this node holds a copy of for another node, and how many copies each is meant to have
+    private final Set<String> replicaTopics = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> replicaFactors = new ConcurrentHashMap<>();
+
+    // Wildcard subscriptions of this node and the topics each has subscribed to so far, and how far
+    // this node has read each indexing shard's log of created topics
+    private final Map<String, Set<String>> patternSubscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Long> createdTopicSequences = new ConcurrentHashMap<>();
 
     private final List<String> eventLog = new CopyOnWriteArrayList<>();
 
+    private final TopicStore topicStore;
+    private final TopicLocationCache topicLocationCache;
+    private final PushDispatcher pushDispatcher;
+    private final InterNodeClient interNodeClient;
+    private final IndexingShardRouter indexingShardRouter;
+    private final TopicResolver topicResolver;
+    private final TopicReplicator topicReplicator;
+    private final ReplicaSelector replicaSelector;
+    private volatile boolean shardsFromInitialize;
+    private final ObjectProvider<NioTransportServer> nioTransportServerProvider;
+    private final int maxPullMessages;
+    private final int maxForwardHops;
+    private final int defaultReplicationFactor;
+    private final int maxPatternTopics;
+    private final String configuredNodeId;
+    private final String advertisedHost;
+    private volatile int advertisedPort;
+    private final Map<String, Long> invalidationSequences = new ConcurrentHashMap<>();
+    private long lastAppendedCount;
+    private long lastLoadReportNanos = System.nanoTime();
+
+    public PeerNodeController(
+            TopicStore topicStore,
+            TopicLocationCache topicLocationCache,
+            PushDispatcher pushDispatcher,
+            InterNodeClient interNodeClient,
+            IndexingShardRouter indexingShardRouter,
+            TopicResolver topicResolver,
+            TopicReplicator topicReplicator,
+            ReplicaSelector replicaSelector,
+            ObjectProvider<NioTransportServer> nioTransportServerProvider,
+            @Value("${peer.pull.max-messages:500}") int maxPullMessages,
+            @Value("${peer.forward.max-hops:3}") int maxForwardHops,
+            @Value("${peer.replication.factor:1}") int defaultReplicationFactor,
+            @Value("${peer.pattern.max-topics:1000}") int maxPatternTopics,
+            @Value("${peer.node.id:}") String configuredNodeId,
+            @Value("${peer.advertised.host:localhost}") String advertisedHost,
+            @Value("${peer.advertised.port:0}") int advertisedPort) {
+        this.topicStore = topicStore;
+        this.topicLocationCache = topicLocationCache;
+        this.pushDispatcher = pushDispatcher;
+        this.interNodeClient = interNodeClient;
+        this.indexingShardRouter = indexingShardRouter;
+        this.topicResolver = topicResolver;
+        this.topicReplicator = topicReplicator;
+        this.replicaSelector = replicaSelector;
+        this.shardsFromInitialize = !indexingShardRouter.isConfigured();
+        this.nioTransportServerProvider = nioTransportServerProvider;
+        this.maxPullMessages = maxPullMessages;
+        this.maxForwardHops = maxForwardHops;
+        this.defaultReplicationFactor = defaultReplicationFactor;
+        this.maxPatternTopics = maxPatternTopics;
+        this.configuredNodeId = configuredNodeId;
+        this.advertisedHost = advertisedHost;
+        this.advertisedPort = advertisedPort;
+        this.topics.addAll(topicStore.getTopics());
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        if (advertisedPort == 0) {
+            advertisedPort = event.getWebServer().getPort();
+        }
+    }
+
+    // Without an indexing server address the node relies on its topic resolver alone, as in gossip mode
     @PostMapping("/initialize")
     public Map<String, Object> initialize(
-            @RequestParam String indexServerIp,
-            @RequestParam int indexServerPort) {
+            @RequestParam(required = false) String indexServerIp,
+            @RequestParam(required = false) Integer indexServerPort) {
 
-        this.nodeId = "peer" + peerCounter.getAndIncrement();
-        this.indexingServerUrl = "http://" + indexServerIp + ":" + indexServerPort + "/indexing";
+        // IDs must differ between processes, since peers on other hosts compare them with their own
+        this.nodeId = !configuredNodeId.isEmpty() ? configuredNodeId : "peer-" + advertisedHost + "-" + advertisedPort;
+        if (shardsFromInitialize && indexServerIp != null && indexServerPort != null) {
+            String indexingServerUrl = "http://" + indexServerIp + ":" + indexServerPort + "/indexing";
+            indexingShardRouter.setShards(List.of(indexingServerUrl));
+        }
+        announceTopics();
 
-        logger.info("Peer node initialized with ID: " + nodeId + ", Indexing Server: " + indexingServerUrl);
+        logger.info("Peer node initialized with ID: " + nodeId + ", Indexing Servers: " + indexingShardRouter.getShards());
         logEvent("Peer Initialized", "ID: " + nodeId);
 
         return Map.of("status", "initialized", "node_id", nodeId);
     }
 
-    @PostMapping("/publish")
-    public Map<String, Object> publish(@RequestBody Map<String, Object> body) {
-        String topic = (String) body.get("topic");
-        String message = (String) body.get("message");
+    @PostMapping(value = "/publish", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryWireFormat.MEDIA_TYPE_VALUE})
+    public CompletableFuture<PublishResponse> publish(@RequestBody PublishRequest request) {
+        return appending(() -> append(request)).thenCompose(published -> published);
+    }
 
-        if (!topics.contains(topic)) {
+    // Runs an append on blockingAppends when it may wait for space, and on the calling thread otherwise
+    private <T> CompletableFuture<T> appending(Supplier<T> append) {
+        if (topicStore.appendsMayBlock()) {
+            return CompletableFuture.supplyAsync(append, blockingAppends);
+        }
+        return CompletableFuture.completedFuture(append.get());
+    }
+
+    private CompletableFuture<PublishResponse> append(PublishRequest request) {
+        String topic = request.topic();
+        String message = request.message();
+
+        MessageLog topicLog = topicStore.get(topic);
+        if (topicLog == null || replicaTopics.contains(topic)) {
             logger.warn("Attempt to publish to non-hosted topic: " + topic);
-            return Map.of("status", "error", "message", "Topic not hosted here");
+            return CompletableFuture.completedFuture(PublishResponse.error("Topic not hosted here"));
         }
 
-        topicMessages.computeIfAbsent(topic, k -> new ArrayList<>()).add(message);
+        long offset = topicLog.append(message);
+        if (offset < 0) {
+            logger.warn("Message rejected, topic " + topic + " is full");
+            return CompletableFuture.completedFuture(PublishResponse.error("Topic is full"));
+        }
+        pushDispatcher.publish(topic, offset, message);
+        topicReplicator.published(topic);
+        // In QUORUM mode the reply waits for the replicas without holding the thread that served the request
+        return topicReplicator.quorum(topic, offset).thenApply(acknowledged -> {
+            if (!acknowledged) {
+                logger.warn("Message at offset " + offset + " of topic " + topic + " was not acknowledged by enough replicas");
+                return PublishResponse.error("Not enough replicas acknowledged the message");
+            }
+
+            logger.info("Message published to topic " + topic + ": " + message);
+            logEvent("Message Published", "Topic: " + topic + ", Message: " + message);
+
+            return PublishResponse.published(topic, offset);
+        });
+    }
+
+    @PostMapping("/publish_batch")
+    public CompletableFuture<Map<String, Object>> publishBatch(@RequestBody Map<String, Object> body) {
+        return appending(() -> appendBatch(body)).thenCompose(published -> published);
+    }
+
+    private CompletableFuture<Map<String, Object>> appendBatch(Map<String, Object> body) {
+        if (!(body.get("messages") instanceof List<?> entries) || !entries.stream().allMatch(this::isBatchEntry)) {
+            return CompletableFuture.completedFuture(
+                    Map.of("status", "error", "message", "Request body needs a \"messages\" list of topic and message pairs"));
+        }
+        List<Map<String, Object>> batch = (List<Map<String, Object>>) body.get("messages");
+
+        Map<String, List<String>> messagesByTopic = new LinkedHashMap<>();
+        for (Map<String, Object> entry : batch) {
+            messagesByTopic.computeIfAbsent((String) entry.get("topic"), t -> new ArrayList<>()).add((String) entry.get("message"));
+        }
+
+        Map<String, Object> offsetsByTopic = new LinkedHashMap<>();
+        Map<String, Object> errorsByTopic = Collections.synchronizedMap(new LinkedHashMap<>());
+        List<CompletableFuture<Void>> quorums = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : messagesByTopic.entrySet()) {
+            String topic = entry.getKey();
+            List<String> messages = entry.getValue();
+
+            MessageLog topicLog = topicStore.get(topic);
+            if (topicLog == null || replicaTopics.contains(topic)) {
+                errorsByTopic.put(topic, "Topic not hosted here");
+                continue;
+            }
+
+            long[] offsets = topicLog.appendAll(messages);
+            int rejected = 0;
+            long lastOffset = -1;
+            for (int i = 0; i < offsets.length; i++) {
+                if (offsets[i] < 0) {
+                    rejected++;
+                } else {
+                    pushDispatcher.publish(topic, offsets[i], messages.get(i));
+                    lastOffset = Math.max(lastOffset, offsets[i]);
+                }
+            }
+            topicReplicator.published(topic);
+            if (rejected > 0) {
+                errorsByTopic.put(topic, rejected + " messages rejected, topic is full");
+            } else if (lastOffset >= 0) {
+                quorums.add(topicReplicator.quorum(topic, lastOffset).thenAccept(acknowledged -> {
+                    if (!acknowledged) {
+                        errorsByTopic.put(topic, "Not enough replicas acknowledged the messages");
+                    }
+                }));
+            }
+            offsetsByTopic.put(topic, offsets);
+            logEvent("Batch Published", "Topic: " + topic + ", Messages: " + (messages.size() - rejected));
+        }
+
+        logger.info("Batch of " + batch.size() + " messages published to " + offsetsByTopic.size() + " topics");
+        // Every topic's replicas are waited for at once
+        return CompletableFuture.allOf(quorums.toArray(CompletableFuture[]::new)).thenApply(ignored ->
+                Map.of("status", errorsByTopic.isEmpty() ? "published" : "partial", "offsets", offsetsByTopic,
+                        "errors", new LinkedHashMap<>(errorsByTopic)));
+    }
+
+    private boolean isBatchEntry(Object entry) {
+        return entry instanceof Map<?, ?> fields && fields.get("topic") instanceof String && fields.get("message") instanceof String;
+    }
+
+    @GetMapping(value = "/subscribe/{topic}", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryWireFormat.MEDIA_TYPE_VALUE})
+    public CompletableFuture<SubscribeResponse> subscribe(
+            @PathVariable String topic,
+            @RequestParam(defaultValue = "0") int hops,
+            @RequestParam(required = false) List<String> via) {
+        List<String> path = via != null ? via : List.of();
+        if (path.contains(this.nodeId)) {
+            logger.warn("Subscription to topic " + topic + " looped back through " + path);
+            return CompletableFuture.completedFuture(SubscribeResponse.error("Subscription forwarding loop detected"));
+        }
+
+        // A topic hosted here needs no lookup
+        if (topicStore.get(topic) != null && !replicaTopics.contains(topic)) {
+            return CompletableFuture.completedFuture(addSubscriber(topic, path));
+        }
+        return topicResolver.resolve(topic).thenCompose(location -> {
+            if (location == null) {
+                logger.warn("Subscription to topic failed, topic not found: " + topic);
+                return CompletableFuture.completedFuture(SubscribeResponse.error("Topic not found"));
+            }
+            if (!isSelf(location)) {
+                return forwardSubscription(location, topic, hops, path);
+            }
+            return CompletableFuture.completedFuture(addSubscriber(topic, path));
+        });
+    }
+
+    private SubscribeResponse addSubscriber(String topic, List<String> path) {
+        // A forwarded subscription is recorded for the peer it started at
+        String subscriber = path.isEmpty() ? this.nodeId : path.get(0);
+        logger.info("Subscribed " + subscriber + " to topic " + topic + " on this node");
+        synchronized (topicSubscribers) {
+            topicSubscribers.computeIfAbsent(topic, k -> new ArrayList<>()).add(subscriber);
+        }
+        logEvent("Subscribed to Topic", "Topic: " + topic + ", Subscriber: " + subscriber);
+        return SubscribeResponse.subscribed(topic, this.nodeId);
+    }
 
-        logger.info("Message published to topic " + topic + ": " + message);
-        logEvent("Message Published", "Topic: " + topic + ", Message: " + message);
+    // Subscribes to every topic matching the pattern (see TopicPattern) and, from then on, to matching topics
+    // as they are created; the indexing servers are asked for matching topics since the index spans every peer
+    @PostMapping("/subscribe_pattern")
+    public CompletableFuture<Map<String, Object>> subscribePattern(@RequestParam String pattern) {
+        if (pattern.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of("status", "error", "message", "Pattern must not be empty"));
+        }
+        Set<String> shards = indexingShardRouter.getShards();
+        if (shards.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of("status", "error", "message", "Pattern subscriptions need an indexing server"));
+        }
+        patternSubscriptions.putIfAbsent(pattern, ConcurrentHashMap.newKeySet());
+        logEvent("Subscribed to Pattern", pattern);
+        return subscribeMatching(pattern, shards).thenApply(subscribed -> Map.of(
+                "status", "subscribed",
+                "pattern", pattern,
+                "topics", new TreeSet<>(patternSubscriptions.getOrDefault(pattern, Set.of()))));
+    }
 
-        return Map.of("status", "published", "topic", topic);
+    // Stops picking up new topics for the pattern; topics it already subscribed to stay subscribed
+    @PostMapping("/unsubscribe_pattern")
+    public Map<String, Object> unsubscribePattern(@RequestParam String pattern) {
+        Set<String> subscribed = patternSubscriptions.remove(pattern);
+        if (subscribed == null) {
+            return Map.of("status", "error", "message", "Pattern not subscribed");
+        }
+        logEvent("Unsubscribed from Pattern", pattern);
+        return Map.of("status", "unsubscribed", "pattern", pattern, "topics", new TreeSet<>(subscribed));
     }
 
-    @GetMapping("/subscribe/{topic}")
-    public Map<String, Object> subscribe(@PathVariable String topic) {
-        String queryUrl = indexingServerUrl + "/query_topic/" + topic;
-        Map<String, Object> response = restTemplate.getForObject(queryUrl, Map.class);
+    // Picks up topics created since the last poll that match a pattern subscription. A shard polled for the
+    // first time, or that no longer has every topic created since, is asked for the matching topics instead
+    @Scheduled(fixedDelayString = "${peer.pattern.poll-ms:1000}")
+    public void pollCreatedTopics() {
+        Set<String> shards = indexingShardRouter.getShards();
+        createdTopicSequences.keySet().retainAll(shards);
+        if (patternSubscriptions.isEmpty()) {
+            return;
+        }
+        for (String shard : shards) {
+            try {
+                Long since = createdTopicSequences.get(shard);
+                Map<String, Object> response = interNodeClient.get(shard + "/created_topics?since=" + (since != null ? since : 0));
+                if (since == null || Boolean.TRUE.equals(response.get("reset"))) {
+                    for (String pattern : patternSubscriptions.keySet()) {
+                        subscribeMatching(pattern, List.of(shard));
+                    }
+                } else {
+                    List<String> created = (List<String>) response.get("topics");
+                    for (String pattern : patternSubscriptions.keySet()) {
+                        TopicPattern compiled = TopicPattern.compile(pattern);
+                        subscribeTopics(pattern, created.stream().filter(compiled::matches).toList());
+                    }
+                }
+                createdTopicSequences.put(shard, ((Number) response.get("sequence")).longValue());
+            } catch (Exception e) {
+                logger.warn("Failed to poll created topics from indexing server " + shard + ": " + e.getMessage());
+            }
+        }
+    }
 
-        if ("found".equals(response.get("status"))) {
-            String hostingNodeId = (String) response.get("node_id");
+    private CompletableFuture<List<String>> subscribeMatching(String pattern, Collection<String> shards) {
+        List<CompletableFuture<List<String>>> queries = new ArrayList<>();
+        for (String shard : shards) {
+            String queryUrl = UriComponentsBuilder.fromHttpUrl(shard)
+                    .path("/query_pattern")
+                    .queryParam("pattern", "{pattern}")
+                    .queryParam("limit", maxPatternTopics)
+                    .encode()
+                    .buildAndExpand(pattern)
+                    .toUriString();
+            queries.add(interNodeClient.getAsync(queryUrl, TopicMatchResponse.class).thenCompose(response -> {
+                if (response.truncated()) {
+                    logger.warn("More than " + maxPatternTopics + " topics on " + shard + " match " + pattern + ", subscribing to the first ones");
+                }
+                return subscribeTopics(pattern, response.topics().stream().map(TopicMatchResponse.Match::topic).toList());
+            }).exceptionally(e -> {
+                logger.warn("Failed to query topics matching " + pattern + " on indexing server " + shard + ": " + e.getMessage());
+                return List.of();
+            }));
+        }
+        return CompletableFuture.allOf(queries.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<String> subscribed = new ArrayList<>();
+            queries.forEach(query -> subscribed.addAll(query.join()));
+            return subscribed;
+        });
+    }
 
-            if (hostingNodeId.equals(this.nodeId)) {
-                logger.info("Subscribed to topic " + topic + " on this node");
-                topicSubscribers.computeIfAbsent(topic, k -> new ArrayList<>()).add(this.nodeId);
-                logEvent("Subscribed to Topic", "Topic: " + topic);
-                return Map.of("status", "subscribed", "topic", topic);
-            } else {
-                return forwardSubscription(hostingNodeId, topic);
+    // Subscribes a pattern to the topics it isn't subscribed to yet, returning those that succeeded
+    private CompletableFuture<List<String>> subscribeTopics(String pattern, Collection<String> matching) {
+        Set<String> subscribed = patternSubscriptions.get(pattern);
+        if (subscribed == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        List<CompletableFuture<String>> subscriptions = new ArrayList<>();
+        for (String topic : matching) {
+            if (!subscribed.add(topic)) {
+                continue;
             }
+            subscriptions.add(subscribe(topic, 0, null).handle((response, e) -> {
+                if (e == null && "subscribed".equals(response.status())) {
+                    return topic;
+                }
+                // Left out so that a later poll or query tries again
+                subscribed.remove(topic);
+                logger.warn("Failed to subscribe pattern " + pattern + " to topic " + topic + ": "
+                        + (e != null ? e.getMessage() : response.message()));
+                return null;
+            }));
         }
+        return CompletableFuture.allOf(subscriptions.toArray(CompletableFuture[]::new)).thenApply(done ->
+                subscriptions.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList());
+    }
 
-        logger.warn("Subscription to topic failed, topic not found: " + topic);
-        return Map.of("status", "error", "message", "Topic not found");
+    // Lets the topic resolver know what this node hosts; indexing servers learn it from registration instead
+    private void announceTopics() {
+        List<String> hosted;
+        synchronized (this) {
+            hosted = List.copyOf(topics);
+        }
+        topicResolver.announce(nodeId, selfAddress(), hosted);
     }
 
-    private Map<String, Object> forwardSubscription(String nodeId, String topic) {
-        String peerUrl = "http://localhost:8081/peer/subscribe/" + topic;
+    private String selfAddress() {
+        return "http://" + advertisedHost + ":" + advertisedPort;
+    }
 
-        try {
-            Map<String, Object> response = restTemplate.getForObject(peerUrl, Map.class);
-            logger.info("Forwarded subscription request for topic " + topic + " to node " + nodeId);
-            logEvent("Forwarded Subscription", "Topic: " + topic + ", Node: " + nodeId);
+    // A configured node ID may be shared by mistake, so a location is matched on its address when it has one
+    private boolean isSelf(TopicLocation location) {
+        return location.address() != null ? location.address().equals(selfAddress()) : location.nodeId().equals(nodeId);
+    }
+
+    @Scheduled(fixedDelayString = "${peer.cache.invalidation-poll-ms:1000}")
+    public void pollTopicInvalidations() {
+        Set<String> shards = indexingShardRouter.getShards();
+        invalidationSequences.keySet().retainAll(shards);
+        for (String shard : shards) {
+            try {
+                String invalidationsUrl = shard + "/invalidations?since=" + invalidationSequences.getOrDefault(shard, 0L);
+                Map<String, Object> response = interNodeClient.get(invalidationsUrl);
+
+                if (Boolean.TRUE.equals(response.get("reset"))) {
+                    topicLocationCache.clear();
+                } else {
+                    topicLocationCache.invalidateAll((List<String>) response.get("topics"));
+                }
+                invalidationSequences.put(shard, ((Number) response.get("sequence")).longValue());
+            } catch (Exception e) {
+                logger.warn("Failed to poll topic invalidations from indexing server " + shard + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private CompletableFuture<SubscribeResponse> forwardSubscription(TopicLocation location, String topic, int hops, List<String> via) {
+        String hostingNodeId = location.nodeId();
+        if (hops + 1 > maxForwardHops) {
+            logger.warn("Subscription to topic " + topic + " exceeded " + maxForwardHops + " hops");
+            return CompletableFuture.completedFuture(SubscribeResponse.error("Subscription exceeded the forwarding hop limit"));
+        }
+        if (via.contains(hostingNodeId)) {
+            topicResolver.invalidate(topic);
+            logger.warn("Subscription to topic " + topic + " would loop back to node " + hostingNodeId);
+            return CompletableFuture.completedFuture(SubscribeResponse.error("Subscription forwarding loop detected"));
+        }
+        if (location.address() == null) {
+            logger.warn("No address known for node " + hostingNodeId + " hosting topic " + topic);
+            return CompletableFuture.completedFuture(SubscribeResponse.error("Hosting node address unknown"));
+        }
+
+        List<String> forwardedVia = new ArrayList<>(via);
+        forwardedVia.add(this.nodeId);
+        String peerUrl = UriComponentsBuilder.fromHttpUrl(location.address())
+                .path("/peer/subscribe/{topic}")
+                .queryParam("hops", hops + 1)
+                .queryParam("via", String.join(",", forwardedVia))
+                .buildAndExpand(topic)
+                .toUriString();
+
+        return interNodeClient.getAsync(peerUrl, SubscribeResponse.class).handle((response, e) -> {
+            if (e != null) {
+                topicResolver.invalidate(topic);
+                logger.error("Failed to forward subscription to node " + hostingNodeId, e);
+                return SubscribeResponse.error("Failed to forward subscription");
+            }
+            logger.info("Forwarded subscription request for topic " + topic + " to node " + hostingNodeId + " at " + location.address());
+            logEvent("Forwarded Subscription", "Topic: " + topic + ", Node: " + hostingNodeId);
             return response;
-        } catch (Exception e) {
-            logger.error("Failed to forward subscription to node " + nodeId, e);
-            return Map.of("status", "error", "message", "Failed to forward subscription");
+        });
+    }
+
+    @GetMapping(value = "/pull_messages/{topic}", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryWireFormat.MEDIA_TYPE_VALUE})
+    public PullResponse pullMessages(
+            @PathVariable String topic,
+            @RequestParam(required = false) Long fromOffset,
+            @RequestParam(required = false) Integer maxMessages,
+            @RequestParam(required = false) String group) {
+        MessageLog topicLog = topicStore.get(topic);
+        if (topicLog == null) {
+            return PullResponse.error("Topic not hosted here");
+        }
+
+        long startOffset;
+        if (fromOffset != null) {
+            startOffset = fromOffset;
+        } else if (group != null) {
+            startOffset = topicLog.getCommittedOffset(group);
+        } else {
+            startOffset = topicLog.getHeadOffset();
+        }
+        int pageSize = maxMessages != null ? Math.min(maxMessages, maxPullMessages) : maxPullMessages;
+
+        List<MessageLog.Record> records = topicLog.read(startOffset, pageSize);
+
+        if (records.isEmpty()) {
+            return PullResponse.empty(Math.max(startOffset, topicLog.getHeadOffset()));
+        }
+
+        List<String> messages = new ArrayList<>(records.size());
+        List<Long> offsets = new ArrayList<>(records.size());
+        for (MessageLog.Record record : records) {
+            messages.add(record.message());
+            offsets.add(record.offset());
         }
+        long nextOffset = offsets.get(offsets.size() - 1) + 1;
+        // Groups release space by committing; a read outside any group releases what it returned
+        if (group == null) {
+            topicLog.markRead(nextOffset);
+        }
+
+        logEvent("Messages Pulled", "Topic: " + topic + ", Offsets: " + offsets.get(0) + "-" + (nextOffset - 1));
+        return PullResponse.success(messages, offsets, nextOffset);
     }
 
-    @GetMapping("/pull_messages/{topic}")
-    public Map<String, Object> pullMessages(@PathVariable String topic) {
-        if (!topics.contains(topic)) {
-            return Map.of("status", "error", "message", "Topic not hosted here");
+    // Reads a topic from the nearest of its copies, trying the next one when a copy doesn't answer.
+    // Replicas may trail the hosting node by the messages still being copied to them
+    @GetMapping(value = "/fetch/{topic}", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryWireFormat.MEDIA_TYPE_VALUE})
+    public CompletableFuture<PullResponse> fetch(
+            @PathVariable String topic,
+            @RequestParam(defaultValue = "0") long fromOffset,
+            @RequestParam(required = false) Integer maxMessages) {
+        return topicResolver.resolve(topic).thenCompose(location -> {
+            if (location == null) {
+                return CompletableFuture.completedFuture(PullResponse.error("Topic not found"));
+            }
+            List<String> addresses = new ArrayList<>();
+            if (location.address() != null) {
+                addresses.add(location.address());
+            }
+            for (String replicaAddress : location.replicaAddresses()) {
+                if (!replicaAddress.isEmpty()) {
+                    addresses.add(replicaAddress);
+                }
+            }
+            return fetchFrom(replicaSelector.order(addresses), 0, topic, fromOffset, maxMessages);
+        });
+    }
+
+    private CompletableFuture<PullResponse> fetchFrom(List<String> addresses, int attempt, String topic, long fromOffset, Integer maxMessages) {
+        if (attempt == addresses.size()) {
+            topicResolver.invalidate(topic);
+            return CompletableFuture.completedFuture(PullResponse.error("No copy of the topic is reachable"));
         }
+        String address = addresses.get(attempt);
+        String pullUrl = UriComponentsBuilder.fromHttpUrl(address)
+                .path("/peer/pull_messages/{topic}")
+                .queryParam("fromOffset", fromOffset)
+                .queryParamIfPresent("maxMessages", Optional.ofNullable(maxMessages))
+                .buildAndExpand(topic)
+                .toUriString();
+        long started = System.nanoTime();
+        return interNodeClient.getAsync(pullUrl, PullResponse.class).handle((response, e) -> {
+            // An empty page still carries the offset to continue from; any other error means the copy can't serve the topic
+            if (e == null && (!"error".equals(response.status()) || response.nextOffset() != null)) {
+                replicaSelector.record(address, System.nanoTime() - started);
+                return CompletableFuture.completedFuture(response);
+            }
+            replicaSelector.recordFailure(address);
+            logger.warn("Copy of topic " + topic + " at " + address + " unavailable, trying the next one: "
+                    + (e != null ? e.getMessage() : response.message()));
+            return fetchFrom(addresses, attempt + 1, topic, fromOffset, maxMessages);
+        }).thenCompose(next -> next);
+    }
 
-        List<String> messages = topicMessages.getOrDefault(topic, new ArrayList<>());
+    @PostMapping("/commit_offset")
+    public Map<String, Object> commitOffset(@RequestBody Map<String, Object> body) {
+        String topic = (String) body.get("topic");
+        String group = (String) body.get("group");
+        long offset = ((Number) body.get("offset")).longValue();
 
-        if (messages.isEmpty()) {
-            return Map.of("status", "error", "message", "No messages available");
+        MessageLog topicLog = topicStore.get(topic);
+        if (topicLog == null) {
+            return Map.of("status", "error", "message", "Topic not hosted here");
         }
 
-        topicMessages.put(topic, new ArrayList<>());
+        long committed = topicLog.commit(group, offset);
+        return Map.of("status", "committed", "topic", topic, "group", group, "offset", committed);
+    }
+
+    @PostMapping("/delete_group")
+    public Map<String, Object> deleteGroup(@RequestBody Map<String, Object> body) {
+        String topic = (String) body.get("topic");
+        String group = (String) body.get("group");
 
-        logEvent("Messages Pulled", "Topic: " + topic);
-        return Map.of("status", "success", "messages", messages);
+        MessageLog topicLog = topicStore.get(topic);
+        if (topicLog == null) {
+            return Map.of("status", "error", "message", "Topic not hosted here");
+        }
+        if (!topicLog.deleteGroup(group)) {
+            return Map.of("status", "error", "message", "Group not found");
+        }
+        return Map.of("status", "deleted", "topic", topic, "group", group);
     }
 
     @PostMapping("/register_with_indexing_server")
-    public Map<String, Object> registerWithIndexingServer() {
+    public CompletableFuture<Map<String, Object>> registerWithIndexingServer() {
+        Map<String, List<String>> topicsByShard;
+        long version;
+        synchronized (this) {
+            topicsByShard = indexingShardRouter.partition(topics);
+            version = topicsVersion;
+        }
+
+        // Every shard learns this node and its address, but only the topics it owns
+        List<CompletableFuture<Map<String, Object>>> registrations = new ArrayList<>();
+        topicsByShard.forEach((shard, shardTopics) -> registrations.add(registerWithShard(shard, shardTopics, version)));
+        return CompletableFuture.allOf(registrations.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            for (CompletableFuture<Map<String, Object>> registration : registrations) {
+                if (!"registered".equals(registration.join().get("status"))) {
+                    return registration.join();
+                }
+            }
+            return registrations.isEmpty()
+                    ? Map.of("status", "error", "message", "No indexing server configured")
+                    : registrations.get(0).join();
+        });
+    }
+
+    @PostMapping("/indexing_shards")
+    public CompletableFuture<Map<String, Object>> setIndexingShards(@RequestBody List<String> shards) {
+        shardsFromInitialize = false;
+        indexingShardRouter.setShards(shards);
+        topicLocationCache.clear();
+        logEvent("Indexing Shards Changed", shards.toString());
+
+        // Moved topics are dropped by their old shard when this node re-registers there
+        return registerWithIndexingServer();
+    }
+
+    private CompletableFuture<Map<String, Object>> registerWithShard(String shard, List<String> shardTopics, long version) {
         Map<String, Object> registrationPayload = Map.of(
                 "node_id", nodeId,
-                "topics", topics
+                "topics", shardTopics,
+                "version", version,
+                "host", advertisedHost,
+                "port", advertisedPort
         );
 
-        try {
-            Map<String, Object> response = restTemplate.postForObject(indexingServerUrl + "/register", registrationPayload, Map.class);
-            logger.info("Registered with indexing server: " + indexingServerUrl);
-            logEvent("Registered with Indexing Server", "Node ID: " + nodeId);
+        return interNodeClient.postAsync(shard + "/register", registrationPayload).handle((response, e) -> {
+            if (e != null) {
+                logger.error("Failed to register with indexing server " + shard, e);
+                return Map.of("status", "error", "message", "Failed to register with the indexing server");
+            }
+            logger.info("Registered with indexing server: " + shard);
+            logEvent("Registered with Indexing Server", "Node ID: " + nodeId + ", Server: " + shard);
             return response;
-        } catch (Exception e) {
-            logger.error("Failed to register with indexing server", e);
-            return Map.of("status", "error", "message", "Failed to register with the indexing server");
+        });
+    }
+
+    // Keeps this node's lease on every shard alive; a shard that no longer knows the node gets its topics again,
+    // and one that moved topics to this node says which, so replicas this node holds of them are promoted
+    @Scheduled(fixedDelayString = "${peer.heartbeat.interval-ms:5000}")
+    public void sendHeartbeats() {
+        if (nodeId == null) {
+            return;
+        }
+        Map<String, Object> heartbeatPayload;
+        synchronized (this) {
+            heartbeatPayload = Map.of("node_id", nodeId, "version", topicsVersion);
+        }
+        for (String shard : indexingShardRouter.getShards()) {
+            interNodeClient.postAsync(shard + "/heartbeat", heartbeatPayload).thenCompose(response -> {
+                if (response.get("topics") instanceof List<?> indexedTopics) {
+                    return takeOverIndexedTopics(shard, (List<String>) indexedTopics);
+                }
+                if (!"unknown_node".equals(response.get("status"))) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                logger.warn("Indexing server " + shard + " no longer knows this node, registering again");
+                List<String> shardTopics;
+                long version;
+                synchronized (this) {
+                    shardTopics = indexingShardRouter.partition(topics).getOrDefault(shard, List.of());
+                    version = topicsVersion;
+                }
+                return registerWithShard(shard, shardTopics, version);
+            }).exceptionally(e -> {
+                logger.warn("Failed to send heartbeat to indexing server " + shard + ": " + e.getMessage());
+                return null;
+            });
+        }
+    }
+
+    // The index moved topics here, for instance after their host stopped renewing its lease. This node takes
+    // them on, promoting the replicas it holds of them, and registers its full list again so the index stops
+    // sending them
+    private CompletableFuture<Map<String, Object>> takeOverIndexedTopics(String shard, List<String> indexedTopics) {
+        List<String> promoted = new ArrayList<>();
+        List<String> shardTopics;
+        long version;
+        synchronized (this) {
+            for (String topic : indexedTopics) {
+                if (!topics.contains(topic)) {
+                    topicStore.create(topic);
+                    topics.add(topic);
+                    if (replicaTopics.remove(topic)) {
+                        promoted.add(topic);
+                    }
+                }
+            }
+            version = ++topicsVersion;
+            shardTopics = indexingShardRouter.partition(topics).getOrDefault(shard, List.of());
+        }
+        announceTopics();
+        if (!promoted.isEmpty()) {
+            logger.info("Promoted replicas of " + promoted + " to hosted topics");
+            logEvent("Promoted Replicas", promoted.toString());
+        }
+        for (String topic : promoted) {
+            int factor = replicaFactors.getOrDefault(topic, defaultReplicationFactor);
+            if (factor > 1) {
+                assignReplicas(topic, factor);
+            }
+        }
+        return registerWithShard(shard, shardTopics, version);
+    }
+
+    @Scheduled(fixedDelayString = "${peer.load.report-ms:5000}")
+    public void reportLoad() {
+        long now = System.nanoTime();
+        long appended = topicStore.getAppendedCount();
+        double messageRate = Math.max(0, appended - lastAppendedCount) * 1e9 / Math.max(1, now - lastLoadReportNanos);
+        lastAppendedCount = appended;
+        lastLoadReportNanos = now;
+        if (nodeId == null) {
+            return;
+        }
+
+        int subscribers;
+        synchronized (topicSubscribers) {
+            subscribers = topicSubscribers.values().stream().mapToInt(List::size).sum();
+        }
+        Map<String, Object> loadPayload = Map.of("node_id", nodeId, "message_rate", messageRate, "subscribers", subscribers);
+        for (String shard : indexingShardRouter.getShards()) {
+            interNodeClient.postAsync(shard + "/report_load", loadPayload).exceptionally(e -> {
+                logger.warn("Failed to report load to indexing server " + shard + ": " + e.getMessage());
+                return null;
+            });
+        }
+    }
+
+    // The indexing server already lists the topic under this node and keeps it there through our later
+    // deltas; the next heartbeat returns the full list and the node registers it, adopted topic included
+    @PostMapping("/adopt_topic")
+    public CompletableFuture<Map<String, Object>> adoptTopic(@RequestBody AdoptTopicRequest request) {
+        return appending(() -> adopt(request));
+    }
+
+    private Map<String, Object> adopt(AdoptTopicRequest request) {
+        String topic = request.topic();
+        MessageLog topicLog;
+        boolean newlyHosted;
+        synchronized (this) {
+            topicLog = topicStore.create(topic);
+            newlyHosted = !topics.contains(topic);
+            if (newlyHosted) {
+                topics.add(topic);
+            }
+            // A replica of the topic becomes its host and keeps the messages it already holds
+            replicaTopics.remove(topic);
         }
+
+        List<String> messages = request.messages() != null ? request.messages() : List.of();
+        int rejected;
+        if (request.offsets() != null) {
+            rejected = messages.size() - appendAt(topic, topicLog, request.offsets(), messages);
+        } else {
+            long[] offsets = topicLog.appendAll(messages);
+            rejected = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                if (offsets[i] < 0) {
+                    rejected++;
+                } else {
+                    pushDispatcher.publish(topic, offsets[i], messages.get(i));
+                }
+            }
+        }
+        topicReplicator.published(topic);
+        if (newlyHosted) {
+            announceTopics();
+        }
+        int factor = Math.max(request.replicationFactor(), replicaFactors.getOrDefault(topic, 1));
+        if (newlyHosted && factor > 1) {
+            assignReplicas(topic, factor);
+        }
+
+        logger.info("Adopted topic " + topic + " from node " + request.fromNode() + " with " + (messages.size() - rejected) + " messages");
+        logEvent("Adopted Topic", "Topic: " + topic + ", From: " + request.fromNode() + ", Messages: " + (messages.size() - rejected));
+        return Map.of("status", "adopted", "topic", topic, "messages", messages.size() - rejected, "rejected", rejected);
+    }
+
+    // Stores a batch copied from the topic's host, keeping the host's offsets
+    @PostMapping("/replicate")
+    public CompletableFuture<Map<String, Object>> replicate(@RequestBody ReplicateRequest request) {
+        return appending(() -> storeReplica(request));
+    }
+
+    private Map<String, Object> storeReplica(ReplicateRequest request) {
+        String topic = request.topic();
+        MessageLog topicLog;
+        synchronized (this) {
+            if (topics.contains(topic)) {
+                return Map.of("status", "error", "message", "Topic is hosted here");
+            }
+            topicLog = topicStore.create(topic);
+            replicaTopics.add(topic);
+        }
+        replicaFactors.put(topic, request.factor());
+
+        int stored = appendAt(topic, topicLog, request.offsets(), request.messages());
+        return Map.of("status", "replicated", "topic", topic, "messages", stored, "next_offset", topicLog.getNextOffset());
+    }
+
+    // Appends messages at the offsets they were given, skipping the ones already held and jumping over
+    // any gap, and returns how many were stored
+    private int appendAt(String topic, MessageLog topicLog, List<Long> offsets, List<String> messages) {
+        int stored = 0;
+        synchronized (topicLog) {
+            for (int i = 0; i < messages.size(); i++) {
+                long offset = offsets.get(i);
+                if (offset < topicLog.getNextOffset()) {
+                    continue;
+                }
+                topicLog.skipTo(offset);
+                if (topicLog.append(messages.get(i)) < 0) {
+                    break;
+                }
+                pushDispatcher.publish(topic, offset, messages.get(i));
+                stored++;
+            }
+        }
+        return stored;
     }
 
     @PostMapping("/create_topic")
-    public Map<String, Object> createTopic(@RequestBody String topicName) {
-        topics.add(topicName);
+    public CompletableFuture<Map<String, Object>> createTopic(
+            @RequestBody String topicName,
+            @RequestParam(required = false) Integer replicationFactor) {
+        String invalid = topicStore.validateTopicName(topicName);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(Map.of("status", "error", "message", invalid));
+        }
+        int factor = replicationFactor != null ? replicationFactor : defaultReplicationFactor;
+        long baseVersion;
+        synchronized (this) {
+            topicStore.create(topicName);
+            topics.add(topicName);
+            replicaTopics.remove(topicName);
+            baseVersion = topicsVersion++;
+        }
         logger.info("Created topic: " + topicName);
         logEvent("Created Topic", topicName);
-        registerWithIndexingServer();
+        announceTopics();
 
-        return Map.of("status", "created", "topic", topicName);
+        CompletableFuture<Void> created = sendTopicDelta(baseVersion, List.of(topicName), List.of());
+        if (factor > 1) {
+            created = created.thenCompose(ignored -> assignReplicas(topicName, factor));
+        }
+        return created.thenApply(ignored -> Map.of("status", "created", "topic", topicName, "replication_factor", factor));
+    }
+
+    // Asks the topic's shard which peers keep copies of it and starts copying to them
+    private CompletableFuture<Void> assignReplicas(String topic, int factor) {
+        String shard = indexingShardRouter.shardFor(topic);
+        if (shard == null) {
+            logger.warn("Topic " + topic + " is not replicated, replicas are assigned by an indexing server");
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<String, Object> assignPayload = Map.of("node_id", nodeId, "topic", topic, "factor", factor);
+        return interNodeClient.postAsync(shard + "/assign_replicas", assignPayload).handle((response, e) -> {
+            if (e != null || !"assigned".equals(response.get("status"))) {
+                logger.warn("Failed to assign replicas of topic " + topic + ": " + (e != null ? e.getMessage() : response.get("message")));
+                return null;
+            }
+            Map<String, String> addresses = (Map<String, String>) response.get("addresses");
+            topicReplicator.setReplicas(topic, factor, nodeId, addresses);
+            logEvent("Replicas Assigned", "Topic: " + topic + ", Replicas: " + addresses.keySet());
+            return null;
+        });
+    }
+
+    // Every shard receives the delta, filtered to the topics it owns, so each keeps the node's topic version
+    private CompletableFuture<Void> sendTopicDelta(long baseVersion, List<String> added, List<String> removed) {
+        Map<String, List<String>> addedByShard = indexingShardRouter.partition(added);
+        Map<String, List<String>> removedByShard = indexingShardRouter.partition(removed);
+
+        List<CompletableFuture<Void>> deltas = new ArrayList<>();
+        for (String shard : addedByShard.keySet()) {
+            Map<String, Object> deltaPayload = Map.of(
+                    "node_id", nodeId,
+                    "base_version", baseVersion,
+                    "version", baseVersion + 1,
+                    "added", addedByShard.get(shard),
+                    "removed", removedByShard.getOrDefault(shard, List.of())
+            );
+            deltas.add(sendTopicDelta(shard, deltaPayload));
+        }
+        return CompletableFuture.allOf(deltas.toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> sendTopicDelta(String shard, Map<String, Object> deltaPayload) {
+        return interNodeClient.postAsync(shard + "/update_topics_delta", deltaPayload)
+                .thenCompose(response -> {
+                    if ("updated".equals(response.get("status"))) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    logger.info("Indexing server " + shard + " is at topic version " + response.get("version") + ", resyncing full topic list");
+                    List<String> shardTopics;
+                    long version;
+                    synchronized (this) {
+                        shardTopics = indexingShardRouter.partition(topics).getOrDefault(shard, List.of());
+                        version = topicsVersion;
+                    }
+                    return registerWithShard(shard, shardTopics, version).thenAccept(registration -> {
+                    });
+                })
+                .handle((ignored, e) -> {
+                    if (e != null) {
+                        logger.error("Failed to send topic delta to indexing server " + shard, e);
+                    }
+                    return null;
+                });
     }
 
     @PostMapping("/report_metrics")
@@ -160,8 +944,27 @@ public class PeerNodeController {
         metrics.put("node_id", nodeId);
         metrics.put("number_of_topics", topics.size());
         metrics.put("topics", topics);
-        metrics.put("number_of_subscribers", topicSubscribers.values().stream().mapToInt(List::size).sum());
-        metrics.put("number_of_messages", topicMessages.values().stream().mapToInt(List::size).sum());
+        synchronized (topicSubscribers) {
+            metrics.put("number_of_subscribers", topicSubscribers.values().stream().mapToInt(List::size).sum());
+        }
+        metrics.put("number_of_messages", topicStore.getMessageCount());
+        metrics.put("number_of_dropped_messages", topicStore.getDroppedCount());
+        metrics.put("number_of_rejected_messages", topicStore.getRejectedCount());
+        metrics.put("topic_location_cache", topicLocationCache.getMetrics());
+        metrics.put("push", pushDispatcher.getMetrics());
+        metrics.put("inter_node_client", interNodeClient.getMetrics());
+        metrics.put("indexing_shards", indexingShardRouter.getShards());
+        metrics.put("discovery", topicResolver.getMetrics());
+        Map<String, Set<String>> patterns = new TreeMap<>();
+        patternSubscriptions.forEach((pattern, subscribed) -> patterns.put(pattern, new TreeSet<>(subscribed)));
+        metrics.put("pattern_subscriptions", patterns);
+        metrics.put("replica_topics", replicaTopics);
+        metrics.put("replication", topicReplicator.getMetrics());
+        metrics.put("replica_selector", replicaSelector.getMetrics());
+        NioTransportServer nioTransportServer = nioTransportServerProvider.getIfAvailable();
+        if (nioTransportServer != null) {
+            metrics.put("nio_transport", nioTransportServer.getMetrics());
+        }
 
         logEvent("Metrics Retrieved", "Node: " + nodeId);
         logger.info("Metrics retrieved for node " + nodeId);
@@ -171,16 +974,75 @@ public class PeerNodeController {
 
     @PreDestroy
     public void onShutdown() {
+        if (nodeId == null) {
+            return;
+        }
         logger.info("Received shutdown signal, unregistering from indexing server...");
         logEvent("Shutdown signal received", "Unregistering from server");
 
         Map<String, Object> unregisterPayload = Map.of("node_id", nodeId);
-        restTemplate.postForObject(indexingServerUrl + "/unregister", unregisterPayload, Map.class);
+        for (String shard : indexingShardRouter.getShards()) {
+            try {
+                Map<String, Object> response = interNodeClient.post(shard + "/unregister", unregisterPayload);
+                handOverTopics(response);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to unregister from indexing server " + shard + ": " + e.getMessage());
+            }
+        }
 
         logger.info("Unregistered from indexing server");
         logEvent("Unregistered from indexing server", nodeId);
     }
 
+    // Sends the retained messages of each migrated topic to the node the indexing server moved it to
+    private void handOverTopics(Map<String, Object> unregisterResponse) {
+        Map<String, List<String>> newOwners = (Map<String, List<String>>) unregisterResponse.get("topics_migrated_to");
+        Map<String, String> addresses = (Map<String, String>) unregisterResponse.get("addresses");
+        if (newOwners == null || addresses == null) {
+            return;
+        }
+        newOwners.forEach((owner, ownerTopics) -> {
+            String address = addresses.get(owner);
+            if (address == null) {
+                logger.warn("No address known for node " + owner + ", dropping the backlog of " + ownerTopics);
+                return;
+            }
+            for (String topic : ownerTopics) {
+                try {
+                    int handedOver = handOverTopic(topic, address + "/peer/adopt_topic");
+                    logEvent("Handed Over Topic", "Topic: " + topic + ", Node: " + owner + ", Messages: " + handedOver);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to hand topic " + topic + " over to node " + owner + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private int handOverTopic(String topic, String adoptUrl) {
+        MessageLog topicLog = topicStore.get(topic);
+        long offset = topicLog != null ? topicLog.getHeadOffset() : 0;
+        int handedOver = 0;
+        // The first page is sent even when empty, so the new owner hosts the topic either way
+        int factor = topicReplicator.getFactor(topic);
+        topicReplicator.stop(topic);
+        while (true) {
+            List<MessageLog.Record> records = topicLog != null ? topicLog.read(offset, maxPullMessages) : List.of();
+            List<String> messages = new ArrayList<>(records.size());
+            List<Long> offsets = new ArrayList<>(records.size());
+            for (MessageLog.Record record : records) {
+                messages.add(record.message());
+                offsets.add(record.offset());
+                offset = record.offset() + 1;
+            }
+            // Offsets travel with the messages so the new owner keeps them, and so a replica skips what it holds
+            interNodeClient.post(adoptUrl, new AdoptTopicRequest(topic, messages, nodeId, offsets, factor));
+            handedOver += messages.size();
+            if (records.size() < maxPullMessages) {
+                return handedOver;
+            }
+        }
+    }
+
     private void logEvent(String event, String details) {
         String logEntry = LocalDateTime.now() + " - Event: " + event + ", Details: " + details;
         eventLog.add(logEntry);
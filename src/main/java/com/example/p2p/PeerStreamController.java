@@ -0,0 +1,48 @@
+package com.example.p2p;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Server-sent event stream of messages published to this peer, for the servlet stack.
+// ReactivePeerStreamController serves the same endpoint under the reactive profile.
+@RestController
+@RequestMapping("/peer")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class PeerStreamController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerStreamController.class);
+
+    private final PushDispatcher pushDispatcher;
+
+    public PeerStreamController(PushDispatcher pushDispatcher) {
+        this.pushDispatcher = pushDispatcher;
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam List<String> topics) {
+        SseEmitter emitter = new SseEmitter(0L);
+        PushDispatcher.Subscription subscription = pushDispatcher.subscribe(Set.copyOf(topics), (topic, offset, message, missed) ->
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(offset))
+                        .name(topic)
+                        .data(Map.of("topic", topic, "offset", offset, "message", message, "missed", missed))));
+
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+
+        logger.info("Stream opened for topics " + topics);
+        return emitter;
+    }
+}
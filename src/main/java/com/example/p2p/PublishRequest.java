@@ -0,0 +1,5 @@
+package com.example.p2p;
+
+// Body of /peer/publish.
+public record PublishRequest(String topic, String message) {
+}
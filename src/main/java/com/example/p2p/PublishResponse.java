@@ -0,0 +1,16 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Result of /peer/publish: the offset the message was stored at, or an error message.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PublishResponse(String status, String topic, Long offset, String message) {
+
+    public static PublishResponse published(String topic, long offset) {
+        return new PublishResponse("published", topic, offset, null);
+    }
+
+    public static PublishResponse error(String message) {
+        return new PublishResponse("error", null, null, message);
+    }
+}
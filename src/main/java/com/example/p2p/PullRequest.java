@@ -0,0 +1,5 @@
+package com.example.p2p;
+
+// A pull of messages from a hosted topic. Null fields fall back as in /peer/pull_messages.
+public record PullRequest(String topic, Long fromOffset, Integer maxMessages, String group) {
+}
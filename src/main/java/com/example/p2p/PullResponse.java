@@ -0,0 +1,24 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Result of a pull: the messages read with their offsets and the offset to continue from.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PullResponse(String status, List<String> messages, List<Long> offsets,
+                           @JsonProperty("next_offset") Long nextOffset, String message) {
+
+    public static PullResponse success(List<String> messages, List<Long> offsets, long nextOffset) {
+        return new PullResponse("success", messages, offsets, nextOffset, null);
+    }
+
+    public static PullResponse empty(long nextOffset) {
+        return new PullResponse("error", null, null, nextOffset, "No messages available");
+    }
+
+    public static PullResponse error(String message) {
+        return new PullResponse("error", null, null, null, message);
+    }
+}
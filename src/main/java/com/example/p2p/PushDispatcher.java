@@ -0,0 +1,162 @@
+package com.example.p2p;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fans published messages out to subscribers holding a long-lived stream to this peer.
+//
+// Publishing only offers the message to each subscriber's bounded queue and never waits. Every
+// subscriber is drained by its own task on a shared executor, so a slow consumer only ever holds up
+// itself. When a subscriber's queue is full the message is dropped for that subscriber alone, and
+// the next event it receives carries the number of messages it missed so it can catch up with an
+// offset-based pull.
+@Component
+public class PushDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushDispatcher.class);
+
+    // Destination of one subscriber's stream.
+    @FunctionalInterface
+    public interface EventSink {
+        void send(String topic, long offset, String message, long missed) throws Exception;
+    }
+
+    private record Event(String topic, long offset, String message) {
+    }
+
+    private final int queueCapacity;
+    private final ExecutorService executor;
+
+    private final Map<String, Set<Subscription>> subscriptionsByTopic = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptionIds = new AtomicInteger();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public PushDispatcher(
+            @Value("${peer.push.queue-capacity:1024}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.queueCapacity = queueCapacity;
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("push-dispatch-", 1).factory());
+        } else {
+            this.executor = Executors.newCachedThreadPool(Thread.ofPlatform().name("push-dispatch-", 1).daemon().factory());
+        }
+    }
+
+    // Registers a subscriber for the given topics and returns the handle used to cancel it.
+    public Subscription subscribe(Set<String> topics, EventSink sink) {
+        Subscription subscription = new Subscription(subscriptionIds.incrementAndGet(), topics, sink);
+        for (String topic : topics) {
+            subscriptionsByTopic.computeIfAbsent(topic, t -> ConcurrentHashMap.newKeySet()).add(subscription);
+        }
+        return subscription;
+    }
+
+    // Offers a freshly published message to every subscriber of its topic without blocking.
+    public void publish(String topic, long offset, String message) {
+        Set<Subscription> subscriptions = subscriptionsByTopic.get(topic);
+        if (subscriptions == null) {
+            return;
+        }
+        Event event = new Event(topic, offset, message);
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        int subscribers = (int) subscriptionsByTopic.values().stream()
+                .flatMap(Set::stream)
+                .distinct()
+                .count();
+        return Map.of(
+                "subscribers", subscribers,
+                "delivered", delivered.get(),
+                "dropped", dropped.get()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public final class Subscription {
+
+        private final int id;
+        private final Set<String> topics;
+        private final EventSink sink;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicLong missed = new AtomicLong();
+        private volatile boolean cancelled;
+
+        private Subscription(int id, Set<String> topics, EventSink sink) {
+            this.id = id;
+            this.topics = topics;
+            this.sink = sink;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            for (String topic : topics) {
+                subscriptionsByTopic.computeIfPresent(topic, (t, subscriptions) -> {
+                    subscriptions.remove(this);
+                    return subscriptions.isEmpty() ? null : subscriptions;
+                });
+            }
+            queue.clear();
+        }
+
+        private void offer(Event event) {
+            if (cancelled) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                missed.incrementAndGet();
+                dropped.incrementAndGet();
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Event event;
+                while (!cancelled && (event = queue.poll()) != null) {
+                    sink.send(event.topic(), event.offset(), event.message(), missed.getAndSet(0));
+                    delivered.incrementAndGet();
+                }
+            } catch (Exception e) {
+                logger.info("Push subscriber " + id + " disconnected: " + e.getMessage());
+                cancel();
+            } finally {
+                draining.set(false);
+            }
+            // A message offered after the last poll but before the flag was cleared still needs a drain
+            if (!cancelled && !queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
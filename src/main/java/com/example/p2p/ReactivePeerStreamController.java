@@ -0,0 +1,62 @@
+package com.example.p2p;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Server-sent event stream of messages published to this peer, for the reactive stack.
+//
+// Events are only emitted as the connection asks for them. Until it does, the subscriber's push
+// delivery task waits, its bounded queue in PushDispatcher fills up, and further messages are counted
+// as missed exactly as they are for a slow servlet stream.
+@RestController
+@RequestMapping("/peer")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactivePeerStreamController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactivePeerStreamController.class);
+
+    private final PushDispatcher pushDispatcher;
+
+    public ReactivePeerStreamController(PushDispatcher pushDispatcher) {
+        this.pushDispatcher = pushDispatcher;
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> stream(@RequestParam List<String> topics) {
+        return Flux.create(sink -> {
+            Semaphore demand = new Semaphore(0);
+            sink.onRequest(requested -> demand.release((int) Math.min(requested, Integer.MAX_VALUE / 2)));
+
+            PushDispatcher.Subscription subscription = pushDispatcher.subscribe(Set.copyOf(topics), (topic, offset, message, missed) -> {
+                while (!demand.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (sink.isCancelled()) {
+                        throw new CancellationException("stream closed");
+                    }
+                }
+                sink.next(ServerSentEvent.<Map<String, Object>>builder()
+                        .id(Long.toString(offset))
+                        .event(topic)
+                        .data(Map.of("topic", topic, "offset", offset, "message", message, "missed", missed))
+                        .build());
+            });
+            sink.onDispose(subscription::cancel);
+
+            logger.info("Stream opened for topics " + topics);
+        });
+    }
+}
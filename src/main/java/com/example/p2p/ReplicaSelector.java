@@ -0,0 +1,45 @@
+package com.example.p2p;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Orders the copies of a topic for a read, nearest first.
+//
+// Every peer address has an exponentially weighted moving average of its response times. Addresses
+// never tried sort first, so each copy gets measured, and a failed call counts as a response of
+// FAILURE_PENALTY_NANOS, which sends a dead peer to the back until it answers quickly again.
+@Component
+public class ReplicaSelector {
+
+    private static final double SMOOTHING = 0.2;
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Map<String, Double> latencies = new ConcurrentHashMap<>();
+
+    // Returns the addresses sorted by their average response time, untried ones first.
+    public List<String> order(List<String> addresses) {
+        List<String> ordered = new ArrayList<>(addresses);
+        ordered.sort(Comparator.comparingDouble(address -> latencies.getOrDefault(address, 0.0)));
+        return ordered;
+    }
+
+    public void record(String address, long latencyNanos) {
+        latencies.merge(address, (double) latencyNanos, (average, latest) -> average + SMOOTHING * (latest - average));
+    }
+
+    public void recordFailure(String address) {
+        record(address, FAILURE_PENALTY_NANOS);
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new ConcurrentHashMap<>();
+        latencies.forEach((address, average) -> metrics.put(address, average / 1e6));
+        return Map.of("average_latency_ms", metrics);
+    }
+}
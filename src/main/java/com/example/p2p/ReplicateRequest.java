@@ -0,0 +1,11 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Body of /peer/replicate: a batch of a topic's messages copied from the node hosting it, each with the
+// offset it has there, and the number of copies the topic is meant to have.
+public record ReplicateRequest(String topic, @JsonProperty("from_node") String fromNode, int factor,
+                               List<Long> offsets, List<String> messages) {
+}
@@ -0,0 +1,7 @@
+package com.example.p2p;
+
+import java.util.List;
+
+// A subscription forwarded between peers: the hops taken so far and the peers already visited.
+public record SubscribeRequest(String topic, int hops, List<String> via) {
+}
@@ -0,0 +1,17 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Result of /peer/subscribe/{topic}: the node the subscription was recorded on, or an error.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SubscribeResponse(String status, String topic, @JsonProperty("node_id") String nodeId, String message) {
+
+    public static SubscribeResponse subscribed(String topic, String nodeId) {
+        return new SubscribeResponse("subscribed", topic, nodeId, null);
+    }
+
+    public static SubscribeResponse error(String message) {
+        return new SubscribeResponse("error", null, null, message);
+    }
+}
@@ -0,0 +1,48 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// This class keeps a bounded, sequence-numbered history of topic names. The registry keeps one for
+// topics whose hosting node changed and one for newly created topics. Peers ask for everything after
+// the last sequence they saw; a peer that fell further behind than the history is told to reset.
+public class TopicChangeLog {
+
+    // This record is the answer to a poll: the latest sequence, the recorded topics, and whether
+    // the caller missed entries that are no longer kept and must start over
+    public record Changes(long sequence, List<String> topics, boolean reset) {
+    }
+
+    // This array is a ring holding the most recently recorded topics
+    private final String[] topics;
+
+    // This is the sequence number of the most recent entry; entry N lives in slot N % capacity
+    private long sequence = 0;
+
+    public TopicChangeLog(int capacity) {
+        this.topics = new String[capacity];
+    }
+
+    // This method records a change to a topic
+    public synchronized void record(String topic) {
+        sequence++;
+        topics[(int) (sequence % topics.length)] = topic;
+    }
+
+    // This method returns the distinct topics recorded after the given sequence number
+    public synchronized Changes since(long lastSeen) {
+        if (lastSeen > sequence || sequence - lastSeen > topics.length) {
+            // The caller is ahead of us (we restarted) or behind our history
+            return new Changes(sequence, List.of(), true);
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        for (long s = lastSeen + 1; s <= sequence; s++) {
+            changed.add(topics[(int) (s % topics.length)]);
+        }
+        return new Changes(sequence, new ArrayList<>(changed), false);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.p2p;
+
+import java.util.List;
+
+// Where a topic is hosted: the hosting node's ID and the base URL other peers use to reach it, plus the
+// base URLs of the peers holding copies of it.
+public record TopicLocation(String nodeId, String address, List<String> replicaAddresses) {
+
+    public TopicLocation(String nodeId, String address) {
+        this(nodeId, address, List.of());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.p2p;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded cache of topic -> hosting node lookups made against the indexing server. Entries expire
+// after a TTL and the least recently used entry is evicted when the cache is full.
+@Component
+public class TopicLocationCache {
+
+    private record Entry(TopicLocation location, long expiresAt) {
+    }
+
+    private final int capacity;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public TopicLocationCache(
+            @Value("${peer.cache.capacity:1024}") int capacity,
+            @Value("${peer.cache.ttl-ms:30000}") long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > TopicLocationCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Returns the cached location of a topic, or null on a miss or an expired entry.
+    public synchronized TopicLocation get(String topic) {
+        Entry entry = entries.get(topic);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(topic);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.location();
+    }
+
+    public synchronized void put(String topic, TopicLocation location) {
+        entries.put(topic, new Entry(location, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void invalidate(String topic) {
+        if (entries.remove(topic) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidateAll(Collection<String> topics) {
+        for (String topic : topics) {
+            invalidate(topic);
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        return Map.of(
+                "size", entries.size(),
+                "capacity", capacity,
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "evictions", evictions.get(),
+                "expirations", expirations.get(),
+                "invalidations", invalidations.get()
+        );
+    }
+}
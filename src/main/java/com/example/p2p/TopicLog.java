@@ -0,0 +1,318 @@
+package com.example.p2p;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+// Bounded, lock-free message log for one topic.
+//
+// Every message gets a monotonically increasing offset. Messages live in a fixed ring of slots; offset
+// o is stored in slot o % capacity. Publishers claim offsets with a CAS on tail and then fill their
+// slot, so many threads can publish at once without a lock. head is the oldest offset still retained.
+// When the ring is full, the overflow policy decides whether the oldest message is dropped, the new one
+// is rejected, or the publisher waits.
+//
+// Reads do not consume. Consumer groups commit the next offset they want to read, and readers outside
+// any group share one position that each of their reads moves forward. Under the REJECT and BLOCK
+// policies the space below the slowest of these positions is released for new messages. A group, or the
+// groupless position, that has not moved for a while can be expired so it stops holding the log back.
+public class TopicLog implements MessageLog {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        REJECT,
+        BLOCK
+    }
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+
+    private final AtomicReferenceArray<Record> slots;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // A reader's next offset and when it last moved.
+    private record Position(long offset, long movedAtMillis) {
+
+        Position advance(long newOffset, long now) {
+            return new Position(Math.max(offset, newOffset), now);
+        }
+    }
+
+    private final Map<String, Position> groupPositions = new ConcurrentHashMap<>();
+    private final AtomicReference<Position> grouplessPosition = new AtomicReference<>();
+    private final LongSupplier clock;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public TopicLog(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this(capacity, overflowPolicy, blockTimeoutMillis, System::currentTimeMillis);
+    }
+
+    public TopicLog(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutMillis, LongSupplier clock) {
+        this.capacity = capacity;
+        this.clock = clock;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    // Appends a message and returns its offset, or -1 if the log is full and the message was rejected.
+    @Override
+    public long append(String message) {
+        long deadline = 0;
+        while (true) {
+            long t = tail.get();
+            long h = head.get();
+            if (t - h >= capacity) {
+                switch (overflowPolicy) {
+                    case DROP_OLDEST:
+                        if (head.compareAndSet(h, h + 1)) {
+                            dropped.incrementAndGet();
+                        }
+                        continue;
+                    case REJECT:
+                        rejected.incrementAndGet();
+                        return -1;
+                    case BLOCK:
+                        long now = System.nanoTime();
+                        if (deadline == 0) {
+                            deadline = now + blockTimeoutNanos;
+                        } else if (now - deadline > 0) {
+                            rejected.incrementAndGet();
+                            return -1;
+                        }
+                        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                        continue;
+                }
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                store(new Record(t, message));
+                return t;
+            }
+        }
+    }
+
+    // Appends a batch with a single CAS that claims a contiguous range of offsets. Under REJECT a batch
+    // that does not fit falls back to appending message by message, so whatever fits is accepted; under
+    // BLOCK the whole batch is rejected if room for it does not appear before the timeout.
+    @Override
+    public long[] appendAll(List<String> messages) {
+        int count = messages.size();
+        if (count == 0 || count > capacity) {
+            return MessageLog.super.appendAll(messages);
+        }
+        long deadline = 0;
+        while (true) {
+            long t = tail.get();
+            long h = head.get();
+            long overflow = t + count - h - capacity;
+            if (overflow > 0) {
+                switch (overflowPolicy) {
+                    case DROP_OLDEST:
+                        if (head.compareAndSet(h, h + overflow)) {
+                            dropped.addAndGet(overflow);
+                        }
+                        continue;
+                    case REJECT:
+                        return MessageLog.super.appendAll(messages);
+                    case BLOCK:
+                        long now = System.nanoTime();
+                        if (deadline == 0) {
+                            deadline = now + blockTimeoutNanos;
+                        } else if (now - deadline > 0) {
+                            rejected.addAndGet(count);
+                            long[] offsets = new long[count];
+                            Arrays.fill(offsets, -1);
+                            return offsets;
+                        }
+                        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                        continue;
+                }
+            }
+            if (tail.compareAndSet(t, t + count)) {
+                long[] offsets = new long[count];
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = t + i;
+                    store(new Record(t + i, messages.get(i)));
+                }
+                return offsets;
+            }
+        }
+    }
+
+    // Reads stop at the first missing offset, so messages retained before the skipped range are dropped.
+    @Override
+    public void skipTo(long offset) {
+        long t = tail.get();
+        if (offset <= t) {
+            return;
+        }
+        tail.set(offset);
+        long h = head.getAndSet(offset);
+        dropped.addAndGet(t - h);
+    }
+
+    // Returns up to maxMessages retained records starting at fromOffset, without consuming them. Reading stops
+    // at the first offset whose publisher has not finished writing it yet, so records always come back in offset
+    // order; offsets that were overwritten under DROP_OLDEST are skipped.
+    @Override
+    public List<Record> read(long fromOffset, int maxMessages) {
+        List<Record> records = new ArrayList<>();
+        long end = tail.get();
+        for (long offset = Math.max(fromOffset, head.get()); offset < end && records.size() < maxMessages; offset++) {
+            Record record = slots.get(slot(offset));
+            if (record == null || record.offset() < offset) {
+                break;
+            }
+            if (record.offset() == offset) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    // Commits the next offset a consumer group will read. Commits never move a group backwards,
+    // and are clamped to the end of the log. Returns the group's committed offset.
+    @Override
+    public long commit(String group, long nextOffset) {
+        long clamped = Math.min(nextOffset, tail.get());
+        long now = clock.getAsLong();
+        Position committed = groupPositions.merge(group, new Position(clamped, now),
+                (current, update) -> current.advance(update.offset(), now));
+        releaseReadMessages();
+        return committed.offset();
+    }
+
+    // Moves the position shared by readers outside any group; it never moves backwards.
+    @Override
+    public void markRead(long nextOffset) {
+        long clamped = Math.min(nextOffset, tail.get());
+        long now = clock.getAsLong();
+        grouplessPosition.accumulateAndGet(new Position(clamped, now),
+                (current, update) -> current == null ? update : current.advance(update.offset(), now));
+        releaseReadMessages();
+    }
+
+    @Override
+    public boolean deleteGroup(String group) {
+        if (groupPositions.remove(group) == null) {
+            return false;
+        }
+        releaseReadMessages();
+        return true;
+    }
+
+    @Override
+    public int expireGroups(long idleMillis) {
+        long cutoff = clock.getAsLong() - idleMillis;
+        int expired = 0;
+        for (Map.Entry<String, Position> group : groupPositions.entrySet()) {
+            if (group.getValue().movedAtMillis() < cutoff && groupPositions.remove(group.getKey(), group.getValue())) {
+                expired++;
+            }
+        }
+        Position groupless = grouplessPosition.get();
+        if (groupless != null && groupless.movedAtMillis() < cutoff) {
+            grouplessPosition.compareAndSet(groupless, null);
+        }
+        releaseReadMessages();
+        return expired;
+    }
+
+    @Override
+    public long getCommittedOffset(String group) {
+        Position position = groupPositions.get(group);
+        return position != null ? position.offset() : head.get();
+    }
+
+    @Override
+    public Map<String, Long> getGroupOffsets() {
+        Map<String, Long> offsets = new HashMap<>();
+        groupPositions.forEach((group, position) -> offsets.put(group, position.offset()));
+        return Map.copyOf(offsets);
+    }
+
+    @Override
+    public long getHeadOffset() {
+        return head.get();
+    }
+
+    @Override
+    public long getNextOffset() {
+        return tail.get();
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // Without a reader there is nothing to release for; the log fills until someone reads it
+    private void releaseReadMessages() {
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            return;
+        }
+        long slowest = Long.MAX_VALUE;
+        for (Position position : groupPositions.values()) {
+            slowest = Math.min(slowest, position.offset());
+        }
+        Position groupless = grouplessPosition.get();
+        if (groupless != null) {
+            slowest = Math.min(slowest, groupless.offset());
+        }
+        if (slowest != Long.MAX_VALUE) {
+            release(slowest);
+        }
+    }
+
+    private void release(long upToOffset) {
+        while (true) {
+            long h = head.get();
+            if (upToOffset <= h || head.compareAndSet(h, upToOffset)) {
+                return;
+            }
+        }
+    }
+
+    private void store(Record record) {
+        int slot = slot(record.offset());
+        while (true) {
+            Record current = slots.get(slot);
+            if (current != null && current.offset() > record.offset()) {
+                // A publisher a full lap ahead already reused the slot; our record counts as dropped
+                return;
+            }
+            if (slots.compareAndSet(slot, current, record)) {
+                return;
+            }
+        }
+    }
+
+    private int slot(long offset) {
+        return (int) (offset % capacity);
+    }
+}
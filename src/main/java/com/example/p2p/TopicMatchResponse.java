@@ -0,0 +1,20 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Result of /indexing/query_prefix and /indexing/query_pattern: the matching topics in lexicographic
+// order with their hosting node, and whether more topics matched than the requested limit.
+public record TopicMatchResponse(String status, List<Match> topics, boolean truncated) {
+
+    // One matching topic, its hosting node and, if known, that node's address.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Match(String topic, @JsonProperty("node_id") String nodeId, String address) {
+    }
+
+    public static TopicMatchResponse error() {
+        return new TopicMatchResponse("error", List.of(), false);
+    }
+}
@@ -0,0 +1,106 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes
+import java.util.BitSet;
+
+// This class is a wildcard pattern over topic names, as used by pattern subscriptions and /query_pattern.
+// Topic names are made of dot-separated segments, as in orders.eu.created. In a pattern, * matches any run
+// of characters within one segment, so orders.* matches orders.eu but not orders.eu.created, and # matches
+// any run of characters, dots included, so orders.# matches both. Every other character matches itself.
+//
+// Matching runs the pattern as a small automaton whose states are positions in the pattern, so it takes
+// O(pattern x topic) time and TopicTrie can advance it one character at a time while walking shared
+// prefixes only once.
+public final class TopicPattern {
+
+    public static final char SEGMENT_WILDCARD = '*';
+    public static final char ANY_WILDCARD = '#';
+    private static final char SEPARATOR = '.';
+
+    private final String pattern;
+
+    private TopicPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public static TopicPattern compile(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("A topic pattern must not be empty");
+        }
+        return new TopicPattern(pattern);
+    }
+
+    // This method checks whether the text uses a wildcard, as opposed to naming a single topic
+    public static boolean hasWildcard(String text) {
+        return text.indexOf(SEGMENT_WILDCARD) >= 0 || text.indexOf(ANY_WILDCARD) >= 0;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    // This method returns the part of the pattern before its first wildcard, which every matching topic starts with
+    public String literalPrefix() {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (isWildcard(pattern.charAt(i))) {
+                return pattern.substring(0, i);
+            }
+        }
+        return pattern;
+    }
+
+    public boolean matches(String topic) {
+        BitSet states = start();
+        for (int i = 0; i < topic.length() && !states.isEmpty(); i++) {
+            states = step(states, topic.charAt(i));
+        }
+        return accepts(states);
+    }
+
+    // This method returns the states before any character is read
+    BitSet start() {
+        BitSet states = new BitSet(pattern.length() + 1);
+        states.set(0);
+        return closure(states);
+    }
+
+    // This method returns the states after reading one more character; they are empty once no topic with
+    // this prefix can match
+    BitSet step(BitSet states, char c) {
+        BitSet next = new BitSet(pattern.length() + 1);
+        for (int i = states.nextSetBit(0); i >= 0 && i < pattern.length(); i = states.nextSetBit(i + 1)) {
+            char p = pattern.charAt(i);
+            if (p == ANY_WILDCARD || (p == SEGMENT_WILDCARD && c != SEPARATOR)) {
+                next.set(i);
+            } else if (p == c && !isWildcard(p)) {
+                next.set(i + 1);
+            }
+        }
+        return closure(next);
+    }
+
+    // This method checks whether the characters read so far form a matching topic
+    boolean accepts(BitSet states) {
+        return states.get(pattern.length());
+    }
+
+    // This method adds the states after each wildcard reached, since a wildcard may match nothing
+    private BitSet closure(BitSet states) {
+        for (int i = states.nextSetBit(0); i >= 0 && i < pattern.length(); i = states.nextSetBit(i + 1)) {
+            if (isWildcard(pattern.charAt(i))) {
+                states.set(i + 1);
+            }
+        }
+        return states;
+    }
+
+    private static boolean isWildcard(char c) {
+        return c == SEGMENT_WILDCARD || c == ANY_WILDCARD;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
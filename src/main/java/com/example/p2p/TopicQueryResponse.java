@@ -0,0 +1,32 @@
+package com.example.p2p;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Result of /indexing/query_topic/{topic}: the hosting node and, if known, its address, plus the nodes
+// holding copies of the topic and their addresses in the same order (empty where unknown).
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TopicQueryResponse(String status, @JsonProperty("node_id") String nodeId, String address,
+                                 @JsonProperty("replica_ids") List<String> replicaIds,
+                                 @JsonProperty("replica_addresses") List<String> replicaAddresses) {
+
+    public static TopicQueryResponse found(String nodeId, String address) {
+        return new TopicQueryResponse("found", nodeId, address, null, null);
+    }
+
+    public static TopicQueryResponse found(String nodeId, String address, List<String> replicaIds, List<String> replicaAddresses) {
+        return new TopicQueryResponse("found", nodeId, address, replicaIds, replicaAddresses);
+    }
+
+    public static TopicQueryResponse notFound() {
+        return new TopicQueryResponse("not_found", null, null, null, null);
+    }
+
+    @JsonIgnore
+    public boolean isFound() {
+        return "found".equals(status);
+    }
+}
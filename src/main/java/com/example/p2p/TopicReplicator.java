@@ -0,0 +1,297 @@
+package com.example.p2p;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Copies the replicated topics hosted on this peer to the peers the indexing server chose as replicas.
+//
+// The topic's own log is the replication queue. Every replica has a cursor, the first offset it has not
+// acknowledged, and a sender that reads the log from the cursor and posts up to maxBatch records to the
+// replica's /peer/replicate, with one batch in flight per replica. A failed batch is retried after a backoff
+// that doubles up to MAX_BACKOFF_MILLIS, so a slow or dead replica holds up neither publishers nor the other
+// replicas; once it answers again it is sent what the log still retains.
+//
+// In ASYNC mode a publish returns once the message is in the local log. In QUORUM mode its reply waits until
+// a majority of the topic's copies, this one included, hold the message, and fails after ackTimeoutMillis.
+// The wait is a future, so no thread is held while replicas catch up.
+@Component
+public class TopicReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicReplicator.class);
+
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    public enum Mode {
+        ASYNC,
+        QUORUM
+    }
+
+    private record Waiter(long offset, int needed, CompletableFuture<Void> acknowledged) {
+    }
+
+    private final TopicStore topicStore;
+    private final InterNodeClient interNodeClient;
+    private final Mode mode;
+    private final int maxBatch;
+    private final long ackTimeoutMillis;
+    private final long retryMillis;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("topic-replication").daemon().factory());
+
+    private final Map<String, ReplicatedTopic> replicatedTopics = new ConcurrentHashMap<>();
+
+    private final AtomicLong replicated = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong quorumTimeouts = new AtomicLong();
+
+    public TopicReplicator(
+            TopicStore topicStore,
+            InterNodeClient interNodeClient,
+            @Value("${peer.replication.mode:ASYNC}") Mode mode,
+            @Value("${peer.replication.max-batch:500}") int maxBatch,
+            @Value("${peer.replication.ack-timeout-ms:2000}") long ackTimeoutMillis,
+            @Value("${peer.replication.retry-ms:100}") long retryMillis) {
+        this.topicStore = topicStore;
+        this.interNodeClient = interNodeClient;
+        this.mode = mode;
+        this.maxBatch = maxBatch;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.retryMillis = retryMillis;
+    }
+
+    // Starts or updates replication of a hosted topic to the given replicas, keyed by node ID with their base
+    // URLs. Replicas kept from the previous assignment keep their cursor; new ones start at the oldest
+    // retained message.
+    public void setReplicas(String topic, int factor, String fromNode, Map<String, String> addresses) {
+        MessageLog topicLog = topicStore.get(topic);
+        if (topicLog == null) {
+            return;
+        }
+        ReplicatedTopic replicatedTopic = replicatedTopics.computeIfAbsent(topic, ReplicatedTopic::new);
+        List<Replica> replicas = new ArrayList<>(addresses.size());
+        synchronized (replicatedTopic) {
+            for (Map.Entry<String, String> address : addresses.entrySet()) {
+                Replica replica = replicatedTopic.find(address.getKey());
+                replicas.add(replica != null && replica.address.equals(address.getValue())
+                        ? replica : new Replica(replicatedTopic, address.getKey(), address.getValue(), topicLog.getHeadOffset()));
+            }
+            replicatedTopic.factor = factor;
+            replicatedTopic.fromNode = fromNode;
+            replicatedTopic.replicas = List.copyOf(replicas);
+            replicatedTopic.checkWaiters();
+        }
+        replicas.forEach(Replica::kick);
+    }
+
+    // Stops replicating a topic, for instance because it was handed over to another node.
+    public void stop(String topic) {
+        ReplicatedTopic replicatedTopic = replicatedTopics.remove(topic);
+        if (replicatedTopic != null) {
+            synchronized (replicatedTopic) {
+                replicatedTopic.replicas = List.of();
+                replicatedTopic.checkWaiters();
+            }
+        }
+    }
+
+    // Returns the number of copies a topic is meant to have, or 1 if it isn't replicated from here.
+    public int getFactor(String topic) {
+        ReplicatedTopic replicatedTopic = replicatedTopics.get(topic);
+        return replicatedTopic != null ? replicatedTopic.factor : 1;
+    }
+
+    // Wakes the senders of a topic after messages were appended to its log.
+    public void published(String topic) {
+        ReplicatedTopic replicatedTopic = replicatedTopics.get(topic);
+        if (replicatedTopic != null) {
+            replicatedTopic.replicas.forEach(Replica::kick);
+        }
+    }
+
+    // Completes, in QUORUM mode, once enough replicas hold the message at the offset for a majority of the topic's
+    // copies to have it, with false if that did not happen within the acknowledgement timeout. In ASYNC mode, or
+    // for a topic that isn't replicated, it is complete already.
+    public CompletableFuture<Boolean> quorum(String topic, long offset) {
+        ReplicatedTopic replicatedTopic = replicatedTopics.get(topic);
+        if (mode != Mode.QUORUM || replicatedTopic == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        CompletableFuture<Void> acknowledged;
+        synchronized (replicatedTopic) {
+            int needed = Math.min(replicatedTopic.factor / 2, replicatedTopic.replicas.size());
+            if (replicatedTopic.acknowledgements(offset) >= needed) {
+                return CompletableFuture.completedFuture(true);
+            }
+            Waiter waiter = new Waiter(offset, needed, new CompletableFuture<>());
+            replicatedTopic.waiters.add(waiter);
+            acknowledged = waiter.acknowledged();
+        }
+        return acknowledged.orTimeout(ackTimeoutMillis, TimeUnit.MILLISECONDS).handle((ignored, e) -> {
+            if (e == null) {
+                return true;
+            }
+            synchronized (replicatedTopic) {
+                replicatedTopic.waiters.removeIf(waiter -> waiter.acknowledged() == acknowledged);
+            }
+            quorumTimeouts.incrementAndGet();
+            return false;
+        });
+    }
+
+    public Map<String, Object> getMetrics() {
+        long lag = 0;
+        int replicas = 0;
+        for (ReplicatedTopic replicatedTopic : replicatedTopics.values()) {
+            MessageLog topicLog = topicStore.get(replicatedTopic.topic);
+            for (Replica replica : replicatedTopic.replicas) {
+                replicas++;
+                lag += topicLog != null ? Math.max(0, topicLog.getNextOffset() - replica.cursor) : 0;
+            }
+        }
+        return Map.of(
+                "mode", mode.name(),
+                "topics", replicatedTopics.size(),
+                "replicas", replicas,
+                "lag", lag,
+                "replicated", replicated.get(),
+                "failed_batches", failedBatches.get(),
+                "quorum_timeouts", quorumTimeouts.get()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private final class ReplicatedTopic {
+
+        private final String topic;
+        private volatile int factor = 1;
+        private volatile String fromNode;
+        private volatile List<Replica> replicas = List.of();
+        private final List<Waiter> waiters = new ArrayList<>();
+
+        private ReplicatedTopic(String topic) {
+            this.topic = topic;
+        }
+
+        private Replica find(String nodeId) {
+            for (Replica replica : replicas) {
+                if (replica.nodeId.equals(nodeId)) {
+                    return replica;
+                }
+            }
+            return null;
+        }
+
+        private int acknowledgements(long offset) {
+            int count = 0;
+            for (Replica replica : replicas) {
+                if (replica.cursor > offset) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // Called with this topic's monitor held
+        private void checkWaiters() {
+            waiters.removeIf(waiter -> {
+                if (acknowledgements(waiter.offset()) < Math.min(waiter.needed(), replicas.size())) {
+                    return false;
+                }
+                // Completed off this lock, so the publish replies waiting on it don't run under it
+                waiter.acknowledged().completeAsync(() -> null);
+                return true;
+            });
+        }
+    }
+
+    private final class Replica {
+
+        private final ReplicatedTopic replicatedTopic;
+        private final String nodeId;
+        private final String address;
+        private volatile long cursor;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private int failures;
+
+        private Replica(ReplicatedTopic replicatedTopic, String nodeId, String address, long cursor) {
+            this.replicatedTopic = replicatedTopic;
+            this.nodeId = nodeId;
+            this.address = address;
+            this.cursor = cursor;
+        }
+
+        private void kick() {
+            if (sending.compareAndSet(false, true)) {
+                scheduler.execute(this::send);
+            }
+        }
+
+        private boolean isCurrent() {
+            return replicatedTopics.get(replicatedTopic.topic) == replicatedTopic && replicatedTopic.replicas.contains(this);
+        }
+
+        private void send() {
+            MessageLog topicLog = topicStore.get(replicatedTopic.topic);
+            if (topicLog == null || !isCurrent()) {
+                sending.set(false);
+                return;
+            }
+            long start = Math.max(cursor, topicLog.getHeadOffset());
+            List<MessageLog.Record> records = topicLog.read(start, maxBatch);
+            if (records.isEmpty()) {
+                sending.set(false);
+                // A message stored after the read but before the flag was cleared still needs a send
+                if (!topicLog.read(start, 1).isEmpty()) {
+                    kick();
+                }
+                return;
+            }
+
+            List<Long> offsets = new ArrayList<>(records.size());
+            List<String> messages = new ArrayList<>(records.size());
+            for (MessageLog.Record record : records) {
+                offsets.add(record.offset());
+                messages.add(record.message());
+            }
+            ReplicateRequest request = new ReplicateRequest(replicatedTopic.topic, replicatedTopic.fromNode,
+                    replicatedTopic.factor, offsets, messages);
+            interNodeClient.postAsync(address + "/peer/replicate", request).whenComplete((response, e) -> {
+                if (e == null && "replicated".equals(response.get("status"))) {
+                    failures = 0;
+                    replicated.addAndGet(records.size());
+                    synchronized (replicatedTopic) {
+                        cursor = Math.max(cursor, ((Number) response.get("next_offset")).longValue());
+                        replicatedTopic.checkWaiters();
+                    }
+                    scheduler.execute(this::send);
+                    return;
+                }
+                failedBatches.incrementAndGet();
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, retryMillis << Math.min(failures++, 16));
+                if (failures == 1) {
+                    logger.warn("Failed to replicate topic " + replicatedTopic.topic + " to node " + nodeId + ", retrying: "
+                            + (e != null ? e.getMessage() : response.get("message")));
+                }
+                scheduler.schedule(this::send, backoff, TimeUnit.MILLISECONDS);
+            });
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.p2p;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Finds the node hosting a topic for subscribe and fetch. peer.discovery.mode picks the
+// implementation: INDEX asks the indexing servers, GOSSIP answers from the view of the cluster this
+// peer builds by gossiping with the others, and DHT looks the topic up on a Chord ring formed by the
+// peers.
+public interface TopicResolver {
+
+    // Returns the topic's location, or null if no node is known to host it.
+    CompletableFuture<TopicLocation> resolve(String topic);
+
+    // Forgets what is known about a topic's location after it turned out to be wrong.
+    default void invalidate(String topic) {
+    }
+
+    // Tells the resolver which topics this node hosts. Indexing servers learn them through registration
+    // instead, so the default does nothing.
+    default void announce(String nodeId, String address, Collection<String> topics) {
+    }
+
+    Map<String, Object> getMetrics();
+}
@@ -0,0 +1,185 @@
+package com.example.p2p;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Holds the message log of every topic hosted by this peer.
+//
+// In MEMORY mode each topic is a bounded in-heap TopicLog. In MMAP mode each topic is a
+// MappedSegmentLog under peer.storage.dir, and topics found there are reopened on startup.
+@Component
+public class TopicStore {
+
+    public enum StorageMode {
+        MEMORY,
+        MMAP
+    }
+
+    // Longest file name most file systems accept, in bytes.
+    private static final int MAX_DIRECTORY_NAME_LENGTH = 255;
+
+    private final StorageMode storageMode;
+
+    private final int capacity;
+    private final TopicLog.OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final long groupTtlMillis;
+
+    private final Path storageDirectory;
+    private final int segmentBytes;
+    private final long segmentMillis;
+    private final long retentionBytes;
+    private final long retentionMillis;
+
+    private final Map<String, MessageLog> topicLogs = new ConcurrentHashMap<>();
+
+    public TopicStore(
+            @Value("${peer.storage.mode:MEMORY}") StorageMode storageMode,
+            @Value("${peer.topic.capacity:4096}") int capacity,
+            @Value("${peer.topic.overflow-policy:DROP_OLDEST}") TopicLog.OverflowPolicy overflowPolicy,
+            @Value("${peer.topic.block-timeout-ms:1000}") long blockTimeoutMillis,
+            @Value("${peer.topic.group-ttl-ms:3600000}") long groupTtlMillis,
+            @Value("${peer.storage.dir:data/topics}") String storageDirectory,
+            @Value("${peer.storage.segment-bytes:16777216}") int segmentBytes,
+            @Value("${peer.storage.segment-ms:3600000}") long segmentMillis,
+            @Value("${peer.storage.retention-bytes:1073741824}") long retentionBytes,
+            @Value("${peer.storage.retention-ms:604800000}") long retentionMillis) {
+        this.storageMode = storageMode;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.groupTtlMillis = groupTtlMillis;
+        this.storageDirectory = Paths.get(storageDirectory);
+        this.segmentBytes = segmentBytes;
+        this.segmentMillis = segmentMillis;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+
+        if (storageMode == StorageMode.MMAP) {
+            recoverTopics();
+        }
+    }
+
+    // Creates the log for a topic if it does not exist yet and returns it.
+    public MessageLog create(String topic) {
+        return topicLogs.computeIfAbsent(topic, this::openLog);
+    }
+
+    // Returns why the topic can't be stored here, or null if it can.
+    public String validateTopicName(String topic) {
+        if (storageMode != StorageMode.MMAP) {
+            return null;
+        }
+        if (topic.isEmpty()) {
+            return "Topic name must not be empty";
+        }
+        if (directoryName(topic).length() > MAX_DIRECTORY_NAME_LENGTH) {
+            return "Topic name is too long to store";
+        }
+        return null;
+    }
+
+    // Returns whether appending may park the caller until readers free space, as the BLOCK policy does.
+    public boolean appendsMayBlock() {
+        return storageMode == StorageMode.MEMORY && overflowPolicy == TopicLog.OverflowPolicy.BLOCK;
+    }
+
+    // Returns the log for a hosted topic, or null if the topic is not hosted here.
+    public MessageLog get(String topic) {
+        return topicLogs.get(topic);
+    }
+
+    public Set<String> getTopics() {
+        return Set.copyOf(topicLogs.keySet());
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public int getMessageCount() {
+        return topicLogs.values().stream().mapToInt(MessageLog::size).sum();
+    }
+
+    // Returns how many messages were ever appended to the hosted topics, retained or not.
+    public long getAppendedCount() {
+        return topicLogs.values().stream().mapToLong(MessageLog::getNextOffset).sum();
+    }
+
+    public long getDroppedCount() {
+        return topicLogs.values().stream().mapToLong(MessageLog::getDroppedCount).sum();
+    }
+
+    public long getRejectedCount() {
+        return topicLogs.values().stream().mapToLong(MessageLog::getRejectedCount).sum();
+    }
+
+    // Forgets readers that stopped moving, so an abandoned consumer group doesn't keep a full log from accepting messages.
+    @Scheduled(fixedDelayString = "${peer.topic.group-check-ms:10000}")
+    public void expireGroups() {
+        if (groupTtlMillis > 0) {
+            topicLogs.values().forEach(topicLog -> topicLog.expireGroups(groupTtlMillis));
+        }
+    }
+
+    // Applies retention to every topic, including ones no longer appended to.
+    @Scheduled(fixedDelayString = "${peer.storage.retention-check-ms:60000}")
+    public void enforceRetention() {
+        topicLogs.values().forEach(MessageLog::enforceRetention);
+    }
+
+    @PreDestroy
+    public void close() {
+        topicLogs.values().forEach(MessageLog::close);
+    }
+
+    private MessageLog openLog(String topic) {
+        if (storageMode == StorageMode.MMAP) {
+            String invalid = validateTopicName(topic);
+            if (invalid != null) {
+                throw new IllegalArgumentException(invalid + ": " + topic);
+            }
+            Path directory = storageDirectory.resolve(directoryName(topic));
+            return new MappedSegmentLog(directory, segmentBytes, segmentMillis, retentionBytes, retentionMillis);
+        }
+        return new TopicLog(capacity, overflowPolicy, blockTimeoutMillis);
+    }
+
+    // URL encoding keeps dots, so "." and ".." would name the store or its parent; their dots are escaped too
+    private static String directoryName(String topic) {
+        String encoded = URLEncoder.encode(topic, StandardCharsets.UTF_8);
+        if (encoded.equals(".") || encoded.equals("..")) {
+            return encoded.replace(".", "%2E");
+        }
+        return encoded;
+    }
+
+    private void recoverTopics() {
+        if (!Files.isDirectory(storageDirectory)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.list(storageDirectory)) {
+            directories.filter(Files::isDirectory).forEach(directory -> {
+                String topic = URLDecoder.decode(directory.getFileName().toString(), StandardCharsets.UTF_8);
+                topicLogs.put(topic, openLog(topic));
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover topics from " + storageDirectory, e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+// This line specifies which package this class belongs to
+package com.example.p2p;
+
+// These lines import necessary Java classes
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// This class is a radix trie over topic names, which answers prefix and wildcard queries without
+// scanning every topic. Each node holds the part of a name it adds to its parent, children are kept
+// sorted by their first character, and a chain of nodes with one child each is merged into one.
+//
+// Nodes are immutable. A writer copies the nodes on the path it changes and publishes the new root,
+// so readers walk a consistent version of the trie without locking, as the registry's maps do.
+// Writers serialize on the trie, which only takes the path copy of one name.
+public class TopicTrie {
+
+    // This record is a topic-matching query's answer: topic names in order, and whether more matched than the limit
+    public record Matches(List<String> topics, boolean truncated) {
+    }
+
+    // This class is one trie node; an edge's label is stored on the node it leads to
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String label;
+        private final boolean terminal;
+        private final char[] keys;
+        private final Node[] children;
+
+        private Node(String label, boolean terminal, char[] keys, Node[] children) {
+            this.label = label;
+            this.terminal = terminal;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private static Node leaf(String label) {
+            return new Node(label, true, NO_KEYS, NO_CHILDREN);
+        }
+
+        private int indexOf(char c) {
+            return Arrays.binarySearch(keys, c);
+        }
+
+        private Node withTerminal(boolean isTerminal) {
+            return new Node(label, isTerminal, keys, children);
+        }
+
+        private Node withLabel(String newLabel) {
+            return new Node(newLabel, terminal, keys, children);
+        }
+
+        private Node addChild(Node child) {
+            int insertAt = -indexOf(child.label.charAt(0)) - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = child.label.charAt(0);
+            newChildren[insertAt] = child;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            return new Node(label, terminal, newKeys, newChildren);
+        }
+
+        private Node replaceChild(int index, Node child) {
+            Node[] newChildren = children.clone();
+            newChildren[index] = child;
+            return new Node(label, terminal, keys, newChildren);
+        }
+
+        private Node removeChild(int index) {
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            return new Node(label, terminal, newKeys, newChildren);
+        }
+    }
+
+    // This record is where a prefix ends in the trie: in a node, after the first offset characters of its label
+    private record Position(Node node, int offset) {
+    }
+
+    // This is the current version of the trie; its root has an empty label
+    private volatile Node root = new Node("", false, Node.NO_KEYS, Node.NO_CHILDREN);
+
+    // This is how many topic names the trie holds
+    private volatile int size;
+
+    // This method adds a topic name, returning false if it was already present
+    public synchronized boolean add(String topic) {
+        Node updated = insert(root, topic, 0);
+        if (updated == root) {
+            return false;
+        }
+        root = updated;
+        size++;
+        return true;
+    }
+
+    // This method removes a topic name, returning false if it was not present
+    public synchronized boolean remove(String topic) {
+        Node updated = delete(root, topic, 0, true);
+        if (updated == root) {
+            return false;
+        }
+        root = updated;
+        size--;
+        return true;
+    }
+
+    // This method checks whether a topic name is present
+    public boolean contains(String topic) {
+        Position position = locate(root, topic);
+        return position != null && position.offset() == position.node().label.length() && position.node().terminal;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // This method returns up to limit topic names starting with the prefix, in lexicographic order
+    public Matches withPrefix(String prefix, int limit) {
+        List<String> found = new ArrayList<>();
+        Position position = locate(root, prefix);
+        if (position != null) {
+            Node node = position.node();
+            StringBuilder path = new StringBuilder(prefix).append(node.label, position.offset(), node.label.length());
+            collect(node, path, found, limit);
+        }
+        return truncate(found, limit);
+    }
+
+    // This method returns up to limit topic names matching the wildcard pattern, in lexicographic order.
+    // Only the subtree under the pattern's literal prefix is walked, and a branch is left as soon as no
+    // name in it can match
+    public Matches matching(TopicPattern pattern, int limit) {
+        List<String> found = new ArrayList<>();
+        String prefix = pattern.literalPrefix();
+        Position position = locate(root, prefix);
+        if (position != null) {
+            BitSet states = pattern.start();
+            for (int i = 0; i < prefix.length(); i++) {
+                states = pattern.step(states, prefix.charAt(i));
+            }
+            match(position.node(), position.offset(), new StringBuilder(prefix), states, pattern, found, limit);
+        }
+        return truncate(found, limit);
+    }
+
+    // This method returns a copy of the root with the key added; the same root if it was already present
+    private static Node insert(Node node, String key, int depth) {
+        if (depth == key.length()) {
+            return node.terminal ? node : node.withTerminal(true);
+        }
+        int index = node.indexOf(key.charAt(depth));
+        if (index < 0) {
+            return node.addChild(Node.leaf(key.substring(depth)));
+        }
+        Node child = node.children[index];
+        int common = commonPrefixLength(child.label, key, depth);
+        if (common < child.label.length()) {
+            // The key leaves this edge part way along, so the edge is split where they differ
+            Node tail = child.withLabel(child.label.substring(common));
+            Node split = new Node(child.label.substring(0, common), false, new char[]{tail.label.charAt(0)}, new Node[]{tail});
+            return node.replaceChild(index, insert(split, key, depth + common));
+        }
+        Node updated = insert(child, key, depth + common);
+        return updated == child ? node : node.replaceChild(index, updated);
+    }
+
+    // This method returns a copy of the node with the key removed, the same node if the key is absent,
+    // or null if the node is left without a name or children. A node left with a single child and no
+    // name of its own is merged with that child
+    private static Node delete(Node node, String key, int depth, boolean isRoot) {
+        Node updated;
+        if (depth == key.length()) {
+            if (!node.terminal) {
+                return node;
+            }
+            updated = node.withTerminal(false);
+        } else {
+            int index = node.indexOf(key.charAt(depth));
+            if (index < 0) {
+                return node;
+            }
+            Node child = node.children[index];
+            if (!key.startsWith(child.label, depth)) {
+                return node;
+            }
+            Node updatedChild = delete(child, key, depth + child.label.length(), false);
+            if (updatedChild == child) {
+                return node;
+            }
+            updated = updatedChild == null ? node.removeChild(index) : node.replaceChild(index, updatedChild);
+        }
+        if (isRoot || updated.terminal || updated.children.length > 1) {
+            return updated;
+        }
+        if (updated.children.length == 0) {
+            return null;
+        }
+        Node only = updated.children[0];
+        return only.withLabel(updated.label + only.label);
+    }
+
+    // This method finds where the prefix ends in the trie, or null if no name starts with it
+    private static Position locate(Node node, String prefix) {
+        int depth = 0;
+        while (depth < prefix.length()) {
+            int index = node.indexOf(prefix.charAt(depth));
+            if (index < 0) {
+                return null;
+            }
+            Node child = node.children[index];
+            int length = Math.min(child.label.length(), prefix.length() - depth);
+            if (!child.label.regionMatches(0, prefix, depth, length)) {
+                return null;
+            }
+            depth += length;
+            if (length < child.label.length()) {
+                return new Position(child, length);
+            }
+            node = child;
+        }
+        return new Position(node, node.label.length());
+    }
+
+    // This method adds the names in the node's subtree, the node's own first; path spells the node's name
+    private static void collect(Node node, StringBuilder path, List<String> found, int limit) {
+        if (node.terminal) {
+            found.add(path.toString());
+        }
+        for (Node child : node.children) {
+            if (found.size() > limit) {
+                return;
+            }
+            int mark = path.length();
+            path.append(child.label);
+            collect(child, path, found, limit);
+            path.setLength(mark);
+        }
+    }
+
+    // This method reads the rest of the node's label from offset through the pattern, then adds the node's
+    // name if it matches and descends into its children
+    private static void match(Node node, int offset, StringBuilder path, BitSet states, TopicPattern pattern,
+                              List<String> found, int limit) {
+        int mark = path.length();
+        for (int i = offset; i < node.label.length(); i++) {
+            char c = node.label.charAt(i);
+            states = pattern.step(states, c);
+            if (states.isEmpty()) {
+                path.setLength(mark);
+                return;
+            }
+            path.append(c);
+        }
+        if (node.terminal && pattern.accepts(states)) {
+            found.add(path.toString());
+        }
+        for (Node child : node.children) {
+            if (found.size() > limit) {
+                break;
+            }
+            match(child, 0, path, states, pattern, found, limit);
+        }
+        path.setLength(mark);
+    }
+
+    // This method cuts a result collected one past the limit back to the limit, noting that it was cut
+    private static Matches truncate(List<String> found, int limit) {
+        if (found.size() > limit) {
+            return new Matches(List.copyOf(found.subList(0, limit)), true);
+        }
+        return new Matches(List.copyOf(found), false);
+    }
+
+    // This method returns how many characters the label shares with the key from depth on
+    private static int commonPrefixLength(String label, String key, int depth) {
+        int max = Math.min(label.length(), key.length() - depth);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(depth + i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.p2p;
+
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.MimeType;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// Registers BinaryWireFormat with whichever web stack is running.
+//
+// The binary format is only chosen when a request asks for it through Content-Type or Accept;
+// endpoints that offer it list JSON first, so every other client keeps getting JSON.
+@Configuration(proxyBeanMethods = false)
+public class WireFormatConfiguration {
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class Servlet implements WebMvcConfigurer {
+
+        @Override
+        public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+            // Appended after Jackson so JSON stays the default for records
+            converters.add(new BinaryHttpMessageConverter());
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class Reactive {
+
+        @Bean
+        CodecCustomizer binaryWireFormatCodecCustomizer() {
+            return configurer -> {
+                configurer.customCodecs().register(new BinaryEncoder());
+                configurer.customCodecs().register(new BinaryDecoder());
+            };
+        }
+    }
+
+    static class BinaryHttpMessageConverter extends AbstractHttpMessageConverter<Record> {
+
+        BinaryHttpMessageConverter() {
+            super(BinaryWireFormat.MEDIA_TYPE);
+        }
+
+        @Override
+        protected boolean supports(Class<?> type) {
+            return BinaryWireFormat.supports(type);
+        }
+
+        @Override
+        protected Record readInternal(Class<? extends Record> type, HttpInputMessage inputMessage) throws IOException {
+            try {
+                return BinaryWireFormat.decode(inputMessage.getBody().readAllBytes(), type);
+            } catch (IllegalArgumentException e) {
+                throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+            }
+        }
+
+        @Override
+        protected void writeInternal(Record value, HttpOutputMessage outputMessage) throws IOException {
+            byte[] bytes = BinaryWireFormat.encode(value);
+            outputMessage.getHeaders().setContentLength(bytes.length);
+            outputMessage.getBody().write(bytes);
+        }
+    }
+
+    static class BinaryEncoder extends AbstractEncoder<Record> {
+
+        BinaryEncoder() {
+            super(BinaryWireFormat.MEDIA_TYPE);
+        }
+
+        @Override
+        public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+            return BinaryWireFormat.supports(elementType.toClass()) && super.canEncode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<? extends Record> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+        }
+
+        @Override
+        public DataBuffer encodeValue(Record value, DataBufferFactory bufferFactory,
+                                      ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+            return bufferFactory.wrap(BinaryWireFormat.encode(value));
+        }
+    }
+
+    static class BinaryDecoder extends AbstractDataBufferDecoder<Record> {
+
+        BinaryDecoder() {
+            super(BinaryWireFormat.MEDIA_TYPE);
+        }
+
+        @Override
+        public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+            return BinaryWireFormat.supports(elementType.toClass()) && super.canDecode(elementType, mimeType);
+        }
+
+        @Override
+        public Record decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            return (Record) BinaryWireFormat.decode(bytes, targetType.toClass());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package test;
+
+import com.example.p2p.BinaryWireFormat;
+import com.example.p2p.PublishResponse;
+import com.example.p2p.TopicQueryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Checks the compact binary encoding of the typed wire records
+public class BinaryWireFormatTest {
+
+    public record AllTypes(String text, int count, long offset, boolean flag,
+                           Integer boxedCount, Long boxedOffset, Boolean boxedFlag, List<String> topics,
+                           List<Long> offsets) {
+    }
+
+    @Test
+    public void recordsRoundTripIncludingNulls() {
+        AllTypes full = new AllTypes("héllo", 7, 1L << 40, true, 3, -1L, false, List.of("a", "", "ü"), List.of(0L, Long.MAX_VALUE));
+        AllTypes empty = new AllTypes(null, 0, 0, false, null, null, null, null, null);
+
+        assertThat(BinaryWireFormat.decode(BinaryWireFormat.encode(full), AllTypes.class)).isEqualTo(full);
+        assertThat(BinaryWireFormat.decode(BinaryWireFormat.encode(empty), AllTypes.class)).isEqualTo(empty);
+    }
+
+    @Test
+    public void binaryIsSmallerThanTheJsonItReplaces() throws Exception {
+        TopicQueryResponse response = TopicQueryResponse.found("peer12", "http://10.0.0.12:8080");
+
+        byte[] binary = BinaryWireFormat.encode(response);
+        byte[] json = new ObjectMapper().writeValueAsBytes(response);
+
+        assertThat(binary.length).isLessThan(json.length);
+        // The typed record keeps the JSON shape of the map it replaced
+        assertThat(new ObjectMapper().readValue(json, Map.class))
+                .isEqualTo(Map.of("status", "found", "node_id", "peer12", "address", "http://10.0.0.12:8080"));
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        byte[] encoded = BinaryWireFormat.encode(PublishResponse.published("topic", 42));
+
+        assertThatThrownBy(() -> BinaryWireFormat.decode(Arrays.copyOf(encoded, encoded.length - 1), PublishResponse.class))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BinaryWireFormat.decode(Arrays.copyOf(encoded, encoded.length + 1), PublishResponse.class))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(BinaryWireFormat.supports(Map.class)).isFalse();
+    }
+}
@@ -0,0 +1,91 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs a peer on the reactive stack with the BLOCK overflow policy and checks that a publish waiting for
+// space leaves the event loop free to serve the read that makes room for it, and that a replica copy
+// waiting for space doesn't hold up other requests either
+public class BlockingPublishTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ConfigurableApplicationContext instance;
+
+    @AfterEach
+    public void stop() {
+        instance.close();
+        client.close();
+    }
+
+    private String start() {
+        // One event loop thread, so an append parked on it would hold up every other request
+        System.setProperty("reactor.netty.ioWorkerCount", "1");
+        try {
+            instance = new SpringApplicationBuilder(P2PSystemApplication.class).profiles("reactive").run(
+                    "--server.port=0", "--peer.topic.capacity=2", "--peer.topic.overflow-policy=BLOCK",
+                    "--peer.topic.block-timeout-ms=10000", "--logging.level.com.example.p2p=WARN");
+        } finally {
+            System.clearProperty("reactor.netty.ioWorkerCount");
+        }
+        String peer = "http://localhost:" + instance.getEnvironment().getProperty("local.server.port");
+        post(peer + "/peer/initialize", "", "text/plain").join();
+        return peer;
+    }
+
+    @Test
+    public void blockedPublishWaitsOffTheEventLoop() throws Exception {
+        String peer = start();
+        post(peer + "/peer/create_topic", "orders", "text/plain").join();
+        for (int i = 0; i < 2; i++) {
+            assertThat(publish(peer, "order-" + i).join()).contains("\"offset\":" + i);
+        }
+
+        CompletableFuture<String> blocked = publish(peer, "order-2");
+        Thread.sleep(200);
+        assertThat(blocked).isNotDone();
+
+        // Reading outside any group frees the space the blocked publish is waiting for
+        String pulled = client.sendAsync(HttpRequest.newBuilder(URI.create(peer + "/peer/pull_messages/orders")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS).body();
+        assertThat(pulled).contains("order-0", "order-1");
+        assertThat(blocked.get(5, TimeUnit.SECONDS)).contains("\"offset\":2");
+    }
+
+    @Test
+    public void blockedReplicaCopyWaitsOffTheEventLoop() throws Exception {
+        String peer = start();
+        CompletableFuture<String> blocked = post(peer + "/peer/replicate", "{\"topic\":\"orders\",\"from_node\":\"host\","
+                + "\"factor\":2,\"offsets\":[0,1,2],\"messages\":[\"order-0\",\"order-1\",\"order-2\"]}", "application/json");
+        Thread.sleep(200);
+        assertThat(blocked).isNotDone();
+
+        // The copy waits for space that never frees up, yet other requests are still served
+        String metrics = client.sendAsync(HttpRequest.newBuilder(URI.create(peer + "/peer/get_metrics")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS).body();
+        assertThat(metrics).contains("orders");
+    }
+
+    private CompletableFuture<String> publish(String peer, String message) {
+        return post(peer + "/peer/publish", "{\"topic\":\"orders\",\"message\":\"" + message + "\"}", "application/json");
+    }
+
+    private CompletableFuture<String> post(String url, String body, String contentType) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(HttpResponse::body);
+    }
+}
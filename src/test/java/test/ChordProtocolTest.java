@@ -0,0 +1,218 @@
+package test;
+
+import com.example.p2p.ChordProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Builds a Chord ring of in-process peers over an in-memory transport and checks that lookups find the
+// right peer in a logarithmic number of hops, and keep doing so after peers crash
+public class ChordProtocolTest {
+
+    private static final int PEERS = 256;
+    private static final long REPUBLISH_MILLIS = 10_000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, ChordProtocol> peers = new LinkedHashMap<>();
+    private final Set<String> crashed = new HashSet<>();
+
+    private final class InMemoryTransport implements ChordProtocol.Transport {
+
+        private ChordProtocol peer(String address) {
+            if (crashed.contains(address)) {
+                throw new IllegalStateException("Connection refused: " + address);
+            }
+            return peers.get(address);
+        }
+
+        @Override
+        public ChordProtocol.Step findSuccessor(String address, long key) {
+            return peer(address).findSuccessorStep(key);
+        }
+
+        @Override
+        public ChordProtocol.Neighbours neighbours(String address) {
+            return peer(address).getNeighbours();
+        }
+
+        @Override
+        public void notify(String address, ChordProtocol.Node candidate) {
+            peer(address).handleNotify(candidate);
+        }
+
+        @Override
+        public void put(String address, List<ChordProtocol.Entry> entries) {
+            peer(address).handlePut(entries);
+        }
+
+        @Override
+        public void remove(String address, String topic, String ownerAddress) {
+            peer(address).handleRemove(topic, ownerAddress);
+        }
+
+        @Override
+        public ChordProtocol.Node get(String address, String topic) {
+            return peer(address).handleGet(topic);
+        }
+    }
+
+    private void startRing() {
+        InMemoryTransport transport = new InMemoryTransport();
+        for (int i = 0; i < PEERS; i++) {
+            String address = "http://peer" + i + ":8080";
+            // Everyone joins through the first peer
+            ChordProtocol peer = new ChordProtocol("peer" + i, address, List.of("http://peer0:8080"), transport, 4,
+                    REPUBLISH_MILLIS, clock::get);
+            peers.put(address, peer);
+            peer.join();
+            peer.announce(List.of("topic" + i));
+            if (i % 16 == 15) {
+                round();
+            }
+        }
+        int rounds = 0;
+        while (!successorsAreCorrect()) {
+            round();
+            assertThat(++rounds).as("ring did not stabilize").isLessThan(PEERS);
+        }
+        // A pass over the finger tables
+        for (int i = 0; i < 64; i++) {
+            round();
+        }
+    }
+
+    private void round() {
+        clock.addAndGet(500);
+        peers.forEach((address, peer) -> {
+            if (!crashed.contains(address)) {
+                peer.round();
+            }
+        });
+    }
+
+    private TreeMap<Long, String> liveRing() {
+        TreeMap<Long, String> ring = new TreeMap<>(Long::compareUnsigned);
+        peers.forEach((address, peer) -> {
+            if (!crashed.contains(address)) {
+                ring.put(peer.getSelf().key(), peer.getSelf().nodeId());
+            }
+        });
+        return ring;
+    }
+
+    private String expectedSuccessor(TreeMap<Long, String> ring, long key) {
+        Map.Entry<Long, String> successor = ring.ceilingEntry(key);
+        return successor != null ? successor.getValue() : ring.firstEntry().getValue();
+    }
+
+    private boolean successorsAreCorrect() {
+        TreeMap<Long, String> ring = liveRing();
+        for (Map.Entry<String, ChordProtocol> peer : peers.entrySet()) {
+            if (crashed.contains(peer.getKey())) {
+                continue;
+            }
+            long key = peer.getValue().getSelf().key();
+            Map.Entry<Long, String> next = ring.higherEntry(key);
+            String expected = next != null ? next.getValue() : ring.firstEntry().getValue();
+            if (!expected.equals(peer.getValue().getNeighbours().successors().get(0).nodeId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void lookupsFindTheResponsiblePeerInLogarithmicHops() {
+        startRing();
+        TreeMap<Long, String> ring = liveRing();
+        List<ChordProtocol> all = new ArrayList<>(peers.values());
+        Random random = new Random(7);
+
+        int lookups = 2_000;
+        long totalHops = 0;
+        int maxHops = 0;
+        for (int i = 0; i < lookups; i++) {
+            long key = random.nextLong();
+            ChordProtocol.Lookup lookup = all.get(random.nextInt(PEERS)).lookup(key);
+            assertThat(lookup.successor().nodeId()).isEqualTo(expectedSuccessor(ring, key));
+            totalHops += lookup.hops();
+            maxHops = Math.max(maxHops, lookup.hops());
+        }
+        double averageHops = (double) totalHops / lookups;
+        System.out.printf("%d peers: %.2f hops on average, %d at most%n", PEERS, averageHops, maxHops);
+
+        // Chord averages about half of log2(N) hops; log2(256) = 8
+        assertThat(averageHops).isLessThanOrEqualTo(8.0);
+        assertThat(maxHops).isLessThanOrEqualTo(2 * 8);
+
+        for (int i = 0; i < PEERS; i++) {
+            ChordProtocol.Resolution resolution = all.get(random.nextInt(PEERS)).resolve("topic" + i);
+            assertThat(resolution.owner().nodeId()).isEqualTo("peer" + i);
+        }
+        assertThat(all.get(0).resolve("no-such-topic").owner()).isNull();
+    }
+
+    @Test
+    public void ringRecoversFromCrashedPeers() {
+        startRing();
+        List<String> addresses = new ArrayList<>(peers.keySet());
+        for (int i = 1; i <= 16; i++) {
+            crashed.add(addresses.get(i * 15));
+        }
+
+        int rounds = 0;
+        while (!successorsAreCorrect()) {
+            round();
+            assertThat(++rounds).as("ring did not recover").isLessThan(PEERS);
+        }
+        // Long enough for every entry to be republished and for the crashed peers' entries to expire
+        long end = clock.get() + 3 * REPUBLISH_MILLIS + 1_000;
+        while (clock.get() < end) {
+            round();
+        }
+
+        TreeMap<Long, String> ring = liveRing();
+        Random random = new Random(11);
+        for (int i = 0; i < PEERS; i++) {
+            String address = addresses.get(random.nextInt(PEERS));
+            if (crashed.contains(address)) {
+                continue;
+            }
+            ChordProtocol peer = peers.get(address);
+            long key = random.nextLong();
+            assertThat(peer.lookup(key).successor().nodeId()).isEqualTo(expectedSuccessor(ring, key));
+
+            ChordProtocol.Node owner = peer.resolve("topic" + i).owner();
+            if (crashed.contains(addresses.get(i))) {
+                assertThat(owner).isNull();
+            } else {
+                assertThat(owner.nodeId()).isEqualTo("peer" + i);
+            }
+        }
+    }
+
+    @Test
+    public void removingAnEntryOnlyAffectsTheOwnerAtThatAddress() {
+        ChordProtocol peer = new ChordProtocol("peer0", "http://peer0:8080", List.of(), new InMemoryTransport(), 4,
+                REPUBLISH_MILLIS, clock::get);
+        ChordProtocol.Node owner = new ChordProtocol.Node("peer1", "http://peer1:8080", 1);
+        peer.handlePut(List.of(new ChordProtocol.Entry("news", owner)));
+
+        // Another peer configured with the same node ID can't remove the entry
+        peer.handleRemove("news", "http://peer2:8080");
+        assertThat(peer.handleGet("news")).isEqualTo(owner);
+
+        peer.handleRemove("news", "http://peer1:8080");
+        assertThat(peer.handleGet("news")).isNull();
+    }
+}
@@ -0,0 +1,99 @@
+package test;
+
+import com.example.p2p.ConsistentHashRing;
+import com.example.p2p.IndexingShardRouter;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks that the ring spreads keys evenly and that membership changes only move the affected keys
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 100_000;
+
+    private static ConsistentHashRing<String> ring(int shards) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(128);
+        for (int i = 0; i < shards; i++) {
+            ring.add("http://shard" + i + ":8080/indexing");
+        }
+        return ring;
+    }
+
+    private static Map<String, String> owners(ConsistentHashRing<String> ring) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owners.put("topic" + i, ring.nodeFor("topic" + i));
+        }
+        return owners;
+    }
+
+    @Test
+    public void spreadsKeysEvenlyAcrossNodes() {
+        Map<String, Integer> counts = new HashMap<>();
+        owners(ring(8)).values().forEach(owner -> counts.merge(owner, 1, Integer::sum));
+
+        assertThat(counts).hasSize(8);
+        // With 128 points per node every node owns within 25% of its fair share
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 8 * 3 / 4, KEYS / 8 * 5 / 4));
+    }
+
+    @Test
+    public void addingANodeOnlyMovesKeysToIt() {
+        ConsistentHashRing<String> ring = ring(4);
+        Map<String, String> before = owners(ring);
+        ring.add("http://shard4:8080/indexing");
+        Map<String, String> after = owners(ring);
+
+        int moved = 0;
+        for (String key : before.keySet()) {
+            if (!before.get(key).equals(after.get(key))) {
+                assertThat(after.get(key)).isEqualTo("http://shard4:8080/indexing");
+                moved++;
+            }
+        }
+        // About a fifth of the keys belong to the new node
+        assertThat(moved).isBetween(KEYS / 5 * 3 / 4, KEYS / 5 * 5 / 4);
+    }
+
+    @Test
+    public void removingANodeOnlyMovesItsKeys() {
+        ConsistentHashRing<String> ring = ring(5);
+        Map<String, String> before = owners(ring);
+        ring.remove("http://shard2:8080/indexing");
+        Map<String, String> after = owners(ring);
+
+        for (String key : before.keySet()) {
+            if (!before.get(key).equals("http://shard2:8080/indexing")) {
+                assertThat(after.get(key)).isEqualTo(before.get(key));
+            }
+        }
+        assertThat(after.values()).doesNotContain("http://shard2:8080/indexing");
+    }
+
+    @Test
+    public void emptyRingHasNoOwner() {
+        ConsistentHashRing<String> ring = ring(1);
+        ring.remove("http://shard0:8080/indexing");
+
+        assertThat(ring.nodeFor("topic")).isNull();
+        assertThat(ring.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void routerPartitionsTopicsByOwningShard() {
+        IndexingShardRouter router = new IndexingShardRouter(List.of("http://a/indexing", " http://b/indexing", ""), 64);
+        List<String> topics = List.of("news", "sports", "weather", "music", "films", "books");
+
+        Map<String, List<String>> partition = router.partition(topics);
+
+        assertThat(partition).containsOnlyKeys("http://a/indexing", "http://b/indexing");
+        assertThat(partition.values().stream().mapToInt(List::size).sum()).isEqualTo(topics.size());
+        partition.forEach((shard, owned) -> assertThat(owned).allSatisfy(topic -> assertThat(router.shardFor(topic)).isEqualTo(shard)));
+        // Shards owning none of the topics are still listed, so every shard gets registered with
+        assertThat(router.partition(List.of())).containsOnlyKeys("http://a/indexing", "http://b/indexing");
+    }
+}
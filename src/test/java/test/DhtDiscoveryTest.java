@@ -0,0 +1,78 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs three peers on localhost in DHT discovery mode, with no indexing server, and checks that a
+// subscription finds a topic hosted on another peer through the ring, that query_topic answers as the
+// indexing server's does, and that a stopped peer's topic is no longer found once its entry expires
+public class DhtDiscoveryTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        client.close();
+    }
+
+    private String start(String seed) {
+        ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class).run(
+                "--server.port=0", "--peer.discovery.mode=DHT", "--peer.dht.seeds=" + seed,
+                "--peer.dht.interval-ms=100", "--peer.dht.republish-ms=1000", "--logging.level.com.example.p2p=WARN");
+        instances.add(instance);
+        return "http://localhost:" + instance.getEnvironment().getProperty("local.server.port");
+    }
+
+    @Test
+    public void subscribeFindsTopicsThroughTheRing() throws Exception {
+        String first = start("");
+        String second = start(first);
+        String third = start(first);
+        for (String peer : List.of(first, second, third)) {
+            assertThat(post(peer + "/peer/initialize", "")).contains("node_id");
+        }
+
+        post(third + "/peer/create_topic", "weather");
+        awaitContains(first + "/peer/subscribe/weather", "\"status\":\"subscribed\"");
+        assertThat(get(second + "/peer/dht/query_topic/weather")).contains("\"status\":\"found\"", third);
+        assertThat(get(first + "/peer/get_metrics")).contains("\"mode\":\"DHT\"", "average_hops");
+
+        instances.remove(2).close();
+        awaitContains(first + "/peer/subscribe/weather", "Topic not found");
+        assertThat(get(second + "/peer/dht/query_topic/weather")).contains("not_found");
+    }
+
+    private void awaitContains(String url, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!get(url).contains(expected)) {
+            assertThat(System.currentTimeMillis()).as(url + " never returned " + expected).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private String get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String post(String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
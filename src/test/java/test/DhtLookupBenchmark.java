@@ -0,0 +1,161 @@
+package test;
+
+import com.example.p2p.ChordProtocol;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Simulates Chord rings of hundreds of in-process peers, connected by an in-memory transport, and measures
+// topic lookups from random peers: routing hops, and the time a lookup takes in-process. The transport adds
+// no network delay, so the last column estimates it as one round trip per hop plus one to read the entry.
+public class DhtLookupBenchmark {
+
+    private static final int[] PEER_COUNTS = {100, 250, 500, 1000}; // Ring sizes to simulate
+    private static final int TOPICS_PER_PEER = 4; // Topics each peer announces
+    private static final int NUM_LOOKUPS = 20_000; // Topic lookups per ring size
+    private static final long ROUND_MILLIS = 500; // Simulated time between maintenance rounds
+    private static final long REPUBLISH_MILLIS = 10_000; // Simulated time between republishes of a peer's topics
+    private static final double ROUND_TRIP_MILLIS = 1.0; // Assumed network round trip per remote call
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    public static void main(String[] args) {
+        new File(OUTPUT_DIR).mkdir();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/dht_lookup.csv"))) {
+            writer.write("Peers,log2 Peers,Stabilization Rounds,Average Hops,p99 Hops,Max Hops,"
+                    + "Average Lookup us,p99 Lookup us,Failures,Estimated Lookup ms");
+            writer.newLine();
+
+            for (int peers : PEER_COUNTS) {
+                Result result = run(peers);
+                double log2 = Math.log(peers) / Math.log(2);
+                double estimatedMillis = (result.averageHops() + 1) * ROUND_TRIP_MILLIS;
+                System.out.printf("%d peers (log2 %.1f): stable after %d rounds, %.2f hops on average, p99 %d, max %d, "
+                                + "%.1f us per lookup (p99 %.1f us), %d failures, ~%.1f ms with a %.0f ms round trip%n",
+                        peers, log2, result.rounds(), result.averageHops(), result.p99Hops(), result.maxHops(),
+                        result.averageMicros(), result.p99Micros(), result.failures(), estimatedMillis, ROUND_TRIP_MILLIS);
+                writer.write(peers + "," + log2 + "," + result.rounds() + "," + result.averageHops() + ","
+                        + result.p99Hops() + "," + result.maxHops() + "," + result.averageMicros() + ","
+                        + result.p99Micros() + "," + result.failures() + "," + estimatedMillis);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private record Result(int rounds, double averageHops, int p99Hops, int maxHops, double averageMicros,
+                          double p99Micros, int failures) {
+    }
+
+    private static boolean successorsAreCorrect(List<ChordProtocol> ring) {
+        List<ChordProtocol> sorted = new ArrayList<>(ring);
+        sorted.sort((a, b) -> Long.compareUnsigned(a.getSelf().key(), b.getSelf().key()));
+        for (int i = 0; i < sorted.size(); i++) {
+            ChordProtocol.Node expected = sorted.get((i + 1) % sorted.size()).getSelf();
+            if (!sorted.get(i).getNeighbours().successors().get(0).equals(expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Result run(int peerCount) {
+        Map<String, ChordProtocol> peers = new HashMap<>();
+        AtomicLong clock = new AtomicLong();
+        ChordProtocol.Transport transport = new ChordProtocol.Transport() {
+            @Override
+            public ChordProtocol.Step findSuccessor(String address, long key) {
+                return peers.get(address).findSuccessorStep(key);
+            }
+
+            @Override
+            public ChordProtocol.Neighbours neighbours(String address) {
+                return peers.get(address).getNeighbours();
+            }
+
+            @Override
+            public void notify(String address, ChordProtocol.Node candidate) {
+                peers.get(address).handleNotify(candidate);
+            }
+
+            @Override
+            public void put(String address, List<ChordProtocol.Entry> entries) {
+                peers.get(address).handlePut(entries);
+            }
+
+            @Override
+            public void remove(String address, String topic, String nodeId) {
+                peers.get(address).handleRemove(topic, nodeId);
+            }
+
+            @Override
+            public ChordProtocol.Node get(String address, String topic) {
+                return peers.get(address).handleGet(topic);
+            }
+        };
+
+        // Peers join one after another through the first one, with a maintenance round every 16 joins
+        List<ChordProtocol> ring = new ArrayList<>();
+        for (int i = 0; i < peerCount; i++) {
+            ChordProtocol peer = new ChordProtocol("peer" + i, "http://peer" + i + ":8080", List.of("http://peer0:8080"),
+                    transport, 4, REPUBLISH_MILLIS, clock::get);
+            peers.put(peer.getSelf().address(), peer);
+            ring.add(peer);
+            peer.join();
+            List<String> topics = new ArrayList<>();
+            for (int t = 0; t < TOPICS_PER_PEER; t++) {
+                topics.add("peer" + i + ".topic" + t);
+            }
+            peer.announce(topics);
+            if (i % 16 == 15) {
+                clock.addAndGet(ROUND_MILLIS);
+                ring.forEach(ChordProtocol::round);
+            }
+        }
+        // Maintenance until every successor pointer is right, then a pass over the finger tables and a
+        // republish period, so every topic is stored on the peer now responsible for it
+        int rounds = 0;
+        while (!successorsAreCorrect(ring)) {
+            clock.addAndGet(ROUND_MILLIS);
+            ring.forEach(ChordProtocol::round);
+            rounds++;
+        }
+        for (long waited = 0; waited < Math.max(64 * ROUND_MILLIS, REPUBLISH_MILLIS); waited += ROUND_MILLIS) {
+            clock.addAndGet(ROUND_MILLIS);
+            ring.forEach(ChordProtocol::round);
+        }
+
+        Random random = new Random(42);
+        int[] hops = new int[NUM_LOOKUPS];
+        long[] nanos = new long[NUM_LOOKUPS];
+        int failures = 0;
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            int owner = random.nextInt(peerCount);
+            String topic = "peer" + owner + ".topic" + random.nextInt(TOPICS_PER_PEER);
+            ChordProtocol from = ring.get(random.nextInt(peerCount));
+            long start = System.nanoTime();
+            ChordProtocol.Resolution resolution = from.resolve(topic);
+            nanos[i] = System.nanoTime() - start;
+            hops[i] = resolution.hops();
+            if (resolution.owner() == null || !resolution.owner().nodeId().equals("peer" + owner)) {
+                failures++;
+            }
+        }
+
+        Arrays.sort(hops);
+        Arrays.sort(nanos);
+        double averageHops = Arrays.stream(hops).average().orElse(0);
+        double averageMicros = Arrays.stream(nanos).average().orElse(0) / 1_000;
+        return new Result(rounds, averageHops, hops[NUM_LOOKUPS * 99 / 100], hops[NUM_LOOKUPS - 1], averageMicros,
+                nanos[NUM_LOOKUPS * 99 / 100] / 1_000.0, failures);
+    }
+}
@@ -0,0 +1,91 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs three peers on localhost in gossip discovery mode, with no indexing server, and checks that a
+// subscription finds a topic hosted on another peer and that a stopped peer's topic is no longer found
+public class GossipDiscoveryTest {
+
+    private static final Pattern NODE_ID = Pattern.compile("\"node_id\":\"([^\"]+)\"");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        client.close();
+    }
+
+    private String start(String seed) {
+        ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class).run(
+                "--server.port=0", "--peer.discovery.mode=GOSSIP", "--peer.gossip.seeds=" + seed,
+                "--peer.gossip.interval-ms=100", "--peer.gossip.suspect-ms=500", "--logging.level.com.example.p2p=WARN");
+        instances.add(instance);
+        return "http://localhost:" + instance.getEnvironment().getProperty("local.server.port");
+    }
+
+    @Test
+    public void subscribeFindsTopicsThroughGossip() throws Exception {
+        String first = start("");
+        String second = start(first);
+        String third = start(first);
+        Set<String> nodeIds = new HashSet<>();
+        for (String peer : List.of(first, second, third)) {
+            Matcher nodeId = NODE_ID.matcher(post(peer + "/peer/initialize", ""));
+            assertThat(nodeId.find()).isTrue();
+            nodeIds.add(nodeId.group(1));
+        }
+        // Membership is keyed on node IDs, so every process needs its own
+        assertThat(nodeIds).hasSize(3);
+
+        post(third + "/peer/create_topic", "weather");
+        awaitContains(first + "/peer/subscribe/weather", "\"status\":\"subscribed\"");
+        awaitContains(second + "/peer/gossip/members", "weather");
+        for (String nodeId : nodeIds) {
+            awaitContains(second + "/peer/gossip/members", "\"node_id\":\"" + nodeId + "\"");
+        }
+        assertThat(get(first + "/peer/get_metrics")).contains("GOSSIP");
+
+        instances.remove(2).close();
+        awaitContains(first + "/peer/subscribe/weather", "Topic not found");
+        awaitContains(second + "/peer/gossip/members", "DEAD");
+    }
+
+    private void awaitContains(String url, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!get(url).contains(expected)) {
+            assertThat(System.currentTimeMillis()).as(url + " never returned " + expected).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private String get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String post(String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
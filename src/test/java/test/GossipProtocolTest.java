@@ -0,0 +1,182 @@
+package test;
+
+import com.example.p2p.GossipProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the gossip protocol over an in-memory transport, one round per node per simulated interval, and
+// checks how fast every node learns every topic, what that costs in messages, and that a crashed node is
+// declared dead everywhere while one that comes back is not
+public class GossipProtocolTest {
+
+    private static final int NODES = 64;
+    private static final long INTERVAL_MILLIS = 500;
+    private static final long SUSPECT_MILLIS = 3_000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Random random = new Random(42);
+    private final Map<String, GossipProtocol> nodes = new LinkedHashMap<>();
+    private final Set<String> crashed = new HashSet<>();
+
+    private final class InMemoryTransport implements GossipProtocol.Transport {
+
+        private GossipProtocol node(String address) {
+            if (crashed.contains(address)) {
+                throw new IllegalStateException("Connection refused: " + address);
+            }
+            return nodes.get(address);
+        }
+
+        @Override
+        public void ping(String address) {
+            node(address);
+        }
+
+        @Override
+        public boolean pingRequest(String via, String target) {
+            return node(via).handlePingRequest(target);
+        }
+
+        @Override
+        public GossipProtocol.SyncReply sync(String address, GossipProtocol.SyncRequest request) {
+            return node(address).handleSync(request);
+        }
+
+        @Override
+        public void push(String address, List<GossipProtocol.Member> members) {
+            node(address).handlePush(members);
+        }
+    }
+
+    private void startCluster() {
+        InMemoryTransport transport = new InMemoryTransport();
+        for (int i = 0; i < NODES; i++) {
+            String address = "node" + i;
+            // Everyone joins through the first node
+            GossipProtocol node = new GossipProtocol("peer" + i, address, List.of("node0"), transport, 2,
+                    SUSPECT_MILLIS, clock::get, new Random(random.nextLong()));
+            node.announce(List.of("topic" + i));
+            nodes.put(address, node);
+        }
+    }
+
+    private void round() {
+        clock.addAndGet(INTERVAL_MILLIS);
+        List<String> order = new ArrayList<>(nodes.keySet());
+        Collections.shuffle(order, random);
+        for (String address : order) {
+            if (!crashed.contains(address)) {
+                nodes.get(address).round();
+            }
+        }
+    }
+
+    private boolean everyoneResolvesEveryTopic() {
+        for (GossipProtocol node : nodes.values()) {
+            for (int i = 0; i < NODES; i++) {
+                GossipProtocol.Member owner = node.resolve("topic" + i);
+                if (owner == null || !owner.nodeId().equals("peer" + i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private long totalMessages() {
+        return nodes.values().stream().mapToLong(GossipProtocol::getMessageCount).sum();
+    }
+
+    @Test
+    public void everyNodeLearnsEveryTopicInLogarithmicRounds() {
+        startCluster();
+
+        int rounds = 0;
+        while (!everyoneResolvesEveryTopic()) {
+            round();
+            rounds++;
+            assertThat(rounds).as("cluster did not converge").isLessThanOrEqualTo(3 * 6 + 5);
+        }
+        double messagesPerNodePerRound = (double) totalMessages() / NODES / rounds;
+        System.out.printf("%d nodes converged in %d rounds, %.2f messages per node per round%n",
+                NODES, rounds, messagesPerNodePerRound);
+
+        // A ping and a sync, plus a push when the other side is behind
+        assertThat(messagesPerNodePerRound).isLessThanOrEqualTo(3.0);
+
+        // A new topic spreads the same way once the view is complete
+        nodes.get("node5").announce(List.of("topic5", "late-topic"));
+        int spreadRounds = 0;
+        while (nodes.values().stream().anyMatch(node -> node.resolve("late-topic") == null)) {
+            round();
+            spreadRounds++;
+            assertThat(spreadRounds).as("new topic did not spread").isLessThanOrEqualTo(3 * 6 + 5);
+        }
+        System.out.printf("a new topic reached all %d nodes in %d rounds%n", NODES, spreadRounds);
+    }
+
+    @Test
+    public void crashedNodeIsDeclaredDeadAndItsTopicForgotten() {
+        startCluster();
+        while (!everyoneResolvesEveryTopic()) {
+            round();
+        }
+
+        crashed.add("node7");
+        long crashedAt = clock.get();
+        while (nodes.entrySet().stream()
+                .filter(node -> !crashed.contains(node.getKey()))
+                .anyMatch(node -> node.getValue().resolve("topic7") != null)) {
+            round();
+            assertThat(clock.get() - crashedAt).as("crash was never detected").isLessThan(60_000);
+        }
+        System.out.printf("crash detected by all nodes after %d ms%n", clock.get() - crashedAt);
+
+        for (Map.Entry<String, GossipProtocol> node : nodes.entrySet()) {
+            if (!crashed.contains(node.getKey())) {
+                assertThat(node.getValue().getMembers())
+                        .filteredOn(member -> member.nodeId().equals("peer7"))
+                        .extracting(GossipProtocol.Member::status)
+                        .containsExactly(GossipProtocol.Status.DEAD);
+                assertThat(node.getValue().resolve("topic8").nodeId()).isEqualTo("peer8");
+            }
+        }
+    }
+
+    @Test
+    public void nodeThatWasSuspectedRefutesItWhenItAnswersAgain() {
+        startCluster();
+        while (!everyoneResolvesEveryTopic()) {
+            round();
+        }
+
+        // node3 is unreachable only until someone suspects it; its higher incarnation then overrides the suspicion
+        crashed.add("node3");
+        for (int i = 0; i < NODES && nodes.values().stream().noneMatch(this::suspectsPeer3); i++) {
+            round();
+        }
+        crashed.remove("node3");
+        for (int i = 0; i < 20; i++) {
+            round();
+        }
+
+        assertThat(nodes.values()).allSatisfy(node -> assertThat(node.resolve("topic3").nodeId()).isEqualTo("peer3"));
+        assertThat(nodes.get("node3").getMetrics().get("incarnation")).isNotEqualTo(0L);
+    }
+
+    private boolean suspectsPeer3(GossipProtocol node) {
+        return node.getMembers().stream()
+                .anyMatch(member -> member.nodeId().equals("peer3") && member.status() == GossipProtocol.Status.SUSPECT);
+    }
+}
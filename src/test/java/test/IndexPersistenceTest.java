@@ -0,0 +1,107 @@
+package test;
+
+import com.example.p2p.IndexMutation;
+import com.example.p2p.IndexPersistence;
+import com.example.p2p.IndexReplicator;
+import com.example.p2p.IndexingRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks that the indexing registry comes back from its snapshot and write-ahead log after a restart
+public class IndexPersistenceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restartedServerRecoversSnapshotAndLogTail() throws IOException {
+        IndexingRegistry registry = new IndexingRegistry();
+        IndexPersistence persistence = new IndexPersistence(true, directory, false, 10);
+        IndexReplicator replicator = replicator(registry, persistence);
+        for (int i = 0; i < 25; i++) {
+            replicator.register("peer" + i, List.of("topic" + i, "shared" + i % 3), 0, "http://localhost:" + (9000 + i));
+        }
+        replicator.applyDelta("peer1", 0, 1, List.of("music"), List.of("topic1"));
+        List<String> replicas = replicator.assignReplicas("peer3", "topic3", 3);
+        assertThat(replicas).hasSize(2);
+        // peer2's two topics go to two different nodes, one migration each
+        assertThat(replicator.unregister("peer2")).hasSize(2);
+        persistence.close();
+
+        // Snapshots replaced the segments they cover
+        assertThat(files("snapshot-")).hasSize(1);
+        assertThat(files("wal-").size()).isLessThanOrEqualTo(2);
+
+        IndexingRegistry recovered = new IndexingRegistry();
+        IndexPersistence reopened = new IndexPersistence(true, directory, false, 10);
+        IndexReplicator restarted = replicator(recovered, reopened);
+        assertThat(restarted.getStatus()).containsEntry("sequence", 30L);
+        assertThat(recovered.snapshot()).containsExactlyInAnyOrderElementsOf(registry.snapshot());
+        assertThat(recovered.findHost("music")).contains("peer1");
+        assertThat(recovered.findHost("topic1")).isEmpty();
+        assertThat(recovered.getAddress("peer7")).isEqualTo("http://localhost:9007");
+        assertThat(recovered.getReplicas("peer3", "topic3")).isEqualTo(replicas);
+
+        // Mutations after the restart carry on from the recovered sequence
+        restarted.register("peerX", List.of("films"), 0, null);
+        reopened.close();
+        IndexingRegistry again = new IndexingRegistry();
+        IndexPersistence third = new IndexPersistence(true, directory, false, 10);
+        assertThat(third.recover(again).sequence()).isEqualTo(31);
+        assertThat(again.findHost("films")).contains("peerX");
+        third.close();
+    }
+
+    @Test
+    public void tornRecordAtTheEndOfTheLogIsDropped() throws IOException {
+        IndexPersistence persistence = new IndexPersistence(true, directory, false, 1000);
+        persistence.recover(new IndexingRegistry());
+        persistence.append(IndexMutation.register(1, "peerA", List.of("news"), 0, null));
+        persistence.append(IndexMutation.register(2, "peerB", List.of("weather"), 0, null));
+        persistence.close();
+
+        // Cut the second record short, as a crash in the middle of a write would
+        Path segment = files("wal-").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        IndexingRegistry registry = new IndexingRegistry();
+        IndexPersistence reopened = new IndexPersistence(true, directory, false, 1000);
+        IndexPersistence.Recovered recovered = reopened.recover(registry);
+        assertThat(recovered.sequence()).isEqualTo(1);
+        assertThat(registry.findHost("news")).contains("peerA");
+        assertThat(registry.findHost("weather")).isEmpty();
+
+        // The torn bytes are gone, so the next record is readable after another restart
+        reopened.append(IndexMutation.register(2, "peerC", List.of("films"), 0, null));
+        reopened.close();
+        IndexingRegistry again = new IndexingRegistry();
+        IndexPersistence third = new IndexPersistence(true, directory, false, 1000);
+        assertThat(third.recover(again).sequence()).isEqualTo(2);
+        assertThat(again.findHost("films")).contains("peerC");
+        third.close();
+    }
+
+    private static IndexReplicator replicator(IndexingRegistry registry, IndexPersistence persistence) {
+        IndexReplicator replicator = new IndexReplicator(registry, null, persistence, IndexReplicator.Role.STANDALONE, "", List.of(), 1000);
+        replicator.start();
+        return replicator;
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package test;
+
+import com.example.p2p.IndexPersistence;
+import com.example.p2p.IndexReplicator;
+import com.example.p2p.IndexingRegistry;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Measures how long a restarting indexing server takes to rebuild a 1M-topic index from disk. The index
+// is built through the replicator, as the server builds it, and then churned with topic deltas. With
+// snapshots recovery reads the last snapshot plus the log after it; with the log alone it replays the
+// whole history, so its time grows with the churn while the snapshot run's stays flat.
+public class IndexRecoveryBenchmark {
+
+    private static final int NUM_NODES = 10_000; // Registered peer nodes
+    private static final int TOPICS_PER_NODE = 100; // Topics per node, 1M in total
+    private static final int[] CHURN = {0, 100_000, 400_000}; // Topic deltas applied after registration
+    private static final long SNAPSHOT_EVERY = 50_000; // Mutations between snapshots in the snapshot runs
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    public static void main(String[] args) throws Exception {
+        new File(OUTPUT_DIR).mkdir();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/index_recovery.csv"))) {
+            writer.write("Mode,Topics,Mutations,Snapshot Nodes,Replayed Mutations,Disk MB,Recovery ms");
+            writer.newLine();
+
+            for (int churn : CHURN) {
+                for (boolean snapshots : new boolean[]{false, true}) {
+                    String mode = snapshots ? "snapshot+log" : "log only";
+                    Result result = run(churn, snapshots ? SNAPSHOT_EVERY : Long.MAX_VALUE);
+                    System.out.printf("%s, %d mutations: %d snapshot nodes + %d replayed in %d ms (%.1f MB on disk)%n",
+                            mode, NUM_NODES + churn, result.recovered().snapshotNodes(),
+                            result.recovered().replayedMutations(), result.millis(), result.diskMegabytes());
+                    writer.write(mode + "," + result.topics() + "," + (NUM_NODES + churn) + ","
+                            + result.recovered().snapshotNodes() + "," + result.recovered().replayedMutations() + ","
+                            + String.format("%.1f", result.diskMegabytes()) + "," + result.millis());
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private record Result(IndexPersistence.Recovered recovered, long topics, long millis, double diskMegabytes) {
+    }
+
+    private static Result run(int churn, long snapshotEvery) throws IOException {
+        Path directory = Files.createTempDirectory("index-recovery");
+        try {
+            write(directory, churn, snapshotEvery);
+            System.gc();
+
+            IndexingRegistry registry = new IndexingRegistry();
+            IndexPersistence persistence = new IndexPersistence(true, directory, false, snapshotEvery);
+            long start = System.nanoTime();
+            IndexPersistence.Recovered recovered = persistence.recover(registry);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            persistence.close();
+
+            long topics = registry.snapshot().stream().mapToLong(node -> node.topics().size()).sum();
+            return new Result(recovered, topics, millis, size(directory) / (1024.0 * 1024.0));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // Builds the index and its history through the replicator, then shuts it down cleanly
+    private static void write(Path directory, int churn, long snapshotEvery) throws IOException {
+        IndexPersistence persistence = new IndexPersistence(true, directory, false, snapshotEvery);
+        IndexReplicator replicator = new IndexReplicator(new IndexingRegistry(), null, persistence,
+                IndexReplicator.Role.STANDALONE, "", List.of(), 1000);
+        replicator.start();
+
+        for (int node = 0; node < NUM_NODES; node++) {
+            List<String> topics = new ArrayList<>(TOPICS_PER_NODE);
+            for (int i = 0; i < TOPICS_PER_NODE; i++) {
+                topics.add("topic-" + node + "-" + i);
+            }
+            replicator.register("peer" + node, topics, 0, "http://localhost:" + (10_000 + node));
+        }
+
+        // Each delta swaps one of a node's topics for a new one, keeping the index at 1M topics
+        long[] versions = new long[NUM_NODES];
+        for (int i = 0; i < churn; i++) {
+            int node = i % NUM_NODES;
+            int slot = (i / NUM_NODES) % TOPICS_PER_NODE;
+            long round = i / NUM_NODES;
+            String removed = round < TOPICS_PER_NODE ? "topic-" + node + "-" + slot : "churn-" + node + "-" + (round - TOPICS_PER_NODE);
+            replicator.applyDelta("peer" + node, versions[node], versions[node] + 1,
+                    List.of("churn-" + node + "-" + round), List.of(removed));
+            versions[node]++;
+        }
+        persistence.close();
+    }
+
+    private static long size(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
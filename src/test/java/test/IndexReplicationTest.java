@@ -0,0 +1,138 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import com.example.p2p.TopicLocation;
+import com.example.p2p.TopicResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs a leader and two follower indexing servers on localhost and checks that index changes reach the
+// followers, that followers refuse writes, and that the index survives a leader restart
+public class IndexReplicationTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        client.close();
+    }
+
+    private ConfigurableApplicationContext start(String... args) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--indexing.replication.poll-ms=50",
+                "--logging.level.com.example.p2p=WARN"));
+        arguments.addAll(List.of(args));
+        ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class)
+                .run(arguments.toArray(String[]::new));
+        instances.add(instance);
+        return instance;
+    }
+
+    private static String url(ConfigurableApplicationContext instance) {
+        return "http://localhost:" + instance.getEnvironment().getProperty("local.server.port") + "/indexing";
+    }
+
+    @Test
+    public void followersReplayTheLeadersChangesAndSurviveItsRestart() throws Exception {
+        ConfigurableApplicationContext leader = start("--server.port=0", "--indexing.replication.role=LEADER");
+        String leaderUrl = url(leader);
+        String leaderPort = leader.getEnvironment().getProperty("local.server.port");
+        ConfigurableApplicationContext follower1 = start("--server.port=0",
+                "--indexing.replication.role=FOLLOWER", "--indexing.replication.leader-url=" + leaderUrl);
+        ConfigurableApplicationContext follower2 = start("--server.port=0",
+                "--indexing.replication.role=FOLLOWER", "--indexing.replication.leader-url=" + leaderUrl);
+        List<String> followers = List.of(url(follower1), url(follower2));
+
+        post(leaderUrl + "/register", "{\"node_id\":\"peerA\",\"topics\":[\"news\",\"sports\"],\"host\":\"localhost\",\"port\":9001}");
+        post(leaderUrl + "/register", "{\"node_id\":\"peerB\",\"topics\":[\"weather\"],\"host\":\"localhost\",\"port\":9002}");
+        post(leaderUrl + "/update_topics_delta", "{\"node_id\":\"peerB\",\"base_version\":0,\"version\":1,\"added\":[\"music\"],\"removed\":[]}");
+        post(leaderUrl + "/unregister", "{\"node_id\":\"peerA\"}");
+
+        // peerA's topics migrated to peerB on the leader, and the followers agree
+        for (String follower : followers) {
+            await(() -> get(follower + "/query_topic/music").contains("peerB")
+                    && get(follower + "/query_topic/news").contains("peerB"));
+            assertThat(get(follower + "/query_topic/sports")).contains("\"node_id\":\"peerB\"", "http://localhost:9002");
+        }
+        assertThat(get(followers.get(0) + "/replication/status")).contains("\"sequence\":5");
+
+        // Followers only serve reads
+        assertThat(post(followers.get(0) + "/register", "{\"node_id\":\"peerC\",\"topics\":[\"films\"]}"))
+                .contains("Not the leader", leaderUrl);
+
+        // The leader restarts empty on the same port and recovers the index from its followers
+        leader.close();
+        instances.remove(leader);
+        assertThat(get(followers.get(1) + "/query_topic/weather")).contains("peerB");
+        ConfigurableApplicationContext restarted = start("--server.port=" + leaderPort, "--indexing.replication.role=LEADER",
+                "--indexing.replication.replicas=" + String.join(",", followers));
+        assertThat(get(url(restarted) + "/query_topic/news")).contains("peerB");
+
+        // Followers move to the new leader's epoch and keep replicating
+        post(leaderUrl + "/register", "{\"node_id\":\"peerC\",\"topics\":[\"films\"],\"host\":\"localhost\",\"port\":9003}");
+        for (String follower : followers) {
+            await(() -> get(follower + "/query_topic/films").contains("peerC"));
+            assertThat(get(follower + "/query_topic/weather")).contains("peerB");
+        }
+    }
+
+    @Test
+    public void topicsAFollowerHasNotSeenYetAreLookedUpOnTheLeader() throws Exception {
+        ConfigurableApplicationContext leader = start("--server.port=0", "--indexing.replication.role=LEADER");
+        // A follower that never hears from its leader, so it lags behind every change
+        ConfigurableApplicationContext lagging = start("--server.port=0",
+                "--indexing.replication.role=FOLLOWER", "--indexing.replication.leader-url=http://localhost:1/indexing");
+        ConfigurableApplicationContext peer = start("--server.port=0",
+                "--peer.indexing.shards=" + url(leader) + "|" + url(lagging));
+        post(url(leader) + "/register", "{\"node_id\":\"peerA\",\"topics\":[\"news\"],\"host\":\"localhost\",\"port\":9001}");
+
+        // Lookups alternate between the replicas; each one still finds the topic
+        TopicResolver resolver = peer.getBean(TopicResolver.class);
+        for (int i = 0; i < 4; i++) {
+            resolver.invalidate("news");
+            TopicLocation location = resolver.resolve("news").get(5, TimeUnit.SECONDS);
+            assertThat(location).isNotNull();
+            assertThat(location.nodeId()).isEqualTo("peerA");
+        }
+        assertThat(resolver.resolve("missing").get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    private String get(String url) {
+        try {
+            return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String post(String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
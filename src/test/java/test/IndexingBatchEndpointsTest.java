@@ -0,0 +1,80 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs an indexing server on localhost and checks the batch endpoints, and that they and topic deltas
+// reject requests with missing or malformed fields
+public class IndexingBatchEndpointsTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ConfigurableApplicationContext instance;
+    private String indexing;
+
+    @BeforeEach
+    public void start() {
+        instance = new SpringApplicationBuilder(P2PSystemApplication.class)
+                .run("--server.port=0", "--logging.level.com.example.p2p=WARN");
+        indexing = "http://localhost:" + instance.getEnvironment().getProperty("local.server.port") + "/indexing";
+    }
+
+    @AfterEach
+    public void stop() {
+        instance.close();
+        client.close();
+    }
+
+    @Test
+    public void batchEndpointsRegisterUpdateAndQueryManyNodes() throws Exception {
+        assertThat(post("/register_batch", "{\"nodes\":[{\"node_id\":\"a\",\"topics\":[\"t1\"]},"
+                + "{\"node_id\":\"b\",\"topics\":[\"t2\"]}]}"))
+                .contains("\"status\":\"success\"", "\"node_id\":\"a\"", "\"node_id\":\"b\"");
+        assertThat(post("/update_topics_batch", "{\"nodes\":[{\"node_id\":\"a\",\"topics\":[\"t3\"]},"
+                + "{\"node_id\":\"unknown\",\"topics\":[]}]}"))
+                .contains("\"status\":\"updated\"", "Node not found");
+
+        String results = post("/query_topics", "{\"topics\":[\"t1\",\"t2\",\"t3\"]}");
+        assertThat(results).contains("\"status\":\"success\"", "\"node_id\":\"b\"", "\"node_id\":\"a\"");
+        assertThat(results.indexOf("\"t1\"")).isLessThan(results.indexOf("\"t2\""));
+    }
+
+    @Test
+    public void malformedRequestsAreRejected() throws Exception {
+        for (String path : new String[]{"/register_batch", "/update_topics_batch"}) {
+            assertThat(post(path, "{}")).contains("\"status\":\"error\"", "nodes");
+            assertThat(post(path, "{\"nodes\":\"a\"}")).contains("\"status\":\"error\"");
+            // A bad entry fails on its own without failing the batch
+            assertThat(post(path, "{\"nodes\":[{\"topics\":[\"t1\"]},{\"node_id\":\"c\"}]}"))
+                    .contains("\"status\":\"success\"", "Entry needs node_id and topics");
+        }
+        assertThat(post("/query_topics", "{}")).contains("\"status\":\"error\"", "topics");
+
+        // Topic deltas need both versions to be checked against the registry
+        post("/register", "{\"node_id\":\"d\",\"topics\":[\"t4\"]}");
+        assertThat(post("/update_topics_delta", "{\"node_id\":\"d\",\"version\":1,\"added\":[\"t5\"]}"))
+                .contains("\"status\":\"error\"", "base_version");
+        assertThat(post("/update_topics_delta", "{\"node_id\":\"d\",\"base_version\":0,\"added\":[\"t5\"]}"))
+                .contains("\"status\":\"error\"");
+    }
+
+    private String post(String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(indexing + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).as(path + " " + json).isEqualTo(200);
+        return response.body();
+    }
+}
@@ -0,0 +1,141 @@
+package test;
+
+import com.example.p2p.IndexingRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Hammers the indexing registry from many threads at once and checks that no update is lost
+public class IndexingRegistryStressTest {
+
+    private static final int THREADS = 16; // Number of concurrent writer threads
+    private static final int NODES_PER_THREAD = 50; // Number of nodes each thread owns
+    private static final int TOPICS_PER_NODE = 20; // Number of topics each node registers
+    private static final int ROUNDS = 20; // Number of register/update rounds per node
+    private static final int SHARED_TOPICS = 8; // Topics every node competes for
+
+    @Test
+    public void concurrentRegisterAndUpdateLoseNoTopics() throws Exception {
+        IndexingRegistry registry = new IndexingRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        // Each writer thread repeatedly re-registers its own nodes with shifting topic sets,
+        // always finishing on a known final set of private and shared topics
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                start.await();
+                for (int round = 0; round <= ROUNDS; round++) {
+                    for (int n = 0; n < NODES_PER_THREAD; n++) {
+                        String nodeId = nodeId(thread, n);
+                        List<String> topics = topicsFor(nodeId, round);
+                        if (round % 2 == 0) {
+                            registry.register(nodeId, topics);
+                        } else {
+                            registry.updateTopics(nodeId, topics);
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+
+        // A reader thread queries random topics the whole time; with plain HashMaps this
+        // is where ConcurrentModificationException used to surface
+        tasks.add(() -> {
+            start.await();
+            for (int i = 0; i < 200_000; i++) {
+                registry.findHost("shared" + ThreadLocalRandom.current().nextInt(SHARED_TOPICS));
+            }
+            return null;
+        });
+
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get(); // Rethrows anything a worker threw
+        }
+        executor.shutdown();
+
+        // Every node must end up with exactly its final topics, and the inverted index must agree
+        for (int t = 0; t < THREADS; t++) {
+            for (int n = 0; n < NODES_PER_THREAD; n++) {
+                String nodeId = nodeId(t, n);
+                List<String> expected = topicsFor(nodeId, ROUNDS);
+                assertThat(registry.getTopics(nodeId)).containsExactlyInAnyOrderElementsOf(expected);
+                for (String topic : expected) {
+                    assertThat(registry.findHosts(topic)).contains(nodeId);
+                }
+                // Topics from earlier rounds must have been unindexed
+                assertThat(registry.findHosts(nodeId + "-round" + (ROUNDS - 1) + "-0")).isEmpty();
+            }
+        }
+        for (int s = 0; s < SHARED_TOPICS; s++) {
+            assertThat(registry.findHosts("shared" + s)).hasSize(THREADS * NODES_PER_THREAD);
+        }
+    }
+
+    @Test
+    public void concurrentUnregisterMigratesEveryTopic() throws Exception {
+        IndexingRegistry registry = new IndexingRegistry();
+        int nodes = THREADS * NODES_PER_THREAD;
+        for (int n = 0; n < nodes; n++) {
+            registry.register("node" + n, List.of("topic" + n));
+        }
+        registry.register("survivor", List.of());
+
+        // Unregister every node but the survivor concurrently, migrating its topics each time
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int n = 0; n < nodes; n++) {
+            String nodeId = "node" + n;
+            futures.add(executor.submit(() -> {
+                Set<String> topics = registry.unregister(nodeId);
+                assertThat(topics).isNotNull();
+                assertThat(registry.migrateTopics(topics, 1)).isNotEmpty();
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // All topics must now live on the survivor, both in its topic set and in the index
+        assertThat(registry.getNodeIds()).containsExactly("survivor");
+        assertThat(registry.getTopics("survivor")).hasSize(nodes);
+        for (int n = 0; n < nodes; n++) {
+            assertThat(registry.findHost("topic" + n)).contains("survivor");
+        }
+    }
+
+    private static String nodeId(int thread, int node) {
+        return "node-" + thread + "-" + node;
+    }
+
+    // Builds the topic list a node registers in a given round
+    private static List<String> topicsFor(String nodeId, int round) {
+        List<String> topics = new ArrayList<>();
+        for (int i = 0; i < TOPICS_PER_NODE; i++) {
+            topics.add(nodeId + "-round" + round + "-" + i);
+        }
+        for (int s = 0; s < SHARED_TOPICS; s++) {
+            topics.add("shared" + s);
+        }
+        return topics;
+    }
+}
@@ -0,0 +1,190 @@
+package test;
+
+import com.example.p2p.IndexingRegistry;
+import com.example.p2p.TopicPattern;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks versioned topic deltas, advertised addresses, load-aware migration and topic name queries in the
+// indexing registry
+public class IndexingRegistryTest {
+
+    @Test
+    public void deltaAppliesOnlyOnMatchingBaseVersion() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("peer1", List.of("a"), 1, "http://localhost:8081");
+
+        // A delta from the registered version is applied and advances the version
+        IndexingRegistry.DeltaResult applied = registry.applyDelta("peer1", 1, 2, List.of("b"), List.of());
+        assertThat(applied.applied()).isTrue();
+        assertThat(registry.getTopics("peer1")).containsExactly("a", "b");
+        assertThat(registry.findHost("b")).contains("peer1");
+
+        // Replaying the same delta is acknowledged without changing anything
+        assertThat(registry.applyDelta("peer1", 1, 2, List.of("b"), List.of()).applied()).isTrue();
+        assertThat(registry.getVersion("peer1")).isEqualTo(2);
+
+        // A delta from a version the registry never saw asks for a resync
+        IndexingRegistry.DeltaResult stale = registry.applyDelta("peer1", 5, 6, List.of("c"), List.of());
+        assertThat(stale.applied()).isFalse();
+        assertThat(stale.version()).isEqualTo(2);
+        assertThat(registry.findHost("c")).isEmpty();
+
+        // Removals are applied and unindexed too
+        assertThat(registry.applyDelta("peer1", 2, 3, List.of(), List.of("a")).applied()).isTrue();
+        assertThat(registry.getTopics("peer1")).containsExactly("b");
+        assertThat(registry.findHost("a")).isEmpty();
+    }
+
+    @Test
+    public void deltasStillApplyAfterTheIndexMovesTopicsToANode() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("p1", List.of("a"), 3, "http://localhost:8081");
+
+        // Migration leaves the node's own version alone and marks the index as ahead of it
+        assertThat(registry.migrateTopicsTo("p1", List.of("b"))).isTrue();
+        assertThat(registry.getVersion("p1")).isEqualTo(3);
+        assertThat(registry.isIndexAhead("p1")).isTrue();
+
+        // The node's next delta is applied on top of the moved topic, not mistaken for a replay
+        assertThat(registry.applyDelta("p1", 3, 4, List.of("c"), List.of()).applied()).isTrue();
+        assertThat(registry.findHost("c")).contains("p1");
+        assertThat(registry.getTopics("p1")).containsExactly("a", "b", "c");
+        assertThat(registry.isIndexAhead("p1")).isTrue();
+
+        // Registering its full list again brings the node back in step
+        registry.register("p1", List.of("a", "b", "c"), 5, "http://localhost:8081");
+        assertThat(registry.isIndexAhead("p1")).isFalse();
+    }
+
+    @Test
+    public void deltasStillApplyAfterAnUnversionedTopicUpdate() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("p1", List.of("a"), 3, "http://localhost:8081");
+
+        // A full list sent without a version leaves the node's version alone
+        assertThat(registry.updateTopics("p1", List.of("a", "b"))).isTrue();
+        assertThat(registry.getVersion("p1")).isEqualTo(3);
+        assertThat(registry.isIndexAhead("p1")).isTrue();
+
+        assertThat(registry.applyDelta("p1", 3, 4, List.of("c"), List.of()).applied()).isTrue();
+        assertThat(registry.findHost("c")).contains("p1");
+        assertThat(registry.getTopics("p1")).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    public void reRegisteringAtANewAddressInvalidatesItsTopics() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("peer1", List.of("a", "b"), 1, "http://localhost:8081");
+        long sequence = registry.getInvalidationsSince(0).sequence();
+
+        // Same address: nothing to invalidate
+        registry.register("peer1", List.of("a", "b"), 2, "http://localhost:8081");
+        assertThat(registry.getInvalidationsSince(sequence).topics()).isEmpty();
+
+        // New address: both topics' cached locations are stale
+        registry.register("peer1", List.of("a", "b"), 3, "http://otherhost:8081");
+        assertThat(registry.getInvalidationsSince(sequence).topics()).containsExactlyInAnyOrder("a", "b");
+        assertThat(registry.getAddress("peer1")).isEqualTo("http://otherhost:8081");
+    }
+
+    @Test
+    public void deltaForUnknownNodeRequiresFullRegistration() {
+        IndexingRegistry registry = new IndexingRegistry();
+
+        IndexingRegistry.DeltaResult result = registry.applyDelta("peer1", 0, 1, List.of("a"), List.of());
+        assertThat(result.applied()).isFalse();
+        assertThat(result.version()).isEqualTo(-1);
+    }
+
+    @Test
+    public void orphanedTopicsAreSpreadByReportedLoad() {
+        IndexingRegistry registry = new IndexingRegistry();
+        List<String> orphaned = IntStream.range(0, 40).mapToObj(i -> "orphan" + i).toList();
+        registry.register("departing", orphaned);
+        registry.register("busy", List.of("a", "b"));
+        registry.register("quiet1", List.of("c", "d"));
+        registry.register("quiet2", List.of());
+        registry.reportLoad("departing", new IndexingRegistry.NodeLoad(40, 0));
+        registry.reportLoad("busy", new IndexingRegistry.NodeLoad(100, 20));
+        registry.reportLoad("quiet1", new IndexingRegistry.NodeLoad(0, 0));
+
+        double loadPerTopic = registry.getLoadPerTopic("departing");
+        assertThat(loadPerTopic).isEqualTo(2.0);
+        registry.unregister("departing");
+        Map<String, List<String>> newOwners = registry.migrateTopics(orphaned, loadPerTopic);
+
+        // The quiet nodes share the topics evenly once level, and the busy node gets none
+        assertThat(newOwners).doesNotContainKey("busy");
+        assertThat(newOwners.get("quiet1")).hasSize(20);
+        assertThat(newOwners.get("quiet2")).hasSize(20);
+        assertThat(registry.getLoad("quiet1")).isEqualTo(22.0);
+        assertThat(registry.getLoad("quiet2")).isEqualTo(20.0);
+        for (String topic : orphaned) {
+            assertThat(registry.findHosts(topic)).hasSize(1).isSubsetOf("quiet1", "quiet2");
+        }
+    }
+
+    @Test
+    public void migrationWithNoNodesLeftPlacesNothing() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("only", List.of("a"));
+        registry.unregister("only");
+
+        assertThat(registry.migrateTopics(List.of("a"), 1)).isEmpty();
+        assertThat(registry.findHost("a")).isEmpty();
+        assertThat(registry.reportLoad("only", new IndexingRegistry.NodeLoad(1, 1))).isFalse();
+    }
+
+    @Test
+    public void replicasGoToTheLeastLoadedNodesAndArePromotedWhenTheHostLeaves() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("host", List.of("orders", "plain"));
+        registry.register("busy", List.of("a", "b", "c"));
+        registry.register("quiet1", List.of());
+        registry.register("quiet2", List.of("d"));
+
+        // The host itself is never its own replica, and asking again keeps the replicas already chosen
+        List<String> replicas = registry.chooseReplicas("host", "orders", 2);
+        assertThat(replicas).containsExactly("quiet1", "quiet2");
+        assertThat(registry.setReplicas("host", "orders", replicas)).isTrue();
+        assertThat(registry.setReplicas("busy", "orders", replicas)).isFalse();
+        registry.unregister("quiet1");
+        assertThat(registry.getReplicas("host", "orders")).containsExactly("quiet2");
+        assertThat(registry.chooseReplicas("host", "orders", 2)).containsExactly("quiet2", "busy");
+
+        // The replicated topic moves to its surviving replica; the other goes by load as before
+        Map<String, List<String>> replicaAssignments = registry.getReplicaAssignments("host");
+        Set<String> removed = registry.unregister("host");
+        Map<String, List<String>> newOwners = registry.migrateTopics(removed, 1, replicaAssignments);
+        assertThat(newOwners.get("quiet2")).contains("orders");
+        assertThat(registry.findHost("orders")).contains("quiet2");
+        assertThat(registry.getReplicas("quiet2", "orders")).isEmpty();
+        assertThat(registry.findHost("plain")).isPresent();
+    }
+
+    @Test
+    public void topicNameQueriesFollowRegistrations() {
+        IndexingRegistry registry = new IndexingRegistry();
+        registry.register("peer1", List.of("orders.eu", "payments"));
+        registry.register("peer2", List.of("orders.eu", "orders.us"));
+        long sequence = registry.getCreatedTopicsSince(0).sequence();
+
+        assertThat(registry.findTopicsWithPrefix("orders.", 10).topics()).containsExactly("orders.eu", "orders.us");
+
+        // A topic stays listed while any node still hosts it, and only brand-new names count as created
+        registry.unregister("peer1");
+        assertThat(registry.findTopicsMatching(TopicPattern.compile("#"), 10).topics()).containsExactly("orders.eu", "orders.us");
+        registry.updateTopics("peer2", List.of("orders.us", "orders.eu.created"));
+        assertThat(registry.findTopicsMatching(TopicPattern.compile("orders.*"), 10).topics()).containsExactly("orders.us");
+        assertThat(registry.findTopicsMatching(TopicPattern.compile("orders.#"), 10).topics())
+                .containsExactly("orders.eu.created", "orders.us");
+        assertThat(registry.getCreatedTopicsSince(sequence).topics()).containsExactly("orders.eu.created");
+    }
+}
@@ -0,0 +1,156 @@
+package test;
+
+import com.example.p2p.InterNodeClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Checks the concurrency limit, queueing and timeouts of the shared inter-node client
+public class InterNodeClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/slow", exchange -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            respond(exchange, "{\"status\":\"ok\"}");
+        });
+        // Answers at once but holds back the body, which the request timeout doesn't cover
+        server.createContext("/trickle", exchange -> {
+            concurrent.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.flush();
+                release.await(10, TimeUnit.SECONDS);
+                out.write("{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+        });
+        server.createContext("/echo", exchange -> respond(exchange, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void callsBeyondTheLimitAreQueuedWithoutBlockingTheCaller() throws Exception {
+        InterNodeClient client = new InterNodeClient(new ObjectMapper(), 2000, 10_000, 2, 100, InterNodeClient.WireFormat.JSON, false);
+
+        List<CompletableFuture<Map<String, Object>>> calls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            calls.add(client.getAsync(baseUrl + "/slow"));
+        }
+
+        // Submitting returned immediately; two calls are on the wire and the rest wait their turn
+        waitFor(() -> concurrent.get() == 2);
+        assertThat(client.getMetrics()).containsEntry("in_flight", 2).containsEntry("queued", 4);
+
+        release.countDown();
+        for (CompletableFuture<Map<String, Object>> call : calls) {
+            assertThat(call.get(10, TimeUnit.SECONDS)).containsEntry("status", "ok");
+        }
+        assertThat(maxConcurrent.get()).isEqualTo(2);
+        assertThat(client.getMetrics()).containsEntry("requests", 6L).containsEntry("failures", 0L);
+    }
+
+    @Test
+    public void postSendsJsonAndParsesTheResponse() {
+        InterNodeClient client = new InterNodeClient(new ObjectMapper(), 2000, 5000, 4, 100, InterNodeClient.WireFormat.JSON, false);
+
+        Map<String, Object> response = client.post(baseUrl + "/echo", Map.of("node_id", "peer1", "topics", List.of("a")));
+
+        assertThat(response).containsEntry("node_id", "peer1").containsEntry("topics", List.of("a"));
+    }
+
+    @Test
+    public void slowCallsTimeOutAndAreCountedAsFailures() {
+        InterNodeClient client = new InterNodeClient(new ObjectMapper(), 2000, 200, 4, 100, InterNodeClient.WireFormat.JSON, false);
+
+        assertThatThrownBy(() -> client.getAsync(baseUrl + "/slow").join())
+                .hasCauseInstanceOf(HttpTimeoutException.class);
+        assertThat(client.getMetrics()).containsEntry("failures", 1L);
+    }
+
+    @Test
+    public void aFullQueueRejectsCallsAndQueuedCallsTimeOut() throws Exception {
+        InterNodeClient client = new InterNodeClient(new ObjectMapper(), 2000, 300, 1, 2, InterNodeClient.WireFormat.JSON, false);
+
+        CompletableFuture<Map<String, Object>> inFlight = client.getAsync(baseUrl + "/trickle");
+        waitFor(() -> concurrent.get() == 1);
+        List<CompletableFuture<Map<String, Object>>> queued = List.of(client.getAsync(baseUrl + "/echo"), client.getAsync(baseUrl + "/echo"));
+
+        assertThatThrownBy(() -> client.getAsync(baseUrl + "/echo").join()).hasCauseInstanceOf(RejectedExecutionException.class);
+        for (CompletableFuture<Map<String, Object>> call : queued) {
+            assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(HttpTimeoutException.class)
+                    .hasMessageContaining("free connection");
+        }
+        assertThat(client.getMetrics()).containsEntry("queued", 0).containsEntry("rejected", 3L);
+
+        // The call holding the only connection still finishes, and the client is usable afterwards
+        release.countDown();
+        assertThat(inFlight.get(5, TimeUnit.SECONDS)).containsEntry("status", "ok");
+        assertThat(client.post(baseUrl + "/echo", Map.of("a", 1))).containsEntry("a", 1);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
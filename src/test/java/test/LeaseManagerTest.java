@@ -0,0 +1,67 @@
+package test;
+
+import com.example.p2p.IndexPersistence;
+import com.example.p2p.IndexReplicator;
+import com.example.p2p.IndexingRegistry;
+import com.example.p2p.LeaseManager;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks that nodes whose heartbeats stop are unregistered, with their topics moved, and nobody else
+public class LeaseManagerTest {
+
+    private static final long TTL = 1_000;
+
+    private final IndexingRegistry registry = new IndexingRegistry();
+    private final IndexReplicator replicator = new IndexReplicator(registry, null,
+            new IndexPersistence(false, Path.of("unused"), false, 1), IndexReplicator.Role.STANDALONE, "", List.of(), 1000);
+    private final LeaseManager leases = new LeaseManager(registry, replicator, TTL);
+
+    @Test
+    public void expiresOnlyNodesThatStoppedRenewing() {
+        for (String nodeId : List.of("alive", "crashed", "left")) {
+            replicator.register(nodeId, List.of(nodeId + "-topic"), 0, null);
+            leases.renew(nodeId, 0);
+        }
+        // The live node keeps sending heartbeats, the other stops, and one unregisters cleanly
+        for (long now = 200; now <= 2_000; now += 200) {
+            leases.renew("alive", now);
+        }
+        leases.cancel("left");
+        replicator.unregister("left");
+
+        assertThat(leases.expireDue(999)).isEmpty();
+        assertThat(leases.expireDue(1_000)).containsExactly("crashed");
+        assertThat(registry.getNodeIds()).containsExactly("alive");
+        assertThat(registry.findHost("crashed-topic")).contains("alive");
+
+        // Nothing else is due until the live node's latest lease runs out
+        assertThat(leases.expireDue(2_999)).isEmpty();
+        assertThat(leases.getStatus()).containsEntry("active", 1).containsEntry("expired", 1L);
+        assertThat(leases.expireDue(3_000)).containsExactly("alive");
+    }
+
+    @Test
+    public void checkOnlyPopsDueEntries() {
+        for (int i = 0; i < 10_000; i++) {
+            leases.renew("node" + i, i);
+        }
+        // Ten leases are due; the other 9,990 entries stay queued untouched
+        assertThat(leases.expireDue(TTL + 9)).hasSize(10);
+        assertThat(leases.getStatus()).containsEntry("queued", 9_990).containsEntry("stale_dropped", 0L);
+    }
+
+    @Test
+    public void startGivesRecoveredNodesALease() {
+        registry.register("recovered", List.of("a"));
+        leases.start();
+
+        assertThat(leases.getStatus()).containsEntry("active", 1);
+        assertThat(leases.expireDue(System.currentTimeMillis() + TTL)).containsExactly("recovered");
+        assertThat(registry.getNodeIds()).isEmpty();
+    }
+}
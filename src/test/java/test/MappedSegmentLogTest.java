@@ -0,0 +1,153 @@
+package test;
+
+import com.example.p2p.MappedSegmentLog;
+import com.example.p2p.MessageLog;
+import com.example.p2p.TopicLog;
+import com.example.p2p.TopicStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Checks appends, reads, rolling, retention and recovery of the memory-mapped segment store, and where
+// the topic store puts each topic's segments
+public class MappedSegmentLogTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void recoversMessagesAndGroupOffsetsAfterReopen() {
+        MappedSegmentLog log = new MappedSegmentLog(directory, 4096, HOUR, Long.MAX_VALUE, HOUR);
+        for (int i = 0; i < 100; i++) {
+            assertThat(log.append("message-" + i)).isEqualTo(i);
+        }
+        log.append("");
+        log.commit("group", 42);
+        log.close();
+
+        MappedSegmentLog reopened = new MappedSegmentLog(directory, 4096, HOUR, Long.MAX_VALUE, HOUR);
+        assertThat(reopened.getNextOffset()).isEqualTo(101);
+        assertThat(reopened.getCommittedOffset("group")).isEqualTo(42);
+        assertThat(reopened.read(42, 2)).extracting(MessageLog.Record::message).containsExactly("message-42", "message-43");
+        assertThat(reopened.read(100, 10)).extracting(MessageLog.Record::message).containsExactly("");
+
+        // New appends continue after the recovered offsets
+        assertThat(reopened.append("after-restart")).isEqualTo(101);
+        assertThat(reopened.read(101, 1)).extracting(MessageLog.Record::message).containsExactly("after-restart");
+    }
+
+    @Test
+    public void rollsSegmentsAndReadsAcrossThem() {
+        MappedSegmentLog log = new MappedSegmentLog(directory, 256, HOUR, Long.MAX_VALUE, HOUR);
+        for (int i = 0; i < 50; i++) {
+            log.append("m" + i);
+        }
+
+        assertThat(log.getSegmentCount()).isGreaterThan(1);
+        List<MessageLog.Record> records = log.read(0, 100);
+        assertThat(records).hasSize(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(records.get(i).offset()).isEqualTo(i);
+            assertThat(records.get(i).message()).isEqualTo("m" + i);
+        }
+    }
+
+    @Test
+    public void deletesOldestSegmentsBeyondRetentionSize() {
+        MappedSegmentLog log = new MappedSegmentLog(directory, 256, HOUR, 3 * 256, HOUR);
+        for (int i = 0; i < 200; i++) {
+            log.append("m" + i);
+        }
+
+        assertThat(log.getSegmentCount()).isLessThanOrEqualTo(3);
+        assertThat(log.getHeadOffset()).isGreaterThan(0);
+        assertThat(log.getDroppedCount()).isEqualTo(log.getHeadOffset());
+        assertThat(log.read(0, 1).get(0).offset()).isEqualTo(log.getHeadOffset());
+
+        MappedSegmentLog reopened = new MappedSegmentLog(directory, 256, HOUR, 3 * 256, HOUR);
+        assertThat(reopened.getHeadOffset()).isEqualTo(log.getHeadOffset());
+        assertThat(reopened.getNextOffset()).isEqualTo(200);
+    }
+
+    @Test
+    public void idleLogsStillDeleteExpiredSegments() throws Exception {
+        MappedSegmentLog log = new MappedSegmentLog(directory, 4096, 50, Long.MAX_VALUE, 100);
+        for (int i = 0; i < 3; i++) {
+            log.append("m" + i);
+        }
+        log.enforceRetention();
+        assertThat(log.size()).isEqualTo(3);
+
+        // Nothing is appended, yet the segment ages out
+        Thread.sleep(200);
+        log.enforceRetention();
+        assertThat(log.size()).isZero();
+        assertThat(log.getHeadOffset()).isEqualTo(3);
+        assertThat(log.getSegmentCount()).isEqualTo(1);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(path -> path.toString().endsWith(".log"))).hasSize(1);
+        }
+        assertThat(log.append("m3")).isEqualTo(3);
+    }
+
+    @Test
+    public void rejectsMessagesLargerThanASegment() {
+        MappedSegmentLog log = new MappedSegmentLog(directory, 64, HOUR, Long.MAX_VALUE, HOUR);
+
+        assertThat(log.append("x".repeat(100))).isEqualTo(-1);
+        assertThat(log.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void skipToKeepsOffsetsAcrossTheGapAndAfterReopen() {
+        MappedSegmentLog log = new MappedSegmentLog(directory, 4096, HOUR, Long.MAX_VALUE, HOUR);
+        // An empty log starts at the skipped-to offset
+        log.skipTo(10);
+        assertThat(log.getHeadOffset()).isEqualTo(10);
+        assertThat(log.append("m10")).isEqualTo(10);
+        log.append("m11");
+
+        log.skipTo(20);
+        assertThat(log.append("m20")).isEqualTo(20);
+        assertThat(log.read(0, 10)).extracting(MessageLog.Record::offset).containsExactly(10L, 11L, 20L);
+        assertThat(log.read(15, 10)).extracting(MessageLog.Record::message).containsExactly("m20");
+        log.close();
+
+        MappedSegmentLog reopened = new MappedSegmentLog(directory, 4096, HOUR, Long.MAX_VALUE, HOUR);
+        assertThat(reopened.getNextOffset()).isEqualTo(21);
+        assertThat(reopened.read(0, 10)).extracting(MessageLog.Record::offset).containsExactly(10L, 11L, 20L);
+    }
+
+    @Test
+    public void topicNamesStayInsideTheStorageDirectory() throws Exception {
+        Path storage = directory.resolve("topics");
+        TopicStore store = new TopicStore(TopicStore.StorageMode.MMAP, 4, TopicLog.OverflowPolicy.REJECT, 0, 0,
+                storage.toString(), 4096, HOUR, Long.MAX_VALUE, HOUR);
+        for (String topic : List.of(".", "..", "a/../b", "orders.eu")) {
+            assertThat(store.validateTopicName(topic)).isNull();
+            store.create(topic).append(topic);
+        }
+        assertThat(store.validateTopicName("")).isNotNull();
+        assertThat(store.validateTopicName("x".repeat(256))).isNotNull();
+        assertThatThrownBy(() -> store.create("x".repeat(256))).isInstanceOf(IllegalArgumentException.class);
+        store.close();
+
+        try (var entries = Files.list(directory)) {
+            assertThat(entries).containsExactly(storage);
+        }
+        TopicStore reopened = new TopicStore(TopicStore.StorageMode.MMAP, 4, TopicLog.OverflowPolicy.REJECT, 0, 0,
+                storage.toString(), 4096, HOUR, Long.MAX_VALUE, HOUR);
+        assertThat(reopened.getTopics()).containsExactlyInAnyOrder(".", "..", "a/../b", "orders.eu");
+        assertThat(reopened.get("..").read(0, 1)).extracting(MessageLog.Record::message).containsExactly("..");
+        reopened.close();
+    }
+}
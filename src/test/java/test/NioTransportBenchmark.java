@@ -0,0 +1,135 @@
+package test;
+
+import com.example.p2p.NioTransportClient;
+import com.example.p2p.NioTransportServer;
+import com.example.p2p.P2PSystemApplication;
+import com.example.p2p.PublishRequest;
+import com.example.p2p.PublishResponse;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compares publish throughput over the REST endpoint with publish over the socket transport on the
+// same node. HTTP clients each wait for their response; the socket transport shares one connection
+// and pipelines a window of requests.
+public class NioTransportBenchmark {
+
+    private static final String TOPIC = "benchmarkTopic"; // Topic hosted by the node
+    private static final int NUM_CLIENTS = 64; // Concurrent HTTP clients
+    private static final int MESSAGES = 100_000; // Messages published per transport
+    private static final int PIPELINE_WINDOW = 256; // Socket transport requests in flight at once
+    private static final String MESSAGE = "{\"celsius\":21.5,\"sensor\":\"kitchen\"}";
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    public static void main(String[] args) throws Exception {
+        try (ConfigurableApplicationContext node = new SpringApplicationBuilder(P2PSystemApplication.class).run(
+                "--server.port=0",
+                "--peer.nio.enabled=true",
+                "--peer.nio.port=0",
+                "--peer.topic.capacity=262144",
+                "--logging.level.com.example.p2p=WARN");
+             HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            String url = "http://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/peer";
+            int nioPort = node.getBean(NioTransportServer.class).getPort();
+
+            post(httpClient, url + "/initialize?indexServerIp=localhost&indexServerPort="
+                    + node.getEnvironment().getProperty("local.server.port"), "text/plain", "");
+            post(httpClient, url + "/register_with_indexing_server", "text/plain", "");
+            post(httpClient, url + "/create_topic", "text/plain", TOPIC);
+
+            double httpRate = publishOverHttp(httpClient, url);
+            double nioRate;
+            try (NioTransportClient nioClient = new NioTransportClient("localhost", nioPort, 65536)) {
+                nioRate = publishOverNio(nioClient);
+            }
+            System.out.printf("http: %.0f publishes/sec, nio: %.0f publishes/sec%n", httpRate, nioRate);
+
+            new File(OUTPUT_DIR).mkdir();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/nio_transport.csv"))) {
+                writer.write("Transport,Messages,Publishes per Second");
+                writer.newLine();
+                writer.write("http," + MESSAGES + "," + httpRate);
+                writer.newLine();
+                writer.write("nio," + MESSAGES + "," + nioRate);
+                writer.newLine();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static double publishOverHttp(HttpClient client, String url) throws Exception {
+        String body = "{\"topic\":\"" + TOPIC + "\",\"message\":\"" + MESSAGE.replace("\"", "\\\"") + "\"}";
+        AtomicLong failures = new AtomicLong();
+        long startTime = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < NUM_CLIENTS; c++) {
+                clients.submit(() -> {
+                    for (int i = 0; i < MESSAGES / NUM_CLIENTS; i++) {
+                        try {
+                            if (!post(client, url + "/publish", "application/json", body).contains("published")) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(10, TimeUnit.MINUTES);
+        }
+        report("http", failures.get());
+        return MESSAGES / ((System.nanoTime() - startTime) / 1_000_000_000.0);
+    }
+
+    private static double publishOverNio(NioTransportClient client) throws Exception {
+        PublishRequest request = new PublishRequest(TOPIC, MESSAGE);
+        long failures = 0;
+        long startTime = System.nanoTime();
+        List<CompletableFuture<PublishResponse>> window = new ArrayList<>(PIPELINE_WINDOW);
+        for (int i = 0; i < MESSAGES; i++) {
+            window.add(client.publish(request));
+            if (window.size() == PIPELINE_WINDOW || i == MESSAGES - 1) {
+                for (CompletableFuture<PublishResponse> response : window) {
+                    if (!"published".equals(response.get(10, TimeUnit.SECONDS).status())) {
+                        failures++;
+                    }
+                }
+                window.clear();
+            }
+        }
+        double rate = MESSAGES / ((System.nanoTime() - startTime) / 1_000_000_000.0);
+        report("nio", failures);
+        return rate;
+    }
+
+    private static void report(String transport, long failures) {
+        if (failures > 0) {
+            System.out.println(transport + ": " + failures + " failed publishes");
+        }
+    }
+
+    private static String post(HttpClient client, String url, String contentType, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
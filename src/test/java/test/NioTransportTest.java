@@ -0,0 +1,194 @@
+package test;
+
+import com.example.p2p.NioTransportClient;
+import com.example.p2p.NioTransportServer;
+import com.example.p2p.PublishRequest;
+import com.example.p2p.PublishResponse;
+import com.example.p2p.PullRequest;
+import com.example.p2p.PullResponse;
+import com.example.p2p.SubscribeRequest;
+import com.example.p2p.SubscribeResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Checks framing, pipelining and error handling of the socket transport against an in-memory handler
+public class NioTransportTest {
+
+    private static final int MAX_FRAME_BYTES = 4096;
+
+    private final Map<String, List<String>> topics = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> quorumAcknowledged = new CompletableFuture<>();
+    private NioTransportServer server;
+    private NioTransportClient client;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = new NioTransportServer(new NioTransportServer.Handler() {
+            @Override
+            public CompletableFuture<PublishResponse> publish(PublishRequest request) {
+                if (request.topic().equals("quorum")) {
+                    // Waits for replicas that acknowledge later, as a QUORUM publish does
+                    return quorumAcknowledged.thenApply(ignored -> PublishResponse.published("quorum", 0));
+                }
+                List<String> log = topics.get(request.topic());
+                if (log == null) {
+                    return CompletableFuture.completedFuture(PublishResponse.error("Topic not hosted here"));
+                }
+                synchronized (log) {
+                    log.add(request.message());
+                    return CompletableFuture.completedFuture(PublishResponse.published(request.topic(), log.size() - 1));
+                }
+            }
+
+            @Override
+            public PullResponse pull(PullRequest request) {
+                List<String> log = topics.get(request.topic());
+                if (log == null) {
+                    return PullResponse.error("Topic not hosted here");
+                }
+                synchronized (log) {
+                    int from = request.fromOffset() == null ? 0 : request.fromOffset().intValue();
+                    int to = Math.min(log.size(), from + (request.maxMessages() == null ? 100 : request.maxMessages()));
+                    if (from >= to) {
+                        return PullResponse.empty((long) log.size());
+                    }
+                    List<Long> offsets = new ArrayList<>();
+                    for (long offset = from; offset < to; offset++) {
+                        offsets.add(offset);
+                    }
+                    return PullResponse.success(new ArrayList<>(log.subList(from, to)), offsets, (long) to);
+                }
+            }
+
+            @Override
+            public CompletableFuture<SubscribeResponse> forward(SubscribeRequest request) {
+                // Completes on another thread, like a subscription forwarded on to another peer
+                return CompletableFuture.supplyAsync(() -> request.via().contains("peer9")
+                        ? SubscribeResponse.error("Subscription forwarding loop detected")
+                        : SubscribeResponse.subscribed(request.topic(), "peer" + request.hops()));
+            }
+        }, 0, MAX_FRAME_BYTES);
+        server.start();
+        client = new NioTransportClient("localhost", server.getPort(), MAX_FRAME_BYTES);
+        topics.put("news", new CopyOnWriteArrayList<>());
+    }
+
+    @AfterEach
+    public void stop() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void publishesAndPullsMessages() throws Exception {
+        assertThat(client.publish(new PublishRequest("news", "first")).get(5, TimeUnit.SECONDS))
+                .isEqualTo(PublishResponse.published("news", 0));
+        assertThat(client.publish(new PublishRequest("news", "second")).get(5, TimeUnit.SECONDS))
+                .isEqualTo(PublishResponse.published("news", 1));
+        assertThat(client.publish(new PublishRequest("sports", "score")).get(5, TimeUnit.SECONDS))
+                .isEqualTo(PublishResponse.error("Topic not hosted here"));
+
+        PullResponse pulled = client.pull(new PullRequest("news", 0L, 10, null)).get(5, TimeUnit.SECONDS);
+        assertThat(pulled).isEqualTo(PullResponse.success(List.of("first", "second"), List.of(0L, 1L), 2L));
+        assertThat(client.pull(new PullRequest("news", 2L, null, "group")).get(5, TimeUnit.SECONDS))
+                .isEqualTo(PullResponse.empty(2L));
+    }
+
+    @Test
+    public void publishWaitingForReplicasDoesNotHoldUpOtherRequests() throws Exception {
+        CompletableFuture<PublishResponse> waiting = client.publish(new PublishRequest("quorum", "replicated"));
+
+        // The selector thread keeps serving this connection and others meanwhile
+        assertThat(client.publish(new PublishRequest("news", "first")).get(5, TimeUnit.SECONDS))
+                .isEqualTo(PublishResponse.published("news", 0));
+        try (NioTransportClient other = new NioTransportClient("localhost", server.getPort(), MAX_FRAME_BYTES)) {
+            assertThat(other.pull(new PullRequest("news", 0L, 10, null)).get(5, TimeUnit.SECONDS).messages()).containsExactly("first");
+        }
+        assertThat(waiting).isNotDone();
+
+        quorumAcknowledged.complete(null);
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(PublishResponse.published("quorum", 0));
+    }
+
+    @Test
+    public void forwardsSubscriptionsCompletedAsynchronously() throws Exception {
+        assertThat(client.forward(new SubscribeRequest("news", 1, List.of("peer2"))).get(5, TimeUnit.SECONDS))
+                .isEqualTo(SubscribeResponse.subscribed("news", "peer1"));
+        assertThat(client.forward(new SubscribeRequest("news", 2, List.of("peer2", "peer9"))).get(5, TimeUnit.SECONDS))
+                .isEqualTo(SubscribeResponse.error("Subscription forwarding loop detected"));
+    }
+
+    @Test
+    public void matchesPipelinedRepliesToTheirRequests() throws Exception {
+        int requests = 10_000;
+        List<CompletableFuture<PublishResponse>> publishes = new ArrayList<>();
+        Map<Integer, CompletableFuture<SubscribeResponse>> forwards = new ConcurrentHashMap<>();
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int first = t * requests / 4;
+            senders.add(Thread.ofPlatform().start(() -> {
+                for (int i = first; i < first + requests / 4; i++) {
+                    CompletableFuture<PublishResponse> publish = client.publish(new PublishRequest("news", "message " + i));
+                    forwards.put(i, client.forward(new SubscribeRequest("news", i, List.of())));
+                    synchronized (publishes) {
+                        publishes.add(publish);
+                    }
+                }
+            }));
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        CompletableFuture.allOf(publishes.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        CompletableFuture.allOf(forwards.values().toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        assertThat(publishes).allSatisfy(f -> assertThat(f.join().status()).isEqualTo("published"));
+        assertThat(publishes.stream().map(f -> f.join().offset()).distinct().count()).isEqualTo(requests);
+        // Each forward's reply names the hops it was sent with
+        assertThat(forwards).allSatisfy((hops, f) -> assertThat(f.join()).isEqualTo(SubscribeResponse.subscribed("news", "peer" + hops)));
+        assertThat(topics.get("news")).hasSize(requests);
+        assertThat(server.getMetrics().get("frames_received")).isEqualTo(2L * requests);
+    }
+
+    @Test
+    public void answersOversizedRepliesWithAnError() {
+        topics.put("big", new CopyOnWriteArrayList<>(List.of("x".repeat(MAX_FRAME_BYTES))));
+
+        assertThatThrownBy(() -> client.pull(new PullRequest("big", 0L, 1, null)).get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("exceeds the frame limit");
+    }
+
+    @Test
+    public void closesConnectionsSendingOversizedFrames() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAX_FRAME_BYTES * 2).array());
+            out.flush();
+            socket.setSoTimeout(5000);
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+        }
+        assertThat(server.getMetrics().get("protocol_errors")).isEqualTo(1L);
+
+        // Other connections are unaffected
+        assertThat(client.publish(new PublishRequest("news", "still up")).get(5, TimeUnit.SECONDS).status())
+                .isEqualTo("published");
+    }
+}
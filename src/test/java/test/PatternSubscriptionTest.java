@@ -0,0 +1,94 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs two peers on localhost, one of them also serving the index, and checks that the index answers prefix
+// and wildcard queries and that a pattern subscription picks up matching topics, including ones created later
+public class PatternSubscriptionTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        client.close();
+    }
+
+    private String start() {
+        ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class).run(
+                "--server.port=0", "--peer.pattern.poll-ms=100", "--peer.load.report-ms=600000",
+                "--logging.level.com.example.p2p=WARN");
+        instances.add(instance);
+        return "http://localhost:" + instance.getEnvironment().getProperty("local.server.port");
+    }
+
+    @Test
+    public void patternSubscriptionPicksUpNewTopics() throws Exception {
+        String indexing = start();
+        String subscriber = start();
+        String port = indexing.substring(indexing.lastIndexOf(':') + 1);
+        for (String peer : List.of(indexing, subscriber)) {
+            assertThat(post(peer + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, "")).contains("node_id");
+            post(peer + "/peer/register_with_indexing_server", "");
+        }
+        for (String topic : List.of("orders.eu", "orders.eu.created", "payments")) {
+            post(indexing + "/peer/create_topic", topic);
+        }
+
+        assertThat(get(indexing + "/indexing/query_prefix?prefix=orders.")).contains("orders.eu", "orders.eu.created")
+                .doesNotContain("payments");
+        assertThat(get(indexing + "/indexing/query_pattern?pattern=orders.*&limit=1"))
+                .contains("\"topic\":\"orders.eu\"", "\"truncated\":false", indexing);
+        assertThat(get(indexing + "/indexing/query_prefix?prefix=orders.&limit=-1")).contains("\"status\":\"error\"");
+        assertThat(get(indexing + "/indexing/query_pattern?pattern=orders.*&limit=-1")).contains("\"status\":\"error\"");
+
+        assertThat(post(subscriber + "/peer/subscribe_pattern?pattern=orders.*", ""))
+                .contains("\"status\":\"subscribed\"", "orders.eu").doesNotContain("orders.eu.created");
+        assertThat(post(subscriber + "/peer/subscribe_pattern?pattern=orders.%23", ""))
+                .contains("orders.eu", "orders.eu.created").doesNotContain("payments");
+
+        // A topic created later is picked up by the next poll of the index, on both patterns
+        post(indexing + "/peer/create_topic", "orders.us");
+        awaitContains(subscriber + "/peer/get_metrics", "\"orders.*\":[\"orders.eu\",\"orders.us\"]");
+        awaitContains(subscriber + "/peer/get_metrics", "\"orders.#\":[\"orders.eu\",\"orders.eu.created\",\"orders.us\"]");
+
+        assertThat(post(subscriber + "/peer/unsubscribe_pattern?pattern=orders.*", "")).contains("\"status\":\"unsubscribed\"");
+        post(indexing + "/peer/create_topic", "orders.asia");
+        awaitContains(subscriber + "/peer/get_metrics", "orders.asia");
+        assertThat(get(subscriber + "/peer/get_metrics")).doesNotContain("\"orders.*\"");
+    }
+
+    private void awaitContains(String url, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!get(url).contains(expected)) {
+            assertThat(System.currentTimeMillis()).as(url + " never returned " + expected).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private String get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String post(String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -16,6 +16,7 @@ public class PeerNetworkTestRequirement2 {
     private static final int REQUESTS_PER_NODE = 1000; // Number of requests each peer node will make
     private static final int[] CONCURRENT_NODES = {2, 4, 8, 10, 12, 14, 16, 18, 20}; // Array of peer node counts to test with
     private static final int NUM_TOPICS = 1000; // Number of topics to be pre-registered in the indexing server
+    private static final int REGISTRATION_BATCH_SIZE = 250; // Number of nodes registered per batch request
 
     private static final RestTemplate restTemplate = new RestTemplate(); // RestTemplate object for making HTTP requests
 
@@ -50,16 +51,23 @@ public class PeerNetworkTestRequirement2 {
 
     // Method to initialize the indexing server by registering 1000 topics
     private static void initializeIndexingServer() {
+        List<Map<String, Object>> batch = new ArrayList<>();
         for (int i = 1; i <= NUM_TOPICS; i++) {
             // Generate a topic name for each iteration
             String topic = "topic" + i;
 
-            // Register the topic with the indexing server by making a POST request
-            restTemplate.postForObject(
-                    INDEXING_SERVER_URL + "/register",
-                    Map.of("node_id", "peer" + i, "topics", List.of(topic)),
-                    Map.class
-            );
+            // Queue the node and its topic for the next batch registration
+            batch.add(Map.of("node_id", "peer" + i, "topics", List.of(topic)));
+
+            // Register a full batch with the indexing server in a single POST request
+            if (batch.size() == REGISTRATION_BATCH_SIZE || i == NUM_TOPICS) {
+                restTemplate.postForObject(
+                        INDEXING_SERVER_URL + "/register_batch",
+                        Map.of("nodes", batch),
+                        Map.class
+                );
+                batch = new ArrayList<>();
+            }
         }
         // Print out confirmation that the indexing server has been initialized with topics
         System.out.println("Indexing server initialized with " + NUM_TOPICS + " topics.");
@@ -0,0 +1,82 @@
+package test;
+
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Compares messages per second of the single-message publish endpoint with the batch publish endpoint
+public class PublishBatchBenchmark {
+
+    private static final String BASE_URL = "http://localhost:8080/peer"; // Peer node under test
+    private static final String TOPIC = "benchmarkTopic"; // Topic created and published to by the benchmark
+    private static final int NUM_CLIENTS = 8; // Number of concurrent publishing clients
+    private static final int MESSAGES_PER_CLIENT = 5000; // Messages each client publishes per run
+    private static final int[] BATCH_SIZES = {10, 100, 1000}; // Batch sizes to compare against single publish
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    private static final RestTemplate restTemplate = new RestTemplate(); // RestTemplate for making HTTP requests
+
+    public static void main(String[] args) throws Exception {
+        // Initialize the peer and create the topic that every run publishes to
+        restTemplate.postForObject(BASE_URL + "/initialize?indexServerIp=localhost&indexServerPort=8080", null, Map.class);
+        restTemplate.postForObject(BASE_URL + "/create_topic", TOPIC, Map.class);
+
+        new File(OUTPUT_DIR).mkdir();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/publish_batch_throughput.csv"))) {
+            writer.write("Batch Size,Messages per Second");
+            writer.newLine();
+
+            // Batch size 1 is the single-message /publish endpoint
+            double single = run(1);
+            System.out.printf("Single publish: %.0f messages/sec%n", single);
+            writer.write("1," + single);
+            writer.newLine();
+
+            for (int batchSize : BATCH_SIZES) {
+                double batched = run(batchSize);
+                System.out.printf("Batch of %d: %.0f messages/sec (%.1fx single publish)%n", batchSize, batched, batched / single);
+                writer.write(batchSize + "," + batched);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Publishes MESSAGES_PER_CLIENT messages from every client and returns the messages per second achieved
+    private static double run(int batchSize) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS);
+        long startTime = System.nanoTime();
+
+        for (int c = 0; c < NUM_CLIENTS; c++) {
+            int client = c;
+            executor.submit(() -> {
+                for (int sent = 0; sent < MESSAGES_PER_CLIENT; sent += batchSize) {
+                    if (batchSize == 1) {
+                        restTemplate.postForObject(BASE_URL + "/publish", Map.of("topic", TOPIC, "message", "client" + client + "-" + sent), Map.class);
+                    } else {
+                        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+                        for (int i = 0; i < batchSize; i++) {
+                            batch.add(Map.of("topic", TOPIC, "message", "client" + client + "-" + (sent + i)));
+                        }
+                        restTemplate.postForObject(BASE_URL + "/publish_batch", Map.of("messages", batch), Map.class);
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        return NUM_CLIENTS * MESSAGES_PER_CLIENT / seconds;
+    }
+}
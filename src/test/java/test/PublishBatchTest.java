@@ -0,0 +1,65 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs a peer on localhost and checks that publish_batch appends to several topics at once and rejects
+// requests with missing or malformed messages
+public class PublishBatchTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ConfigurableApplicationContext instance;
+    private String peer;
+
+    @BeforeEach
+    public void start() throws Exception {
+        instance = new SpringApplicationBuilder(P2PSystemApplication.class)
+                .run("--server.port=0", "--logging.level.com.example.p2p=WARN");
+        peer = "http://localhost:" + instance.getEnvironment().getProperty("local.server.port") + "/peer";
+        post("/initialize", "", "text/plain");
+        post("/create_topic", "orders", "text/plain");
+        post("/create_topic", "payments", "text/plain");
+    }
+
+    @AfterEach
+    public void stop() {
+        instance.close();
+        client.close();
+    }
+
+    @Test
+    public void batchPublishesToEveryTopic() throws Exception {
+        String published = post("/publish_batch", "{\"messages\":[{\"topic\":\"orders\",\"message\":\"o1\"},"
+                + "{\"topic\":\"payments\",\"message\":\"p1\"},{\"topic\":\"orders\",\"message\":\"o2\"}]}", "application/json");
+        assertThat(published).contains("\"status\":\"published\"", "\"orders\":[0,1]", "\"payments\":[0]");
+    }
+
+    @Test
+    public void malformedBatchesAreRejected() throws Exception {
+        assertThat(post("/publish_batch", "{}", "application/json")).contains("\"status\":\"error\"", "messages");
+        assertThat(post("/publish_batch", "{\"messages\":\"o1\"}", "application/json")).contains("\"status\":\"error\"");
+        assertThat(post("/publish_batch", "{\"messages\":[{\"message\":\"o1\"}]}", "application/json"))
+                .contains("\"status\":\"error\"");
+    }
+
+    private String post(String path, String body, String contentType) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(peer + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).as(path + " " + body).isEqualTo(200);
+        return response.body();
+    }
+}
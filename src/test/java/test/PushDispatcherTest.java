@@ -0,0 +1,95 @@
+package test;
+
+import com.example.p2p.PushDispatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks that a stalled push subscriber neither blocks the publisher nor the other subscribers
+public class PushDispatcherTest {
+
+    private static final int MESSAGES = 10_000; // Messages published to the topic
+    private static final int QUEUE_CAPACITY = 64; // Per-subscriber queue size
+
+    @Test
+    public void slowSubscriberDoesNotStallPublisherOrOthers() throws Exception {
+        PushDispatcher dispatcher = new PushDispatcher(QUEUE_CAPACITY, false);
+
+        // The slow subscriber blocks on its first message until released
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> slowOffsets = new CopyOnWriteArrayList<>();
+        AtomicLong slowMissed = new AtomicLong();
+        dispatcher.subscribe(Set.of("topic"), (topic, offset, message, missed) -> {
+            release.await();
+            slowOffsets.add(offset);
+            slowMissed.addAndGet(missed);
+        });
+
+        // The fast subscriber records what it gets and what it was told it missed
+        List<Long> fastOffsets = new CopyOnWriteArrayList<>();
+        AtomicLong fastMissed = new AtomicLong();
+        dispatcher.subscribe(Set.of("topic"), (topic, offset, message, missed) -> {
+            fastOffsets.add(offset);
+            fastMissed.addAndGet(missed);
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            dispatcher.publish("topic", i, "m" + i);
+        }
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The publisher finished even though the slow subscriber never returned
+        assertThat(publishMillis).isLessThan(5_000);
+
+        // The fast subscriber saw every message in order, apart from any it was told it missed
+        waitFor(fastOffsets, fastMissed);
+        assertThat(fastOffsets).isSorted().doesNotHaveDuplicates();
+        assertThat(fastOffsets.size() + fastMissed.get()).isEqualTo(MESSAGES);
+
+        // Once released, the slow subscriber gets its queued messages plus the count of everything dropped
+        release.countDown();
+        waitFor(slowOffsets, slowMissed);
+        assertThat(slowOffsets.size()).isLessThanOrEqualTo(QUEUE_CAPACITY + 1);
+        assertThat(slowOffsets.size() + slowMissed.get()).isEqualTo(MESSAGES);
+        assertThat(dispatcher.getMetrics()).containsEntry("subscribers", 2);
+
+        dispatcher.shutdown();
+    }
+
+    // Waits until a subscriber has accounted for every published message, delivered or missed
+    private static void waitFor(List<Long> offsets, AtomicLong missed) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (offsets.size() + missed.get() < MESSAGES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void failingSubscriberIsRemoved() throws Exception {
+        PushDispatcher dispatcher = new PushDispatcher(QUEUE_CAPACITY, false);
+        CountDownLatch failed = new CountDownLatch(1);
+        dispatcher.subscribe(Set.of("topic"), (topic, offset, message, missed) -> {
+            failed.countDown();
+            throw new IllegalStateException("connection closed");
+        });
+
+        dispatcher.publish("topic", 0, "m0");
+        assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!dispatcher.getMetrics().get("subscribers").equals(0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(dispatcher.getMetrics()).containsEntry("subscribers", 0);
+
+        dispatcher.shutdown();
+    }
+}
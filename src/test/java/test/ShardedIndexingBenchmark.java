@@ -0,0 +1,120 @@
+package test;
+
+import com.example.p2p.IndexingShardRouter;
+import com.example.p2p.P2PSystemApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures query_topic throughput with the topic index sharded across 1, 2 and 4 indexing server
+// instances. A node's topics are registered with their owning shards and clients route each query
+// straight to the topic's shard, as peers do. The instances run in this JVM, so throughput can only
+// scale with the shard count when the machine has at least that many cores.
+public class ShardedIndexingBenchmark {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 4}; // Indexing server instances per run
+    private static final int NUM_TOPICS = 10_000; // Topics registered across the shards
+    private static final int NUM_CLIENTS = 64; // Concurrent querying clients
+    private static final int QUERIES_PER_CLIENT = 500; // Queries each client makes per run
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    public static void main(String[] args) throws Exception {
+        new File(OUTPUT_DIR).mkdir();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/indexing_shards.csv"))) {
+            writer.write("Shards,Clients,Queries per Second,Failures");
+            writer.newLine();
+
+            for (int shards : SHARD_COUNTS) {
+                Result result = run(shards);
+                System.out.printf("%d shards, %d clients: %.0f queries/sec, %d failures%n",
+                        shards, NUM_CLIENTS, result.perSecond(), result.failures());
+                writer.write(shards + "," + NUM_CLIENTS + "," + result.perSecond() + "," + result.failures());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private record Result(double perSecond, long failures) {
+    }
+
+    private static Result run(int shardCount) throws Exception {
+        List<ConfigurableApplicationContext> instances = new ArrayList<>();
+        try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            List<String> shards = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class).run(
+                        "--server.port=0",
+                        "--logging.level.com.example.p2p=WARN");
+                instances.add(instance);
+                shards.add("http://localhost:" + instance.getEnvironment().getProperty("local.server.port") + "/indexing");
+            }
+            IndexingShardRouter router = new IndexingShardRouter(shards, 128);
+
+            List<String> topics = new ArrayList<>();
+            for (int i = 0; i < NUM_TOPICS; i++) {
+                topics.add("topic" + i);
+            }
+            for (Map.Entry<String, List<String>> shard : router.partition(topics).entrySet()) {
+                String body = "{\"node_id\":\"peer1\",\"host\":\"localhost\",\"port\":9999,\"topics\":[\""
+                        + String.join("\",\"", shard.getValue()) + "\"]}";
+                post(client, shard.getKey() + "/register", body);
+            }
+
+            AtomicLong failures = new AtomicLong();
+            long startTime = System.nanoTime();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < NUM_CLIENTS; c++) {
+                    clients.submit(() -> {
+                        for (int i = 0; i < QUERIES_PER_CLIENT; i++) {
+                            String topic = "topic" + ThreadLocalRandom.current().nextInt(NUM_TOPICS);
+                            try {
+                                String body = get(client, router.shardFor(topic) + "/query_topic/" + topic);
+                                if (!body.contains("\"status\":\"found\"")) {
+                                    failures.incrementAndGet();
+                                }
+                            } catch (Exception e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    });
+                }
+                clients.shutdown();
+                clients.awaitTermination(10, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            return new Result(NUM_CLIENTS * QUERIES_PER_CLIENT / seconds, failures.get());
+        } finally {
+            instances.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private static String get(HttpClient client, String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static String post(HttpClient client, String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,125 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compares subscribe throughput with requests served on platform threads, on virtual threads and on
+// the reactive stack.
+// Each mode starts two nodes in this JVM: node A runs the indexing server and hosts the topic, node B
+// receives every subscription, looks the topic up on A (its location cache is disabled) and forwards
+// the subscription to A, so each request makes two inter-node round trips.
+public class SubscribeThroughputBenchmark {
+
+    private static final String TOPIC = "benchmarkTopic"; // Topic hosted by node A
+    private static final int NUM_CLIENTS = 1000; // Number of concurrent subscribing clients
+    private static final int SUBSCRIPTIONS_PER_CLIENT = 20; // Subscribe calls each client makes per run
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    // Arguments that select each mode
+    private static final Map<String, String> MODES = new LinkedHashMap<>();
+
+    static {
+        MODES.put("platform", "--spring.threads.virtual.enabled=false");
+        MODES.put("virtual", "--spring.threads.virtual.enabled=true");
+        MODES.put("reactive", "--spring.profiles.active=reactive");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new File(OUTPUT_DIR).mkdir();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/subscribe_thread_modes.csv"))) {
+            writer.write("Mode,Clients,Subscriptions per Second,Failures");
+            writer.newLine();
+
+            for (String mode : MODES.keySet()) {
+                Result result = run(MODES.get(mode));
+                System.out.printf("%s, %d clients: %.0f subscriptions/sec, %d failures%n",
+                        mode, NUM_CLIENTS, result.perSecond(), result.failures());
+                writer.write(mode + "," + NUM_CLIENTS + "," + result.perSecond() + "," + result.failures());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private record Result(double perSecond, long failures) {
+    }
+
+    private static Result run(String modeArgument) throws Exception {
+        try (ConfigurableApplicationContext nodeA = start(modeArgument);
+             ConfigurableApplicationContext nodeB = start(modeArgument);
+             HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            String urlA = "http://localhost:" + nodeA.getEnvironment().getProperty("local.server.port");
+            String urlB = "http://localhost:" + nodeB.getEnvironment().getProperty("local.server.port");
+            String indexPort = nodeA.getEnvironment().getProperty("local.server.port");
+
+            // Both peers use node A's indexing server; A hosts the topic
+            post(client, urlA + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + indexPort, "");
+            post(client, urlB + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + indexPort, "");
+            post(client, urlA + "/peer/register_with_indexing_server", "");
+            post(client, urlB + "/peer/register_with_indexing_server", "");
+            post(client, urlA + "/peer/create_topic", TOPIC);
+
+            // Clients run on virtual threads in both modes so only the server side differs
+            AtomicLong failures = new AtomicLong();
+            long startTime = System.nanoTime();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < NUM_CLIENTS; c++) {
+                    clients.submit(() -> {
+                        for (int i = 0; i < SUBSCRIPTIONS_PER_CLIENT; i++) {
+                            try {
+                                String body = get(client, urlB + "/peer/subscribe/" + TOPIC);
+                                if (!body.contains("subscribed")) {
+                                    failures.incrementAndGet();
+                                }
+                            } catch (Exception e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    });
+                }
+                clients.shutdown();
+                clients.awaitTermination(10, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            return new Result(NUM_CLIENTS * SUBSCRIPTIONS_PER_CLIENT / seconds, failures.get());
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String modeArgument) {
+        // Passed as arguments so they override application.properties
+        return new SpringApplicationBuilder(P2PSystemApplication.class).run(
+                "--server.port=0",
+                modeArgument,
+                "--peer.cache.ttl-ms=0",
+                "--logging.level.com.example.p2p=WARN");
+    }
+
+    private static String get(HttpClient client, String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static String post(HttpClient client, String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,115 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs peers on localhost, one of them also serving the index, and checks that a peer shutting down
+// hands its topic and the messages it still holds to the least loaded remaining peer, and that a node
+// that stops sending heartbeats loses its lease and its topics
+public class TopicHandoverTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        client.close();
+    }
+
+    private String start(String... args) {
+        List<String> arguments = new ArrayList<>(List.of("--server.port=0", "--peer.load.report-ms=600000",
+                "--logging.level.com.example.p2p=WARN"));
+        arguments.addAll(List.of(args));
+        ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class)
+                .run(arguments.toArray(String[]::new));
+        instances.add(instance);
+        return "http://localhost:" + instance.getEnvironment().getProperty("local.server.port");
+    }
+
+    @Test
+    public void departingPeerHandsItsBacklogToTheLeastLoadedPeer() throws Exception {
+        String indexing = start();
+        String departing = start();
+        String quiet = start();
+        String port = indexing.substring(indexing.lastIndexOf(':') + 1);
+
+        String busyId = nodeId(post(indexing + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, ""));
+        String departingId = nodeId(post(departing + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, ""));
+        String quietId = nodeId(post(quiet + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, ""));
+        for (String peer : List.of(indexing, departing, quiet)) {
+            post(peer + "/peer/register_with_indexing_server", "");
+        }
+
+        post(departing + "/peer/create_topic", "orders");
+        for (int i = 0; i < 3; i++) {
+            post(departing + "/peer/publish", "{\"topic\":\"orders\",\"message\":\"order-" + i + "\"}");
+        }
+        assertThat(post(indexing + "/indexing/report_load", "{\"node_id\":\"" + busyId + "\",\"message_rate\":500,\"subscribers\":10}"))
+                .contains("reported");
+
+        // Shutting the departing peer down unregisters it, and the index moves its topic to the quiet peer
+        ConfigurableApplicationContext departingInstance = instances.remove(1);
+        departingInstance.close();
+        assertThat(get(indexing + "/indexing/query_topic/orders")).contains("\"node_id\":\"" + quietId + "\"");
+        assertThat(get(indexing + "/indexing/query_topic/orders")).doesNotContain(departingId);
+
+        // The quiet peer now hosts the topic along with its backlog
+        assertThat(get(quiet + "/peer/pull_messages/orders?fromOffset=0"))
+                .contains("order-0", "order-1", "order-2");
+        assertThat(get(quiet + "/peer/get_metrics")).contains("orders");
+    }
+
+    @Test
+    public void nodeWithoutHeartbeatsIsEvictedAndItsTopicsMove() throws Exception {
+        String peer = start("--indexing.lease.ttl-ms=1500", "--indexing.lease.check-ms=100", "--peer.heartbeat.interval-ms=300");
+        String port = peer.substring(peer.lastIndexOf(':') + 1);
+        String peerId = nodeId(post(peer + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, ""));
+        post(peer + "/peer/register_with_indexing_server", "");
+
+        // A node that registers and then goes silent, as a crashed peer would
+        post(peer + "/indexing/register", "{\"node_id\":\"ghost\",\"topics\":[\"ghost-topic\"],\"host\":\"localhost\",\"port\":1}");
+        assertThat(get(peer + "/indexing/query_topic/ghost-topic")).contains("ghost");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (get(peer + "/indexing/query_topic/ghost-topic").contains("ghost")) {
+            assertThat(System.currentTimeMillis()).as("ghost lease never expired").isLessThan(deadline);
+            Thread.sleep(100);
+        }
+        // The live peer kept its lease through its heartbeats and took over the topic
+        assertThat(get(peer + "/indexing/query_topic/ghost-topic")).contains("\"node_id\":\"" + peerId + "\"");
+        assertThat(get(peer + "/indexing/metrics")).contains("\"expired\":1");
+    }
+
+    private static String nodeId(String response) {
+        Matcher matcher = Pattern.compile("\"node_id\":\"([^\"]+)\"").matcher(response);
+        assertThat(matcher.find()).isTrue();
+        return matcher.group(1);
+    }
+
+    private String get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String post(String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", body.startsWith("{") ? "application/json" : "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
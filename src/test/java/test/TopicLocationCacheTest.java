@@ -0,0 +1,53 @@
+package test;
+
+import com.example.p2p.TopicLocation;
+import com.example.p2p.TopicLocationCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks LRU eviction, TTL expiry and invalidation of the peer's topic location cache
+public class TopicLocationCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        TopicLocationCache cache = new TopicLocationCache(2, 60_000);
+        cache.put("a", location("peer1"));
+        cache.put("b", location("peer2"));
+        cache.get("a"); // Touch "a" so that "b" is the least recently used entry
+        cache.put("c", location("peer3"));
+
+        assertThat(cache.get("a")).isEqualTo(location("peer1"));
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo(location("peer3"));
+        assertThat(cache.getMetrics()).containsEntry("evictions", 1L).containsEntry("hits", 3L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    public void expiresEntriesAfterTtl() throws InterruptedException {
+        TopicLocationCache cache = new TopicLocationCache(16, 20);
+        cache.put("a", location("peer1"));
+        Thread.sleep(50);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.getMetrics()).containsEntry("expirations", 1L);
+    }
+
+    @Test
+    public void invalidationRemovesEntries() {
+        TopicLocationCache cache = new TopicLocationCache(16, 60_000);
+        cache.put("a", location("peer1"));
+        cache.put("b", location("peer1"));
+        cache.invalidateAll(List.of("a", "unknown"));
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.get("b")).isEqualTo(location("peer1"));
+        assertThat(cache.getMetrics()).containsEntry("invalidations", 1L);
+    }
+
+    private static TopicLocation location(String nodeId) {
+        return new TopicLocation(nodeId, "http://localhost:8081");
+    }
+}
@@ -0,0 +1,254 @@
+package test;
+
+import com.example.p2p.TopicLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Publishes from many threads while another thread reads and marks what it read, as a pull does, and
+// checks nothing is lost or duplicated; also covers consumer groups, skipping and group expiry
+public class TopicLogConcurrencyTest {
+
+    private static final int PUBLISHERS = 8; // Number of concurrent publisher threads
+    private static final int MESSAGES_PER_PUBLISHER = 20_000; // Messages each publisher appends
+    private static final int TOTAL = PUBLISHERS * MESSAGES_PER_PUBLISHER;
+
+    @Test
+    public void blockPolicyDeliversEveryMessageExactlyOnce() throws Exception {
+        // A small ring forces publishers to wait for the reader over and over
+        TopicLog log = new TopicLog(256, TopicLog.OverflowPolicy.BLOCK, 60_000);
+        Result result = publishAndRead(log);
+
+        assertThat(result.accepted).isEqualTo(TOTAL);
+        assertThat(result.duplicates).isZero();
+        assertThat(result.delivered).hasSize(TOTAL);
+    }
+
+    @Test
+    public void largeRingDeliversEveryMessageExactlyOnce() throws Exception {
+        TopicLog log = new TopicLog(TOTAL, TopicLog.OverflowPolicy.REJECT, 0);
+        Result result = publishAndRead(log);
+
+        assertThat(log.getRejectedCount()).isZero();
+        assertThat(result.duplicates).isZero();
+        assertThat(result.delivered).hasSize(TOTAL);
+    }
+
+    @Test
+    public void rejectPolicyDeliversExactlyTheAcceptedMessages() throws Exception {
+        TopicLog log = new TopicLog(128, TopicLog.OverflowPolicy.REJECT, 0);
+        Result result = publishAndRead(log);
+
+        assertThat(result.duplicates).isZero();
+        assertThat(result.delivered).hasSize((int) result.accepted);
+        assertThat(result.accepted + log.getRejectedCount()).isEqualTo(TOTAL);
+    }
+
+    @Test
+    public void dropOldestPolicyNeverDuplicatesAndAccountsForDrops() throws Exception {
+        TopicLog log = new TopicLog(128, TopicLog.OverflowPolicy.DROP_OLDEST, 0);
+        Result result = publishAndRead(log);
+
+        assertThat(result.accepted).isEqualTo(TOTAL);
+        assertThat(result.duplicates).isZero();
+        // Every accepted message was either delivered or dropped to make room
+        assertThat(result.delivered.size() + log.getDroppedCount()).isGreaterThanOrEqualTo(TOTAL);
+        assertThat(result.delivered.size()).isLessThanOrEqualTo(TOTAL);
+    }
+
+    @Test
+    public void concurrentBatchesGetContiguousOffsetsAndAreAllDelivered() throws Exception {
+        TopicLog log = new TopicLog(TOTAL, TopicLog.OverflowPolicy.REJECT, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(PUBLISHERS);
+        List<Future<?>> publishers = new ArrayList<>();
+        for (int p = 0; p < PUBLISHERS; p++) {
+            int publisher = p;
+            publishers.add(executor.submit(() -> {
+                for (int b = 0; b < MESSAGES_PER_PUBLISHER / 100; b++) {
+                    List<String> batch = new ArrayList<>();
+                    for (int i = 0; i < 100; i++) {
+                        batch.add(publisher + "-" + b + "-" + i);
+                    }
+                    long[] offsets = log.appendAll(batch);
+                    // A batch claims one contiguous range of offsets
+                    for (int i = 1; i < offsets.length; i++) {
+                        assertThat(offsets[i]).isEqualTo(offsets[0] + i);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> publisher : publishers) {
+            publisher.get();
+        }
+        executor.shutdown();
+
+        List<TopicLog.Record> records = log.read(0, Integer.MAX_VALUE);
+        assertThat(records).hasSize(TOTAL);
+        assertThat(records).extracting(TopicLog.Record::message).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void readDoesNotConsumeAndReturnsOffsetsInOrder() {
+        TopicLog log = new TopicLog(4, TopicLog.OverflowPolicy.DROP_OLDEST, 0);
+        for (int i = 0; i < 6; i++) {
+            assertThat(log.append("m" + i)).isEqualTo(i);
+        }
+
+        // Offsets 0 and 1 were dropped to make room; the rest can be read twice
+        List<TopicLog.Record> first = log.read(0, 10);
+        assertThat(first).extracting(TopicLog.Record::offset).containsExactly(2L, 3L, 4L, 5L);
+        assertThat(log.read(3, 2)).extracting(TopicLog.Record::message).containsExactly("m3", "m4");
+        assertThat(log.read(0, 10)).isEqualTo(first);
+    }
+
+    @Test
+    public void skipToDropsOlderMessagesAndContinuesAtTheOffset() {
+        TopicLog log = new TopicLog(4, TopicLog.OverflowPolicy.REJECT, 0);
+        log.append("m0");
+        log.append("m1");
+
+        log.skipTo(10);
+        assertThat(log.getHeadOffset()).isEqualTo(10);
+        assertThat(log.getDroppedCount()).isEqualTo(2);
+        assertThat(log.append("m10")).isEqualTo(10);
+        assertThat(log.read(0, 10)).extracting(TopicLog.Record::message).containsExactly("m10");
+
+        // Skipping backwards does nothing
+        log.skipTo(5);
+        assertThat(log.append("m11")).isEqualTo(11);
+    }
+
+    @Test
+    public void consumerGroupsReadIndependentlyAndReleaseSpace() {
+        TopicLog log = new TopicLog(4, TopicLog.OverflowPolicy.REJECT, 0);
+        for (int i = 0; i < 4; i++) {
+            log.append("m" + i);
+        }
+        assertThat(log.append("m4")).isEqualTo(-1);
+
+        // Two groups read the same stream at their own pace
+        assertThat(log.read(log.getCommittedOffset("a"), 3)).hasSize(3);
+        log.commit("b", 1);
+        log.commit("a", 3);
+        assertThat(log.read(log.getCommittedOffset("b"), 10)).extracting(TopicLog.Record::message).containsExactly("m1", "m2", "m3");
+
+        // Only the space below the slowest group is released, and groups never move backwards
+        assertThat(log.getHeadOffset()).isEqualTo(1);
+        assertThat(log.commit("b", 0)).isEqualTo(1);
+        assertThat(log.append("m4")).isEqualTo(4);
+        assertThat(log.append("m5")).isEqualTo(-1);
+    }
+
+    @Test
+    public void readsOutsideAnyGroupReleaseWhatTheyPassed() {
+        TopicLog log = new TopicLog(4, TopicLog.OverflowPolicy.REJECT, 0);
+        for (int i = 0; i < 4; i++) {
+            log.append("m" + i);
+        }
+        assertThat(log.append("m4")).isEqualTo(-1);
+
+        log.markRead(2);
+        assertThat(log.getHeadOffset()).isEqualTo(2);
+        assertThat(log.append("m4")).isEqualTo(4);
+
+        // A group holds the space it hasn't committed past, whatever the groupless readers did
+        log.commit("slow", 2);
+        log.markRead(5);
+        assertThat(log.getHeadOffset()).isEqualTo(2);
+        assertThat(log.deleteGroup("slow")).isTrue();
+        assertThat(log.deleteGroup("slow")).isFalse();
+        assertThat(log.getHeadOffset()).isEqualTo(5);
+    }
+
+    @Test
+    public void idleGroupsExpireAndStopHoldingTheLog() {
+        AtomicLong clock = new AtomicLong();
+        TopicLog log = new TopicLog(4, TopicLog.OverflowPolicy.BLOCK, 0, clock::get);
+        for (int i = 0; i < 4; i++) {
+            log.append("m" + i);
+        }
+        log.commit("abandoned", 0);
+        clock.set(1_000);
+        log.commit("active", 3);
+        assertThat(log.append("m4")).isEqualTo(-1);
+
+        clock.set(1_500);
+        assertThat(log.expireGroups(1_000)).isEqualTo(1);
+        assertThat(log.getGroupOffsets()).containsOnlyKeys("active");
+        assertThat(log.getHeadOffset()).isEqualTo(3);
+        assertThat(log.append("m4")).isEqualTo(4);
+    }
+
+    private static class Result {
+        long accepted;
+        long duplicates;
+        Set<String> delivered = new HashSet<>();
+    }
+
+    // Runs PUBLISHERS threads appending unique messages while one thread reads outside any group, marking
+    // each page read as pull_messages does, until all are done
+    private static Result publishAndRead(TopicLog log) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PUBLISHERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong accepted = new AtomicLong();
+        AtomicBoolean publishing = new AtomicBoolean(true);
+
+        List<Future<?>> publishers = new ArrayList<>();
+        for (int p = 0; p < PUBLISHERS; p++) {
+            int publisher = p;
+            publishers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < MESSAGES_PER_PUBLISHER; i++) {
+                    if (log.append(publisher + "-" + i) >= 0) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        Result result = new Result();
+        Future<?> reader = executor.submit(() -> {
+            start.await();
+            long next = 0;
+            while (true) {
+                boolean stillPublishing = publishing.get();
+                List<TopicLog.Record> records = log.read(next, 1024);
+                for (TopicLog.Record record : records) {
+                    if (!result.delivered.add(record.message())) {
+                        result.duplicates++;
+                    }
+                }
+                if (!records.isEmpty()) {
+                    next = records.get(records.size() - 1).offset() + 1;
+                    log.markRead(next);
+                } else if (!stillPublishing) {
+                    return null;
+                }
+            }
+        });
+
+        start.countDown();
+        for (Future<?> publisher : publishers) {
+            publisher.get();
+        }
+        publishing.set(false);
+        reader.get();
+        executor.shutdown();
+
+        result.accepted = accepted.get();
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package test;
+
+import com.example.p2p.P2PSystemApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs peers on localhost, one of them also serving the index, and checks that a replicated topic is
+// copied to the peers the index picks, that reads keep working from a copy when the host goes away, and
+// that a replica takes over the topic, with its offsets, when its host leaves or stops sending heartbeats
+public class TopicReplicationTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        client.close();
+    }
+
+    private String start(String... args) {
+        List<String> arguments = new ArrayList<>(List.of("--server.port=0", "--peer.load.report-ms=600000",
+                "--peer.replication.mode=QUORUM", "--logging.level.com.example.p2p=WARN"));
+        arguments.addAll(List.of(args));
+        ConfigurableApplicationContext instance = new SpringApplicationBuilder(P2PSystemApplication.class)
+                .run(arguments.toArray(String[]::new));
+        instances.add(instance);
+        return "http://localhost:" + instance.getEnvironment().getProperty("local.server.port");
+    }
+
+    @Test
+    public void replicatedTopicSurvivesItsHostLeaving() throws Exception {
+        String indexing = start();
+        String host = start();
+        String replica = start();
+        String port = indexing.substring(indexing.lastIndexOf(':') + 1);
+        for (String peer : List.of(indexing, host, replica)) {
+            // IDs come from the advertised address, so they would differ across processes as well
+            assertThat(nodeId(post(peer + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, "")))
+                    .isEqualTo("peer-localhost-" + peer.substring(peer.lastIndexOf(':') + 1));
+            post(peer + "/peer/register_with_indexing_server", "");
+        }
+
+        assertThat(post(host + "/peer/create_topic?replicationFactor=3", "orders")).contains("\"replication_factor\":3");
+        for (int i = 0; i < 3; i++) {
+            assertThat(post(host + "/peer/publish", "{\"topic\":\"orders\",\"message\":\"order-" + i + "\"}"))
+                    .contains("\"offset\":" + i);
+        }
+        String query = get(indexing + "/indexing/query_topic/orders");
+        assertThat(query).contains("replica_ids", "replica_addresses", indexing, replica);
+
+        // Quorum publishes waited for one copy; the other catches up shortly after
+        awaitContains(indexing + "/peer/pull_messages/orders?fromOffset=0", "order-2");
+        awaitContains(replica + "/peer/pull_messages/orders?fromOffset=0", "order-2");
+        assertThat(post(replica + "/peer/publish", "{\"topic\":\"orders\",\"message\":\"not-here\"}")).contains("not hosted");
+
+        // The host leaves; the topic is promoted on a replica without its messages being copied twice
+        instances.remove(1).close();
+        String newHost = get(indexing + "/indexing/query_topic/orders");
+        assertThat(newHost).doesNotContain(host);
+        String newHostAddress = field(newHost, "address");
+        assertThat(newHostAddress).isIn(indexing, replica);
+        assertThat(get(replica + "/peer/fetch/orders?fromOffset=0")).contains("order-0", "order-1", "order-2");
+        assertThat(post(newHostAddress + "/peer/publish", "{\"topic\":\"orders\",\"message\":\"order-3\"}"))
+                .contains("\"offset\":3");
+        assertThat(get(newHostAddress + "/peer/pull_messages/orders?fromOffset=0"))
+                .contains("\"offsets\":[0,1,2,3]");
+    }
+
+    @Test
+    public void replicaTakesOverWhenItsHostStopsSendingHeartbeats() throws Exception {
+        String peer = start("--indexing.lease.ttl-ms=1500", "--indexing.lease.check-ms=100", "--peer.heartbeat.interval-ms=300");
+        String port = peer.substring(peer.lastIndexOf(':') + 1);
+        String peerId = nodeId(post(peer + "/peer/initialize?indexServerIp=localhost&indexServerPort=" + port, ""));
+        post(peer + "/peer/register_with_indexing_server", "");
+
+        // A host that copies its topic to the peer and then goes silent, as a crashed peer would
+        post(peer + "/indexing/register", "{\"node_id\":\"ghost\",\"topics\":[\"ghost-topic\"],\"host\":\"localhost\",\"port\":1}");
+        assertThat(post(peer + "/indexing/assign_replicas", "{\"node_id\":\"ghost\",\"topic\":\"ghost-topic\",\"factor\":2}"))
+                .contains(peerId);
+        assertThat(post(peer + "/peer/replicate", "{\"topic\":\"ghost-topic\",\"from_node\":\"ghost\",\"factor\":2,"
+                + "\"offsets\":[5,6],\"messages\":[\"m5\",\"m6\"]}")).contains("\"next_offset\":7");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!post(peer + "/peer/publish", "{\"topic\":\"ghost-topic\",\"message\":\"m7\"}").contains("\"offset\":7")) {
+            assertThat(System.currentTimeMillis()).as("replica was never promoted").isLessThan(deadline);
+            Thread.sleep(100);
+        }
+        assertThat(get(peer + "/indexing/query_topic/ghost-topic")).contains("\"node_id\":\"" + peerId + "\"");
+        assertThat(get(peer + "/peer/pull_messages/ghost-topic?fromOffset=0")).contains("\"offsets\":[5,6,7]");
+    }
+
+    private void awaitContains(String url, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!get(url).contains(expected)) {
+            assertThat(System.currentTimeMillis()).as(url + " never returned " + expected).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static String nodeId(String response) {
+        return field(response, "node_id");
+    }
+
+    private static String field(String response, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":\"([^\"]+)\"").matcher(response);
+        assertThat(matcher.find()).isTrue();
+        return matcher.group(1);
+    }
+
+    private String get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String post(String url, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", body.startsWith("{") ? "application/json" : "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,165 @@
+package test;
+
+import com.example.p2p.TopicPattern;
+import com.example.p2p.TopicTrie;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks the topic name trie's prefix and wildcard queries against a plain scan of the same names, and
+// that readers see consistent results while writers change it
+public class TopicTrieTest {
+
+    @Test
+    public void addAndRemoveKeepTheTrieCompact() {
+        TopicTrie trie = new TopicTrie();
+        assertThat(trie.add("orders")).isTrue();
+        assertThat(trie.add("orders.eu")).isTrue();
+        assertThat(trie.add("orders.us")).isTrue();
+        assertThat(trie.add("order")).isTrue();
+        assertThat(trie.add("orders")).isFalse();
+        assertThat(trie.size()).isEqualTo(4);
+
+        assertThat(trie.remove("orders")).isTrue();
+        assertThat(trie.remove("orders")).isFalse();
+        assertThat(trie.remove("orders.e")).isFalse();
+        assertThat(trie.contains("orders")).isFalse();
+        assertThat(trie.contains("orders.eu")).isTrue();
+        assertThat(trie.contains("orders.")).isFalse();
+        assertThat(trie.withPrefix("", 10).topics()).containsExactly("order", "orders.eu", "orders.us");
+
+        for (String topic : List.of("order", "orders.eu", "orders.us")) {
+            trie.remove(topic);
+        }
+        assertThat(trie.size()).isZero();
+        assertThat(trie.withPrefix("", 10).topics()).isEmpty();
+    }
+
+    @Test
+    public void prefixQueriesReturnNamesInOrderUpToTheLimit() {
+        TopicTrie trie = new TopicTrie();
+        List.of("payments", "orders.us", "orders.eu", "orders.eu.created", "ordersx").forEach(trie::add);
+
+        assertThat(trie.withPrefix("orders.", 10).topics()).containsExactly("orders.eu", "orders.eu.created", "orders.us");
+        assertThat(trie.withPrefix("ord", 10).topics()).hasSize(4);
+        assertThat(trie.withPrefix("orders.eu", 10).topics()).containsExactly("orders.eu", "orders.eu.created");
+        assertThat(trie.withPrefix("shipments", 10).topics()).isEmpty();
+
+        TopicTrie.Matches firstTwo = trie.withPrefix("orders", 2);
+        assertThat(firstTwo.topics()).containsExactly("orders.eu", "orders.eu.created");
+        assertThat(firstTwo.truncated()).isTrue();
+        assertThat(trie.withPrefix("orders", 4).truncated()).isFalse();
+    }
+
+    @Test
+    public void segmentWildcardStaysWithinOneSegment() {
+        TopicTrie trie = new TopicTrie();
+        List.of("orders.eu", "orders.us", "orders.eu.created", "orders", "payments.eu", "orders.").forEach(trie::add);
+
+        assertThat(trie.matching(TopicPattern.compile("orders.*"), 10).topics())
+                .containsExactly("orders.", "orders.eu", "orders.us");
+        assertThat(trie.matching(TopicPattern.compile("orders.#"), 10).topics())
+                .containsExactly("orders.", "orders.eu", "orders.eu.created", "orders.us");
+        assertThat(trie.matching(TopicPattern.compile("*.eu"), 10).topics()).containsExactly("orders.eu", "payments.eu");
+        assertThat(trie.matching(TopicPattern.compile("#.created"), 10).topics()).containsExactly("orders.eu.created");
+        assertThat(trie.matching(TopicPattern.compile("orders.e*.c*"), 10).topics()).containsExactly("orders.eu.created");
+        assertThat(trie.matching(TopicPattern.compile("orders"), 10).topics()).containsExactly("orders");
+        assertThat(trie.matching(TopicPattern.compile("orders.#"), 2).truncated()).isTrue();
+
+        assertThat(TopicPattern.compile("orders.*").literalPrefix()).isEqualTo("orders.");
+        assertThat(TopicPattern.hasWildcard("orders.eu")).isFalse();
+        assertThat(TopicPattern.compile("a*b#c").matches("axxb.y.zc")).isTrue();
+        assertThat(TopicPattern.compile("a*b#c").matches("a.b.c")).isFalse();
+    }
+
+    @Test
+    public void queriesAgreeWithAScanOfRandomNames() {
+        Random random = new Random(5);
+        TopicTrie trie = new TopicTrie();
+        Set<String> reference = new TreeSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            String topic = randomTopic(random);
+            assertThat(trie.add(topic)).isEqualTo(reference.add(topic));
+            if (random.nextInt(4) == 0) {
+                String removed = randomTopic(random);
+                assertThat(trie.remove(removed)).isEqualTo(reference.remove(removed));
+            }
+        }
+        assertThat(trie.size()).isEqualTo(reference.size());
+
+        for (String pattern : List.of("a.*", "a.#", "*.b*", "#c", "b*.*.a", "#.a.#", "c")) {
+            TopicPattern compiled = TopicPattern.compile(pattern);
+            List<String> expected = reference.stream().filter(compiled::matches).toList();
+            assertThat(trie.matching(compiled, Integer.MAX_VALUE - 1).topics()).as(pattern).isEqualTo(expected);
+        }
+        for (String prefix : List.of("", "a", "a.b", "cc.")) {
+            List<String> expected = reference.stream().filter(topic -> topic.startsWith(prefix)).toList();
+            assertThat(trie.withPrefix(prefix, Integer.MAX_VALUE - 1).topics()).as(prefix).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void readersSeeConsistentVersionsWhileWritersRun() throws Exception {
+        // Names that are never removed must be found by every query, however the trie around them changes
+        TopicTrie trie = new TopicTrie();
+        Set<String> stable = new ConcurrentSkipListSet<>();
+        for (int i = 0; i < 500; i++) {
+            String topic = "stable." + i;
+            trie.add(topic);
+            stable.add(topic);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int seed = w;
+            threads.add(Thread.ofPlatform().start(() -> {
+                Random random = new Random(seed);
+                while (running.get()) {
+                    String topic = "stable." + random.nextInt(500) + ".x" + randomTopic(random);
+                    trie.add(topic);
+                    trie.remove(topic);
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    while (running.get()) {
+                        List<String> found = trie.matching(TopicPattern.compile("stable.*"), 10_000).topics();
+                        assertThat(found).containsExactlyElementsOf(stable);
+                        assertThat(trie.withPrefix("stable.", 10_000).topics()).containsAll(stable);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        Thread.sleep(1_000);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(failure.get()).isNull();
+        assertThat(trie.size()).isEqualTo(500);
+    }
+
+    private static String randomTopic(Random random) {
+        StringBuilder topic = new StringBuilder();
+        int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            topic.append("abc.".charAt(random.nextInt(4)));
+        }
+        return topic.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package test;
+
+import com.example.p2p.BinaryWireFormat;
+import com.example.p2p.PublishRequest;
+import com.example.p2p.TopicQueryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+
+// Compares the cost of encoding and decoding the publish and query_topic payloads as untyped JSON maps
+// (the original wire format), as typed records in JSON and as typed records in the binary format
+public class WireFormatBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200_000; // Round trips before measuring, so the JIT settles
+    private static final int ITERATIONS = 1_000_000; // Measured round trips per format and payload
+    private static final String OUTPUT_DIR = "peernodetests"; // Directory for CSV files
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private interface RoundTrip {
+        // Encodes and decodes one payload, returning the encoded size in bytes
+        int run() throws Exception;
+    }
+
+    private static long sink; // Keeps results alive so the JIT can't discard the work
+
+    public static void main(String[] args) throws Exception {
+        PublishRequest publish = new PublishRequest("sensors/temperature", "{\"celsius\":21.5,\"sensor\":\"kitchen\"}");
+        Map<String, Object> publishMap = Map.of("topic", publish.topic(), "message", publish.message());
+        TopicQueryResponse query = TopicQueryResponse.found("peer12", "http://10.0.0.12:8080");
+        Map<String, Object> queryMap = Map.of("status", "found", "node_id", query.nodeId(), "address", query.address());
+
+        new File(OUTPUT_DIR).mkdir();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT_DIR + "/wire_format.csv"))) {
+            writer.write("Payload,Format,Nanoseconds per Round Trip,Bytes");
+            writer.newLine();
+
+            measure(writer, "publish", "json-map", () -> {
+                byte[] bytes = objectMapper.writeValueAsBytes(publishMap);
+                sink += objectMapper.readValue(bytes, Map.class).size();
+                return bytes.length;
+            });
+            measure(writer, "publish", "json-record", () -> {
+                byte[] bytes = objectMapper.writeValueAsBytes(publish);
+                sink += objectMapper.readValue(bytes, PublishRequest.class).message().length();
+                return bytes.length;
+            });
+            measure(writer, "publish", "binary-record", () -> {
+                byte[] bytes = BinaryWireFormat.encode(publish);
+                sink += BinaryWireFormat.decode(bytes, PublishRequest.class).message().length();
+                return bytes.length;
+            });
+            measure(writer, "query_topic", "json-map", () -> {
+                byte[] bytes = objectMapper.writeValueAsBytes(queryMap);
+                sink += objectMapper.readValue(bytes, Map.class).size();
+                return bytes.length;
+            });
+            measure(writer, "query_topic", "json-record", () -> {
+                byte[] bytes = objectMapper.writeValueAsBytes(query);
+                sink += objectMapper.readValue(bytes, TopicQueryResponse.class).address().length();
+                return bytes.length;
+            });
+            measure(writer, "query_topic", "binary-record", () -> {
+                byte[] bytes = BinaryWireFormat.encode(query);
+                sink += BinaryWireFormat.decode(bytes, TopicQueryResponse.class).address().length();
+                return bytes.length;
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void measure(BufferedWriter writer, String payload, String format, RoundTrip roundTrip) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            roundTrip.run();
+        }
+        int bytes = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bytes = roundTrip.run();
+        }
+        double nanosPerRoundTrip = (System.nanoTime() - startTime) / (double) ITERATIONS;
+
+        System.out.printf("%-12s %-14s %8.0f ns/round trip %5d bytes%n", payload, format, nanosPerRoundTrip, bytes);
+        writer.write(payload + "," + format + "," + nanosPerRoundTrip + "," + bytes);
+        writer.newLine();
+    }
+}